@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import jetbrains.buildServer.util.pathMatcher.AntPatternFileCollector;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Include and exclude rules collected by {@link AntPatternFileCollector} as it was done before the rules trie,
+ * a fallback in case the trie walk misses or adds reports. No directory is pruned and the listings are not remembered,
+ * the rules trie is not built at all.
+ */
+public class AntPatternIncludeExcludeRules extends OptimizingIncludeExcludeRules {
+  /**
+   * Set to true to collect the report paths with {@link AntPatternFileCollector} rather than the rules trie
+   */
+  public static final String ANT_PATTERN_SCAN_PROPERTY = "teamcity.xmlReport.antPatternScan";
+
+  @NotNull
+  private final File myBaseDir;
+
+  public AntPatternIncludeExcludeRules(@NotNull File baseDir, @NotNull Collection<String> body) {
+    super(baseDir, body);
+    myBaseDir = baseDir;
+  }
+
+  @NotNull
+  @Override
+  public Collection<File> collectFiles() {
+    return myBaseDir.exists() ? AntPatternFileCollector.scanDir(myBaseDir, getRulesArray(), getScanOptions()) : Collections.<File>emptyList();
+  }
+
+  @NotNull
+  @Override
+  public Collection<File> collectFiles(@NotNull Collection<File> directories) {
+    return FileRules.collectFiles(this, directories);
+  }
+
+  @Override
+  public boolean mayContainMatches(@NotNull File directory) {
+    return true;
+  }
+
+  @NotNull
+  private String[] getRulesArray() {
+    return getBody().toArray(new String[0]);
+  }
+
+  @NotNull
+  private static AntPatternFileCollector.ScanOption[] getScanOptions() {
+    return new AntPatternFileCollector.ScanOption[]{AntPatternFileCollector.ScanOption.USE_RULE_STRICTNESS, AntPatternFileCollector.ScanOption.ALLOW_EXTERNAL_SCAN};
+  }
+}
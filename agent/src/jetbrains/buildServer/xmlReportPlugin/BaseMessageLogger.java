@@ -18,9 +18,13 @@ package jetbrains.buildServer.xmlReportPlugin;
 
 import jetbrains.buildServer.agent.BuildProgressLogger;
 import jetbrains.buildServer.problems.BuildProblemUtil;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParseDeadline;
 import org.jetbrains.annotations.NotNull;
 
 /**
+ * Drops the calls made by a parsing which is {@link ParseDeadline#abandon(String) abandoned}, its report is already
+ * recorded as failed to parse.
+ *
  * @author vbedrosova
  */
 public class BaseMessageLogger implements MessageLogger {
@@ -39,25 +43,33 @@ public class BaseMessageLogger implements MessageLogger {
 
   @Override
   public void info(@NotNull final String message) {
+    if (isDropped()) return;
     myLogger.message(makeRelativePaths(message));
   }
 
   @Override
   public void warning(@NotNull final String message) {
+    if (isDropped()) return;
     myLogger.warning(makeRelativePaths(message));
   }
 
   @Override
   public void error(@NotNull final String message) {
+    if (isDropped()) return;
     myLogger.error(makeRelativePaths(message));
   }
 
   @Override
   public void failure(@NotNull final String message) {
+    if (isDropped()) return;
     myLogger.error(message);
     myLogger.logBuildProblem(BuildProblemUtil.createBuildProblem(myBuildProblemType, makeRelativePaths(message), myBaseFolder));
   }
 
+  protected static boolean isDropped() {
+    return ParseDeadline.isAbandoned();
+  }
+
   @NotNull
   protected String makeRelativePaths(@NotNull final String message) {
     return message.replace(myBaseFolder.replace("\\", "/") + "/", "").replace(myBaseFolder.replace("/", "\\") + "\\", "");
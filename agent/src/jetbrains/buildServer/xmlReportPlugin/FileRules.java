@@ -17,11 +17,13 @@
 package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * User: Victory.Bedrosova
@@ -46,13 +48,65 @@ public class FileRules implements Rules {
     return Collections.singletonList(myFile);
   }
 
+  @NotNull
+  public Collection<File> getRootDirectories() {
+    final File root = getRootDirectory(myFile);
+    return root == null ? Collections.<File>emptyList() : Collections.singletonList(root);
+  }
+
   @NotNull
   public List<File> collectFiles() {
-    return myFile.isDirectory() ? collectFilesInFolder(myFile) : Collections.singletonList(myFile);
+    return collectFiles(myFile);
+  }
+
+  @NotNull
+  public Collection<File> collectFiles(@NotNull Collection<File> directories) {
+    return collectFiles(this, directories);
+  }
+
+  public boolean mayContainMatches(@NotNull File directory) {
+    return getRootDirectories().contains(directory);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return myFile.equals(((FileRules)o).myFile);
+  }
+
+  @Override
+  public int hashCode() {
+    return myFile.hashCode();
+  }
+
+  @Nullable
+  static File getRootDirectory(@NotNull File file) {
+    return file.isDirectory() ? file : file.getParentFile();
+  }
+
+  /**
+   * @return the file itself or the files in it if it is a directory
+   */
+  @NotNull
+  static List<File> collectFiles(@NotNull File file) {
+    return file.isDirectory() ? collectFilesInFolder(file) : Collections.singletonList(file);
+  }
+
+  /**
+   * Explicitly named files and directories are not scanned recursively, so the matching files are filtered by their parent
+   */
+  @NotNull
+  static List<File> collectFiles(@NotNull Rules rules, @NotNull Collection<File> directories) {
+    final List<File> result = new ArrayList<File>();
+    for (File file : rules.collectFiles()) {
+      if (directories.contains(file.getParentFile())) result.add(file);
+    }
+    return result;
   }
 
   @NotNull
-  private List<File> collectFilesInFolder(@NotNull File folder) {
+  private static List<File> collectFilesInFolder(@NotNull File folder) {
     final File[] files = folder.listFiles();
     return files == null || files.length == 0 ? Collections.<File>emptyList() : Arrays.asList(files);
   }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.*;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Explicitly named report files and directories registered one by one, e.g. by a number of importData service messages.
+ * Each path is matched the same way {@link FileRules} matches its file.
+ *
+ * Paths may be added while the rules are monitored, so all the getters return snapshots.
+ */
+public class FileSetRules implements Rules {
+  @NotNull
+  private final Set<File> myFiles = new LinkedHashSet<File>();
+
+  /**
+   * @return false if the path has already been added
+   */
+  public synchronized boolean add(@NotNull File file) {
+    return myFiles.add(file);
+  }
+
+  @NotNull
+  public synchronized Collection<String> getBody() {
+    final List<String> body = new ArrayList<String>(myFiles.size());
+    for (File file : myFiles) {
+      body.add(file.getPath());
+    }
+    return body;
+  }
+
+  @NotNull
+  public synchronized Collection<File> getPaths() {
+    return new ArrayList<File>(myFiles);
+  }
+
+  @NotNull
+  public Collection<File> getRootDirectories() {
+    final Set<File> roots = new LinkedHashSet<File>();
+    for (File file : getPaths()) {
+      final File root = FileRules.getRootDirectory(file);
+      if (root != null) roots.add(root);
+    }
+    return roots;
+  }
+
+  @NotNull
+  public Collection<File> collectFiles() {
+    final List<File> result = new ArrayList<File>();
+    for (File file : getPaths()) {
+      result.addAll(FileRules.collectFiles(file));
+    }
+    return result;
+  }
+
+  @NotNull
+  public Collection<File> collectFiles(@NotNull Collection<File> directories) {
+    return FileRules.collectFiles(this, directories);
+  }
+
+  public boolean mayContainMatches(@NotNull File directory) {
+    return getRootDirectories().contains(directory);
+  }
+}
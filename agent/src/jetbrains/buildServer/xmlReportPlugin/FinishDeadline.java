@@ -0,0 +1,202 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.util.executors.ExecutorsFactory;
+import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounds the time the build finish waits for the report parsing.
+ *
+ * Once the deadline is over, the parsing of all the rules contexts is cancelled. The parsing which does not stop
+ * within the grace period is abandoned: its reports are recorded as failed to parse and the build finish goes on.
+ */
+public class FinishDeadline {
+  /**
+   * Milliseconds the build finish may wait for the report parsing
+   */
+  public static final String FINISH_TIMEOUT_PROPERTY = "teamcity.xmlReport.finishTimeout";
+  public static final long DEFAULT_FINISH_TIMEOUT = 30 * 60 * 1000L;
+  public static final long DEFAULT_GRACE_PERIOD = 5000L;
+  /**
+   * Maximum number of the final scans running at once, the number of the processors by default
+   */
+  public static final String FINAL_SCAN_THREADS_PROPERTY = "teamcity.xmlReport.finalScanThreads";
+
+  @NotNull
+  private final Collection<RulesContext> myRulesContexts;
+  private final long myTimeout;
+  private final long myDeadline;
+  private final long myGracePeriod;
+
+  @Nullable
+  private String myReason;
+  private long myGraceDeadline;
+
+  public FinishDeadline(@NotNull Collection<RulesContext> rulesContexts, long timeout) {
+    this(rulesContexts, timeout, DEFAULT_GRACE_PERIOD);
+  }
+
+  /**
+   * @param timeout milliseconds to wait for the parsing, not limited if not positive
+   * @param gracePeriod milliseconds to wait for the cancelled parsing to stop
+   */
+  public FinishDeadline(@NotNull Collection<RulesContext> rulesContexts, long timeout, long gracePeriod) {
+    myRulesContexts = rulesContexts;
+    myTimeout = timeout;
+    myDeadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    myGracePeriod = gracePeriod;
+  }
+
+  public void waitRuntimeParsing(@NotNull RulesContext rulesContext) throws ExecutionException, InterruptedException {
+    if (rulesContext.waitRuntimeParsing(myDeadline)) return;
+    final String reason = cancelAll();
+    // the parsing may have been started after the others were cancelled
+    rulesContext.cancelParsing(reason);
+    if (rulesContext.waitRuntimeParsing(getGraceDeadline())) return;
+    rulesContext.abandonParsing(reason);
+  }
+
+  public void waitFinish(@NotNull RulesContext rulesContext) throws ExecutionException, InterruptedException {
+    if (rulesContext.waitFinish(myDeadline)) return;
+    final String reason = cancelAll();
+    // the parsing may have been started after the others were cancelled
+    rulesContext.cancelParsing(reason);
+    if (rulesContext.waitFinish(getGraceDeadline())) return;
+    rulesContext.abandonParsing(reason);
+  }
+
+  /**
+   * Stops the periodic scans, a scan still running after the deadline is not waited for
+   */
+  public void stopScans(@NotNull PollingScheduler scheduler) throws InterruptedException {
+    if (!scheduler.stop(myDeadline)) cancelAll();
+  }
+
+  /**
+   * Runs the final scans of the rules contexts in parallel and waits for them, so the build waits for the longest scan
+   * rather than for the sum of them however busy the report monitor threads are. A scan which has not started
+   * by the deadline is skipped and its rules context is abandoned.
+   * A scan failure is logged and does not stop the other scans.
+   *
+   * @param scans the final scan of each rules context, in the same order
+   * @param threads maximum number of the scans running at once
+   */
+  public void runScans(@NotNull List<RulesContext> rulesContexts, @NotNull List<Runnable> scans, int threads,
+                       @NotNull BuildProgressLogger logger) throws InterruptedException {
+    if (scans.isEmpty()) return;
+    final ExecutorService executor = ExecutorsFactory.newFixedDaemonExecutor("xml-report-plugin final scan", Math.min(scans.size(), Math.max(1, threads)));
+    try {
+      final List<Future<?>> tasks = new ArrayList<Future<?>>(scans.size());
+      for (int i = 0; i < scans.size(); ++i) {
+        final RulesContext rulesContext = rulesContexts.get(i);
+        final Runnable scan = scans.get(i);
+        final FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+          public void run() {
+            final String reason = getReason();
+            if (reason == null) scan.run();
+            else rulesContext.abandonParsing(reason);
+          }
+        }, null);
+        executor.execute(task);
+        tasks.add(task);
+      }
+
+      for (int i = 0; i < tasks.size(); ++i) {
+        try {
+          waitScan(rulesContexts.get(i), tasks.get(i));
+        } catch (ExecutionException e) {
+          LoggingUtils.logError("Exception occurred while scanning for the reports", e.getCause(), logger, false);
+        }
+      }
+    } finally {
+      // the abandoned scans complete on their own
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Waits for the parsing of all the rules contexts, the build progress line shows how many of them are done
+   *
+   * @param fullFinish whether to wait for the before finish parsing as well
+   */
+  public void waitParsing(@NotNull List<RulesContext> rulesContexts, boolean fullFinish, @NotNull BuildProgressLogger logger)
+    throws ExecutionException, InterruptedException {
+    int finished = 0;
+    for (RulesContext rulesContext : rulesContexts) {
+      logger.progressMessage("Waiting for the report parsing: " + finished + " of " + rulesContexts.size() + " report rules are done");
+      if (fullFinish) waitFinish(rulesContext);
+      else waitRuntimeParsing(rulesContext);
+      ++finished;
+    }
+  }
+
+  /**
+   * Waits for the final scan of the rules context, the scan can not be cancelled,
+   * so the reports it finds after the deadline are abandoned
+   */
+  public void waitScan(@NotNull RulesContext rulesContext, @NotNull Future<?> scan) throws ExecutionException, InterruptedException {
+    if (RulesContext.join(scan, myDeadline)) return;
+    final String reason = cancelAll();
+    rulesContext.cancelParsing(reason);
+    if (RulesContext.join(scan, getGraceDeadline())) return;
+    rulesContext.abandonParsing(reason);
+  }
+
+  /**
+   * @return whether the parsing has been cancelled because of the deadline
+   */
+  public synchronized boolean isExceeded() {
+    return myReason != null;
+  }
+
+  /**
+   * Cancels the parsing of all the rules contexts once, so they stop in the same grace period
+   */
+  @NotNull
+  private synchronized String cancelAll() {
+    if (myReason == null) {
+      myReason = "Build finish waited for the report parsing longer than the " + myTimeout + " ms timeout";
+      myGraceDeadline = System.currentTimeMillis() + myGracePeriod;
+      LoggingUtils.LOG.warn(myReason + ", cancelling the parsing");
+      for (RulesContext rulesContext : myRulesContexts) {
+        rulesContext.cancelParsing(myReason);
+      }
+    }
+    return myReason;
+  }
+
+  @Nullable
+  private synchronized String getReason() {
+    return myReason;
+  }
+
+  private synchronized long getGraceDeadline() {
+    return myGraceDeadline;
+  }
+}
@@ -17,10 +17,27 @@
 package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import jetbrains.buildServer.agent.BuildProgressLogger;
 import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParsePermits;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * User: vbedrosova
@@ -44,6 +61,67 @@ public class MonitorRulesCommand {
 
   public static interface MonitorRulesListener {
     void modificationDetected(@NotNull File file);
+
+    /**
+     * @return false if the found reports can not be taken now, e.g. the parse queue is full; the periodic scan
+     * stops then and the remaining reports are picked up by the next one
+     */
+    boolean isAccepting();
+  }
+
+  /**
+   * Optional collaborators of the command, by default the rules are scanned on each run
+   * and the found files are read one by one
+   */
+  public static final class Options {
+    @Nullable
+    private ReportDirectoryWatcher myWatcher;
+    @Nullable
+    private ReportScanIndex myScanIndex;
+    @Nullable
+    private ReportSettlePolicy mySettlePolicy;
+    @Nullable
+    private ExecutorService myProbeExecutor;
+    @NotNull
+    private Semaphore myProbePermits = new Semaphore(ParsePermits.DEFAULT_IO_THREADS);
+
+    /**
+     * @param watcher tells which directories have changed, so the rules are scanned only if some did
+     */
+    @NotNull
+    public Options withWatcher(@Nullable ReportDirectoryWatcher watcher) {
+      myWatcher = watcher;
+      return this;
+    }
+
+    /**
+     * @param scanIndex shares the scans and the found reports with the other rules contexts
+     */
+    @NotNull
+    public Options withScanIndex(@Nullable ReportScanIndex scanIndex) {
+      myScanIndex = scanIndex;
+      return this;
+    }
+
+    /**
+     * @param settlePolicy holds back the reports which may be still being written
+     */
+    @NotNull
+    public Options withSettlePolicy(@Nullable ReportSettlePolicy settlePolicy) {
+      mySettlePolicy = settlePolicy;
+      return this;
+    }
+
+    /**
+     * @param probeExecutor reads the attributes of the found files in parallel, e.g. on virtual threads
+     * @param probePermits bounds the number of files read in parallel
+     */
+    @NotNull
+    public Options withProbeExecutor(@Nullable ExecutorService probeExecutor, @NotNull Semaphore probePermits) {
+      myProbeExecutor = probeExecutor;
+      myProbePermits = probePermits;
+      return this;
+    }
   }
 
   @NotNull
@@ -56,76 +134,175 @@ public class MonitorRulesCommand {
   private final MonitorRulesListener myListener;
   private final boolean myQuietMode;
 
+  @Nullable
+  private final ReportDirectoryWatcher myWatcher;
+  @Nullable
+  private final ReportScanIndex myScanIndex;
+  @Nullable
+  private final ReportSettlePolicy mySettlePolicy;
+  /**
+   * Reads the attributes of the found files in parallel, e.g. on virtual threads, the files are read one by one if null
+   */
+  @Nullable
+  private final ExecutorService myProbeExecutor;
+  /**
+   * Bounds the number of files read in parallel
+   */
+  @NotNull
+  private final Semaphore myProbePermits;
+
   private boolean myFirstRun;
+  private volatile boolean myScanRequested;
+  private boolean myChangesFound;
+  /**
+   * Set once the listener stops accepting the reports during a periodic scan
+   */
+  private boolean myScanStopped;
 
   public MonitorRulesCommand(@NotNull MonitorRulesParameters parameters,
                              @NotNull ReportStateHolder reportStateHolder,
                              final boolean quietMode,
                              @NotNull MonitorRulesListener listener) {
+    this(parameters, reportStateHolder, quietMode, listener, new Options());
+  }
+
+  public MonitorRulesCommand(@NotNull MonitorRulesParameters parameters,
+                             @NotNull ReportStateHolder reportStateHolder,
+                             final boolean quietMode,
+                             @NotNull MonitorRulesListener listener,
+                             @NotNull Options options) {
     myParameters = parameters;
     myReportStateHolder = reportStateHolder;
     myListener = listener;
     myQuietMode = quietMode;
+    myWatcher = options.myWatcher;
+    myScanIndex = options.myScanIndex;
+    mySettlePolicy = options.mySettlePolicy;
+    myProbeExecutor = options.myProbeExecutor;
+    myProbePermits = options.myProbePermits;
 
     myFirstRun = true;
   }
 
   public void run() {
-    if (myFirstRun) {
-      if (!myQuietMode) {
-        logWatchingPaths();
-      }
+    run(false);
+  }
+
+  /**
+   * @param forceScan scan the rules even if the watcher reports no changes and do not hold back the reports
+   *                  which may be still being written, e.g. for the final scan
+   * @return whether new or changed reports were found, including the ones which are still being written
+   */
+  public boolean run(final boolean forceScan) {
+    synchronized (this) {
+      if (myFirstRun) {
+        if (!myQuietMode) {
+          logWatchingPaths();
+        }
 
-      myFirstRun = false;
+        myFirstRun = false;
+      }
     }
 
-    monitorRules(
-      new MonitorRulesFileProcessor() {
-        public void processFile(@NotNull File file) {
-          if (acceptFile(file)) {
+    final boolean scanRequested = myScanRequested;
+    myScanRequested = false;
 
-            final long fileLastModified = file.lastModified();
+    final Collection<File> changedDirectories = myWatcher == null ? null : myWatcher.pollChangedDirectories();
+    final boolean changed = changedDirectories == null || !changedDirectories.isEmpty();
+    final boolean settling = mySettlePolicy != null && mySettlePolicy.isSettling();
+    if (!changed && !forceScan && !scanRequested && !settling) return false;
 
-            if (timeConstraintsSatisfied(fileLastModified)) {
-              switch (myReportStateHolder.getReportState(file)) {
-                case ON_PROCESSING:
-                  return;
-                case UNKNOWN:
-                  myReportStateHolder.setReportState(file, ReportStateHolder.ReportState.ON_PROCESSING, fileLastModified, file.length());
-                  modificationDetected(file);
-                  return;
-                case PROCESSED:
-                  if (!myParameters.isReparseUpdated()) return;
-                case ERROR:
-                case OUT_OF_DATE:
-                  final long fileLength = file.length();
+    myChangesFound = false;
+    myScanStopped = false;
+    monitorRules(forceScan || scanRequested, forceScan || scanRequested ? null : changedDirectories,
+      new MonitorRulesFileProcessor() {
+        public void processFile(@NotNull File file, @Nullable BasicFileAttributes attributes) {
+          if (myScanStopped) return;
+          // reading the attributes is the only file system call for a known report, only new or changed ones are checked
+          // to be readable, an unreadable one is skipped until its permissions change as before
+          if (attributes == null || !attributes.isRegularFile() || attributes.size() == 0) {
+            if (mySettlePolicy != null) mySettlePolicy.forget(file);
+            return;
+          }
 
-                  final Long lastModified = myReportStateHolder.getLastModified(file);
-                  final Long length = myReportStateHolder.getLength(file);
+          final long fileLastModified = attributes.lastModifiedTime().toMillis();
+          final long fileLength = attributes.size();
+          final ReportStateHolder.FileState state = myReportStateHolder.getFileState(file);
 
-                  assert lastModified != null;
-                  assert length != null;
+          if (timeConstraintsSatisfied(fileLastModified)) {
+            switch (state == null ? ReportStateHolder.ReportState.UNKNOWN : state.getReportState()) {
+              case ON_PROCESSING:
+                return;
+              case DUPLICATE:
+                assert state != null;
+                // parsed by other rules of the same type unless the report has changed since or their claim is released,
+                // e.g. they belong to a finished build step
+                if (fileLastModified == state.getLastModified() && fileLength == state.getLength() &&
+                    (myScanIndex == null || myScanIndex.isClaimed(myParameters.getType(), file))) return;
+              case UNKNOWN:
+                if (isSettled(file, fileLastModified, fileLength, forceScan) && isAccepting(forceScan) && isReadable(file) &&
+                    myReportStateHolder.compareAndSetReportState(file, state, ReportStateHolder.ReportState.ON_PROCESSING, fileLastModified, fileLength)) {
+                  modificationDetected(file);
+                }
+                return;
+              case PROCESSED:
+                if (!myParameters.isReparseUpdated()) return;
+              case ERROR:
+              case OUT_OF_DATE:
+                assert state != null;
 
-                  if (fileLastModified > lastModified || fileLength > length) {
-                    myReportStateHolder.setReportState(file, ReportStateHolder.ReportState.ON_PROCESSING, file.lastModified(), file.length());
+                if (fileLastModified > state.getLastModified() || fileLength > state.getLength()) {
+                  if (isSettled(file, fileLastModified, fileLength, forceScan) && isAccepting(forceScan) && isReadable(file) &&
+                      myReportStateHolder.compareAndSetReportState(file, state, ReportStateHolder.ReportState.ON_PROCESSING, fileLastModified, fileLength)) {
                     modificationDetected(file);
                   }
-              }
-            } else {
-              myReportStateHolder.setReportState(file, ReportStateHolder.ReportState.OUT_OF_DATE, fileLastModified, file.length());
+                }
             }
+          } else if (!isSameOutOfDate(state, fileLastModified, fileLength)) {
+            myReportStateHolder.setReportState(file, ReportStateHolder.ReportState.OUT_OF_DATE, fileLastModified, fileLength);
+            myChangesFound = true;
           }
         }
       }
     );
+    if (myScanStopped) {
+      // the watcher will not report the directories of the remaining reports again
+      myScanRequested = true;
+      myChangesFound = true;
+    }
+    return myChangesFound || mySettlePolicy != null && mySettlePolicy.isSettling();
+  }
+
+  /**
+   * Should be called when a path is added to the monitored rules, the next run will scan the rules
+   */
+  public void pathAdded(@NotNull File path) {
+    if (myWatcher != null) {
+      final File root = FileRules.getRootDirectory(path);
+      if (root != null) myWatcher.addRoot(root);
+    }
+    myScanRequested = true;
+
+    synchronized (this) {
+      if (!myFirstRun && !myQuietMode) {
+        logWatchingPaths(Collections.singletonList(path.getPath()));
+      }
+    }
+  }
+
+  public void dispose() {
+    if (myWatcher != null) myWatcher.close();
   }
 
   public void logWatchingPaths() {
+    logWatchingPaths(myParameters.getRules().getBody());
+  }
+
+  private void logWatchingPaths(@NotNull final Collection<String> rules) {
     LoggingUtils.logInTarget(LoggingUtils.getTypeDisplayName(myParameters.getType()) + " report watcher",
       new Runnable() {
         public void run() {
           String message = "Watching paths:";
-          final Collection<String> rules = myParameters.getRules().getBody();
           if (rules.isEmpty()) {
             message += " <no paths>";
             LoggingUtils.warn(message, getThreadLogger());
@@ -144,22 +321,132 @@ public class MonitorRulesCommand {
     return myParameters.getThreadLogger();
   }
 
+  /**
+   * The final scan takes all the reports, the build waits for them anyway
+   */
+  private boolean isAccepting(boolean forceScan) {
+    if (!forceScan && !myListener.isAccepting()) myScanStopped = true;
+    return !myScanStopped;
+  }
+
   private void modificationDetected(File file) {
+    myChangesFound = true;
     myListener.modificationDetected(file);
   }
 
   private interface MonitorRulesFileProcessor {
-    void processFile(@NotNull File file);
+    void processFile(@NotNull File file, @Nullable BasicFileAttributes attributes);
+  }
+
+  /**
+   * @param changedDirectories if specified, only the files in these directories and the held back ones are checked
+   */
+  private void monitorRules(boolean forceScan, @Nullable Collection<File> changedDirectories,
+                            @NotNull MonitorRulesFileProcessor monitorRulesFileProcessor) {
+    final Rules rules = myParameters.getRules();
+    final Collection<File> files;
+    if (changedDirectories != null) {
+      final Set<File> changedFiles = new LinkedHashSet<File>(rules.collectFiles(changedDirectories));
+      if (mySettlePolicy != null) changedFiles.addAll(mySettlePolicy.getSettlingReports());
+      files = changedFiles;
+    } else {
+      files = myScanIndex == null ? rules.collectFiles() : myScanIndex.collectFiles(rules, forceScan);
+    }
+    final List<BasicFileAttributes> attributes = readAttributes(files);
+    int i = 0;
+    for (File file : files) {
+      monitorRulesFileProcessor.processFile(file, attributes.get(i++));
+    }
+    if (mySettlePolicy != null && changedDirectories == null) mySettlePolicy.retain(files);
+  }
+
+  private boolean isSettled(@NotNull File file, long lastModified, long length, boolean forceScan) {
+    if (mySettlePolicy == null) return true;
+    if (forceScan) {
+      mySettlePolicy.forget(file);
+      return true;
+    }
+    return mySettlePolicy.isSettled(file, lastModified, length);
+  }
+
+  /**
+   * @return attributes of the files in the iteration order, null for the files which can not be read
+   */
+  @NotNull
+  private List<BasicFileAttributes> readAttributes(@NotNull Collection<File> files) {
+    final List<BasicFileAttributes> result = new ArrayList<BasicFileAttributes>(files.size());
+    if (myProbeExecutor == null || files.size() < 2) {
+      for (File file : files) {
+        result.add(readAttributes(file));
+      }
+      return result;
+    }
+
+    final List<Future<BasicFileAttributes>> probes = new ArrayList<Future<BasicFileAttributes>>(files.size());
+    for (final File file : files) {
+      Future<BasicFileAttributes> probe = null;
+      myProbePermits.acquireUninterruptibly();
+      try {
+        probe = myProbeExecutor.submit(new Callable<BasicFileAttributes>() {
+          public BasicFileAttributes call() {
+            try {
+              return readAttributes(file);
+            } finally {
+              myProbePermits.release();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the agent is shutting down, the file is read in this thread
+        myProbePermits.release();
+      }
+      probes.add(probe);
+    }
+
+    boolean interrupted = false;
+    int i = 0;
+    for (File file : files) {
+      final Future<BasicFileAttributes> probe = probes.get(i++);
+      BasicFileAttributes attributes = null;
+      if (probe == null) {
+        attributes = readAttributes(file);
+      } else {
+        // the probes are short, so wait for them even if interrupted
+        while (true) {
+          try {
+            attributes = probe.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            break;
+          }
+        }
+      }
+      result.add(attributes);
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    return result;
   }
 
-  private void monitorRules(@NotNull MonitorRulesFileProcessor monitorRulesFileProcessor) {
-    for (File file : myParameters.getRules().collectFiles()) {
-      monitorRulesFileProcessor.processFile(file);
+  @Nullable
+  private static BasicFileAttributes readAttributes(@NotNull File file) {
+    try {
+      return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    } catch (InvalidPathException e) {
+      return null;
     }
   }
 
-  private boolean acceptFile(@NotNull File f) {
-    return f.isFile() && f.canRead() && f.length() > 0;
+  private static boolean isSameOutOfDate(@Nullable ReportStateHolder.FileState state, long lastModified, long length) {
+    return state != null && state.getReportState() == ReportStateHolder.ReportState.OUT_OF_DATE
+           && state.getLastModified() == lastModified && state.getLength() == length;
+  }
+
+  private static boolean isReadable(@NotNull File file) {
+    return Files.isReadable(file.toPath());
   }
 
   private boolean timeConstraintsSatisfied(long lastModified) {
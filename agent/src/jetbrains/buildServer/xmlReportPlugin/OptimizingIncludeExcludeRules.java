@@ -19,10 +19,14 @@ package jetbrains.buildServer.xmlReportPlugin;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import jetbrains.buildServer.util.CollectionsUtil;
 import jetbrains.buildServer.util.Converter;
-import jetbrains.buildServer.util.pathMatcher.AntPatternFileCollector;
+import jetbrains.buildServer.util.FileUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * User: Victory.Bedrosova
@@ -30,14 +34,28 @@ import org.jetbrains.annotations.NotNull;
  * Time: 2:23 PM
  */
 public class OptimizingIncludeExcludeRules implements Rules {
+  public static final String SCAN_PARALLELISM_PROPERTY = "teamcity.xmlReport.scanParallelism";
+
   @NotNull
   private final File myBaseDir;
   @NotNull
   private final Collection<String> myBody;
+  @Nullable
+  private volatile RulesTrie myTrie;
+  @Nullable
+  private final ForkJoinPool myScanPool;
 
   public OptimizingIncludeExcludeRules(@NotNull final File baseDir, @NotNull Collection<String> body) {
+    this(baseDir, body, null);
+  }
+
+  /**
+   * @param scanPool if specified, the directories are scanned in parallel
+   */
+  public OptimizingIncludeExcludeRules(@NotNull final File baseDir, @NotNull Collection<String> body, @Nullable ForkJoinPool scanPool) {
     myBaseDir = baseDir;
     myBody = body;
+    myScanPool = scanPool;
   }
 
   @NotNull
@@ -49,6 +67,30 @@ public class OptimizingIncludeExcludeRules implements Rules {
     });
   }
 
+  @NotNull
+  public Collection<File> getRootDirectories() {
+    final Set<File> roots = new LinkedHashSet<File>();
+    for (String rule : myBody) {
+      if (!isIncludeRule(rule)) continue;
+      final String root = getNonPatternPrefix(getRulePath(rule));
+      roots.add(root.length() == 0 ? myBaseDir : FileUtil.resolvePath(myBaseDir, root));
+    }
+    return roots;
+  }
+
+  @NotNull
+  private static String getNonPatternPrefix(@NotNull String path) {
+    path = path.replace('\\', '/');
+    int wildcard = path.length();
+    for (char c : new char[]{'*', '?'}) {
+      final int index = path.indexOf(c);
+      if (index >= 0 && index < wildcard) wildcard = index;
+    }
+    // the rule either names a file or a directory, the parent directory covers both
+    final int separator = path.lastIndexOf('/', wildcard == path.length() ? path.length() - 1 : wildcard);
+    return separator <= 0 ? (separator == 0 ? "/" : "") : path.substring(0, separator);
+  }
+
   private static boolean isIncludeRule(@NotNull String rule) {
     return !rule.startsWith("-:");
   }
@@ -68,16 +110,43 @@ public class OptimizingIncludeExcludeRules implements Rules {
 
   @NotNull
   public Collection<File> collectFiles() {
-    return myBaseDir.exists() ? AntPatternFileCollector.scanDir(myBaseDir, getRulesArray(), getScanOptions()) : Collections.<File>emptyList();
+    return myBaseDir.exists() ? getTrie().collectFiles(myScanPool) : Collections.<File>emptyList();
   }
 
   @NotNull
-  private String[] getRulesArray() {
-    return  myBody.toArray(new String[0]);
+  public Collection<File> collectFiles(@NotNull Collection<File> directories) {
+    return getTrie().collectFilesIn(directories);
+  }
+
+  public boolean mayContainMatches(@NotNull File directory) {
+    return getTrie().mayContainMatches(directory);
   }
 
+  /**
+   * The trie is built on the first use, so the rules which override the scans, e.g. {@link AntPatternIncludeExcludeRules}, never build it
+   */
   @NotNull
-  private AntPatternFileCollector.ScanOption[] getScanOptions() {
-    return new AntPatternFileCollector.ScanOption[]{AntPatternFileCollector.ScanOption.USE_RULE_STRICTNESS, AntPatternFileCollector.ScanOption.ALLOW_EXTERNAL_SCAN};
+  private RulesTrie getTrie() {
+    RulesTrie trie = myTrie;
+    if (trie == null) {
+      synchronized (this) {
+        trie = myTrie;
+        if (trie == null) myTrie = trie = new RulesTrie(myBaseDir, myBody);
+      }
+    }
+    return trie;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final OptimizingIncludeExcludeRules that = (OptimizingIncludeExcludeRules)o;
+    return myBaseDir.equals(that.myBaseDir) && myBody.equals(that.myBody);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * myBaseDir.hashCode() + myBody.hashCode();
   }
 }
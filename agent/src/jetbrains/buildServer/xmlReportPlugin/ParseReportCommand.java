@@ -17,8 +17,12 @@
 package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParseDeadline;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * User: vbedrosova
@@ -26,6 +30,12 @@ import org.jetbrains.annotations.NotNull;
  * Time: 18:06
  */
 public class ParseReportCommand implements Runnable {
+  /**
+   * Milliseconds a single report may be parsed for, a report parsed longer is recorded as failed to parse
+   */
+  public static final String PARSE_TIMEOUT_PROPERTY = "teamcity.xmlReport.parseTimeout";
+  public static final long DEFAULT_PARSE_TIMEOUT = 10 * 60 * 1000L;
+
   @NotNull
   private final File myFile;
 
@@ -38,14 +48,41 @@ public class ParseReportCommand implements Runnable {
   @NotNull
   private final ParserFactory myParserFactory;
 
+  private final long myTimeout;
+  /**
+   * The command is created once the report or its change is found
+   */
+  private final long myFoundTime = System.currentTimeMillis();
+
+  @Nullable
+  private volatile String myCancelReason;
+  private volatile boolean myAbandoned;
+  @Nullable
+  private volatile ParseDeadline myDeadline;
+  /**
+   * Set once the report state is recorded, either by the parsing or when the parsing is abandoned
+   */
+  @NotNull
+  private final AtomicBoolean myStateRecorded = new AtomicBoolean();
+
+  /**
+   * @param timeout milliseconds the report may be parsed for, not limited if not positive
+   */
   public ParseReportCommand(@NotNull final File file,
                             @NotNull final ParseParameters parameters,
                             @NotNull final RulesState rulesState,
-                            @NotNull final ParserFactory parserFactory) {
+                            @NotNull final ParserFactory parserFactory,
+                            long timeout) {
     myFile = file;
     myParameters = parameters;
     myRulesState = rulesState;
     myParserFactory = parserFactory;
+    myTimeout = timeout;
+  }
+
+  @NotNull
+  public File getFile() {
+    return myFile;
   }
 
   @NotNull
@@ -53,7 +90,51 @@ public class ParseReportCommand implements Runnable {
     return myParserFactory.getParsingStage();
   }
 
+  /**
+   * Asks the parsing to stop, the parsers which read the report via {@link jetbrains.buildServer.xmlReportPlugin.utils.ResumableReportInput}
+   * stop on the next read and the report is recorded as failed to parse with the given reason
+   */
+  public void cancel(@NotNull String reason) {
+    myCancelReason = reason;
+    final ParseDeadline deadline = myDeadline;
+    if (deadline != null) stop(deadline, reason);
+  }
+
+  /**
+   * Records the report as failed to parse right away without waiting for the parsing to stop,
+   * the result of the parsing which is still running is dropped then and its reporters drop the calls
+   */
+  public void abandon(@NotNull String reason) {
+    myAbandoned = true;
+    cancel(reason);
+    if (!myStateRecorded.compareAndSet(false, true)) return;
+
+    final ParsingResult parsingResult = myParserFactory.createEmptyResult();
+    parsingResult.setProblem(createCancelledProblem(reason));
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ERROR, parsingResult);
+  }
+
   public void run() {
+    if (myStateRecorded.get()) return; // abandoned before started
+
+    final ParseDeadline deadline = ParseDeadline.enter(myTimeout, myFoundTime);
+    myDeadline = deadline;
+    final String cancelReason = myCancelReason;
+    if (cancelReason != null) stop(deadline, cancelReason);
+    try {
+      parse(deadline);
+    } finally {
+      myDeadline = null;
+      deadline.exit();
+    }
+  }
+
+  private void stop(@NotNull ParseDeadline deadline, @NotNull String reason) {
+    if (myAbandoned) deadline.abandon(reason);
+    else deadline.cancel(reason);
+  }
+
+  private void parse(@NotNull ParseDeadline deadline) {
     final Parser parser = myParserFactory.createParser(myParameters);
 
     boolean finished;
@@ -63,10 +144,23 @@ public class ParseReportCommand implements Runnable {
     } catch (ParsingException e) {
       finished = true;
       problem = e;
+    } catch (ParseDeadline.CancelledException e) {
+      finished = true;
+      problem = createCancelledProblem(e.getMessage());
     } catch (Throwable t) {
       finished = true;
       problem = t;
-      LoggingUtils.logException("Unexpected exception occurred while parsing " + myFile, t, myParameters.getThreadLogger());
+      if (!ParseDeadline.isAbandoned()) {
+        LoggingUtils.logException("Unexpected exception occurred while parsing " + myFile, t, myParameters.getThreadLogger());
+      }
+    }
+
+    // the parsing has stopped because of the cancellation rather than of the report contents
+    final String cancelReason = deadline.getCancelReason();
+    if (cancelReason != null && (problem != null || !finished)) {
+      finished = true;
+      problem = createCancelledProblem(cancelReason);
+      LoggingUtils.LOG.warn("Stopped parsing " + myFile + ": " + cancelReason);
     }
 
     final ParsingResult parsingResult = parser.getParsingResult();
@@ -74,6 +168,8 @@ public class ParseReportCommand implements Runnable {
 
     if (problem != null) parsingResult.setProblem(problem);
 
+    if (!myStateRecorded.compareAndSet(false, true)) return; // abandoned
+
     if (finished) { // file processed
       parsingResult.logAsFileResult(myFile, myParameters);
       myRulesState.setReportState(myFile, problem == null ? ReportStateHolder.ReportState.PROCESSED : ReportStateHolder.ReportState.ERROR, parsingResult);
@@ -82,4 +178,9 @@ public class ParseReportCommand implements Runnable {
       myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ERROR, parsingResult);
     }
   }
+
+  @NotNull
+  private static ParsingException createCancelledProblem(@NotNull String reason) {
+    return new ParsingException(new InterruptedIOException(reason));
+  }
 }
\ No newline at end of file
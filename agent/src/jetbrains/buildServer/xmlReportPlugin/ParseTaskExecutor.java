@@ -0,0 +1,396 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import jetbrains.buildServer.util.executors.ExecutorsFactory;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParsePermits;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs report parsing tasks on a pool of worker threads.
+ *
+ * Tasks are queued per lane (one lane per rules context) and lanes are served round-robin,
+ * so a rule with thousands of pending reports can not starve the others.
+ * Within a lane the pending tasks are run in the {@link ParseOrder}, e.g. the reports advertising failures and the small
+ * ones first, but tasks submitted for the same file within a lane never run concurrently and run in submission order.
+ * The number of pending tasks is bounded: submitting a task blocks while the parsers are saturated, the report scans
+ * offer the found reports without blocking and leave the rest for the next scan once the queue is full.
+ *
+ * The workers run either on a fixed pool of platform threads or on the given executor, e.g. one starting a virtual thread
+ * per worker. On a fixed pool the number of running workers, i.e. of the reports being parsed, never exceeds the parallelism.
+ * On the given executor more reports are parsed at once, the parsing is bounded by the {@link ParsePermits}: the CPU permits
+ * are the parallelism and the I/O permits are the I/O threads, so reading some reports overlaps parsing the others.
+ */
+public class ParseTaskExecutor {
+  public static final String PARSING_THREADS_PROPERTY = "teamcity.xmlReport.parsingThreads";
+  /**
+   * Number of threads to parse the reports which are parsed before the build finish, the runtime parsing threads by default
+   */
+  public static final String FINISH_PARSING_THREADS_PROPERTY = "teamcity.xmlReport.finishParsingThreads";
+  public static final String QUEUE_CAPACITY_PROPERTY = "teamcity.xmlReport.parseQueueCapacity";
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+  public static final String PARSE_ORDER_PROPERTY = "teamcity.xmlReport.parseOrder";
+  /**
+   * Parse the reports and probe the report files on virtual threads if the JVM supports them
+   */
+  public static final String VIRTUAL_THREADS_PROPERTY = "teamcity.xmlReport.virtualThreads";
+
+  public enum ParseOrder {
+    /**
+     * In the discovery order
+     */
+    FIFO,
+    /**
+     * Smaller reports first
+     */
+    SMALLEST_FIRST,
+    /**
+     * Reports advertising failed tests in the root element first, smaller reports first then
+     */
+    FAILURES_FIRST;
+
+    @Nullable
+    public static ParseOrder of(@Nullable String name) {
+      if (name == null) return null;
+      for (ParseOrder order : values()) {
+        if (order.name().equalsIgnoreCase(name.trim())) return order;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Optional settings of the executor
+   */
+  public static final class Options {
+    private int myCapacity = DEFAULT_QUEUE_CAPACITY;
+    @Nullable
+    private ExecutorService myWorkers;
+    private int myIoThreads = ParsePermits.DEFAULT_IO_THREADS;
+
+    /**
+     * @param capacity maximum number of tasks waiting to be run
+     */
+    @NotNull
+    public Options withCapacity(int capacity) {
+      myCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * @param workers executor to run the workers on, it must be able to run maxParallelism tasks simultaneously;
+     *                a fixed pool of maxParallelism threads is created if null
+     */
+    @NotNull
+    public Options withWorkers(@Nullable ExecutorService workers) {
+      myWorkers = workers;
+      return this;
+    }
+
+    /**
+     * @param ioThreads number of report files which may be read simultaneously by the parsers running on the given workers
+     */
+    @NotNull
+    public Options withIoThreads(int ioThreads) {
+      myIoThreads = ioThreads;
+      return this;
+    }
+  }
+
+  @NotNull
+  private final ExecutorService myWorkers;
+  private final int myMaxParallelism;
+  private final int myCapacity;
+  private final int myIoThreads;
+  /**
+   * Null unless the workers run on the given executor
+   */
+  @Nullable
+  private final CpuPermits myCpuPermits;
+  @NotNull
+  private final Semaphore myIoPermits;
+
+  @NotNull
+  private final Object myLock = new Object();
+  @NotNull
+  private final Map<Object, Lane> myLanes = new LinkedHashMap<Object, Lane>();
+  @NotNull
+  private final Deque<Lane> myRoundRobin = new ArrayDeque<Lane>();
+
+  private int myParallelism;
+  private int myActiveWorkers;
+  private int myPendingTasks;
+  private long mySubmittedTasks;
+  @NotNull
+  private volatile ParseOrder myOrder = ParseOrder.FIFO;
+
+  public ParseTaskExecutor(int maxParallelism, int parallelism) {
+    this(maxParallelism, parallelism, new Options());
+  }
+
+  public ParseTaskExecutor(int maxParallelism, int parallelism, @NotNull Options options) {
+    myMaxParallelism = Math.max(1, maxParallelism);
+    myCapacity = Math.max(1, options.myCapacity);
+    myWorkers = options.myWorkers == null ? ExecutorsFactory.newFixedDaemonExecutor("xml-report-plugin", myMaxParallelism) : options.myWorkers;
+    myIoThreads = Math.max(1, options.myIoThreads);
+    myIoPermits = new Semaphore(myIoThreads);
+    myCpuPermits = options.myWorkers == null ? null : new CpuPermits();
+    setParallelism(parallelism);
+  }
+
+  /**
+   * Sets the number of reports which may be parsed simultaneously, bounded by the max parallelism
+   * @param parallelism desired number of parsing threads
+   */
+  public void setParallelism(int parallelism) {
+    synchronized (myLock) {
+      final int previous = myParallelism;
+      myParallelism = Math.max(1, Math.min(parallelism, myMaxParallelism));
+      if (myCpuPermits != null) myCpuPermits.adjust(myParallelism - previous);
+    }
+    startWorkers();
+  }
+
+  /**
+   * @return permits to read or probe the report files, shared by all the users of the same workers
+   */
+  @NotNull
+  public Semaphore getIoPermits() {
+    return myIoPermits;
+  }
+
+  public int getParallelism() {
+    synchronized (myLock) {
+      return myParallelism;
+    }
+  }
+
+  public void setOrder(@NotNull ParseOrder order) {
+    myOrder = order;
+  }
+
+  /**
+   * Blocks while the queue is full, the task is queued anyway if the waiting thread is interrupted
+   */
+  @NotNull
+  public Future<?> submit(@NotNull Object laneKey, @NotNull File file, @NotNull Runnable command) {
+    return submit(laneKey, file, command, true);
+  }
+
+  /**
+   * Queues the task even if the queue is full, so the calling thread is never parked;
+   * the report scans check {@link #isSaturated()} before offering the found reports
+   */
+  @NotNull
+  public Future<?> offer(@NotNull Object laneKey, @NotNull File file, @NotNull Runnable command) {
+    return submit(laneKey, file, command, false);
+  }
+
+  /**
+   * @return whether the queue is full
+   */
+  public boolean isSaturated() {
+    synchronized (myLock) {
+      return myPendingTasks >= myCapacity;
+    }
+  }
+
+  @NotNull
+  private Future<?> submit(@NotNull Object laneKey, @NotNull File file, @NotNull Runnable command, boolean wait) {
+    final FutureTask<Object> task = new FutureTask<Object>(command, null);
+    final ParseOrder order = myOrder;
+    final long length = order == ParseOrder.FIFO ? 0 : file.length();
+    final boolean failureAdvertised = order == ParseOrder.FAILURES_FIRST && ParserUtils.isFailureAdvertised(file);
+    synchronized (myLock) {
+      while (wait && myPendingTasks >= myCapacity && !myWorkers.isShutdown()) {
+        try {
+          myLock.wait(1000L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      ++myPendingTasks;
+      Lane lane = myLanes.get(laneKey);
+      if (lane == null) {
+        lane = new Lane(laneKey);
+        myLanes.put(laneKey, lane);
+        myRoundRobin.addLast(lane);
+      }
+      lane.pending.addLast(new Task(laneKey, file, task, ++mySubmittedTasks, length, failureAdvertised));
+    }
+    startWorkers();
+    return task;
+  }
+
+  @NotNull
+  public ExecutorService getWorkers() {
+    return myWorkers;
+  }
+
+  private void startWorkers() {
+    while (true) {
+      synchronized (myLock) {
+        if (myActiveWorkers >= getMaxWorkers() || !hasPendingTasks()) return;
+        ++myActiveWorkers;
+      }
+      myWorkers.submit(new Worker());
+    }
+  }
+
+  /**
+   * The parsers running on the given workers hold either a CPU or an I/O permit, so there is no point in more workers
+   */
+  private int getMaxWorkers() {
+    return myCpuPermits == null ? myParallelism : myParallelism + myIoThreads;
+  }
+
+  private boolean hasPendingTasks() {
+    for (Lane lane : myRoundRobin) {
+      if (!lane.pending.isEmpty()) return true;
+    }
+    return false;
+  }
+
+  @Nullable
+  private Task pollNextTask() {
+    synchronized (myLock) {
+      if (myActiveWorkers > getMaxWorkers()) {
+        --myActiveWorkers;
+        return null;
+      }
+      for (int i = myRoundRobin.size(); i > 0; --i) {
+        final Lane lane = myRoundRobin.pollFirst();
+        myRoundRobin.addLast(lane);
+
+        final Task task = lane.pollRunnable();
+        if (task != null) {
+          --myPendingTasks;
+          myLock.notifyAll();
+          return task;
+        }
+      }
+      --myActiveWorkers;
+      return null;
+    }
+  }
+
+  private void taskFinished(@NotNull Task task) {
+    synchronized (myLock) {
+      final Lane lane = myLanes.get(task.laneKey);
+      if (lane == null) return;
+      lane.filesInProgress.remove(task.file);
+      if (lane.pending.isEmpty() && lane.filesInProgress.isEmpty()) {
+        myLanes.remove(lane.key);
+        myRoundRobin.remove(lane);
+      }
+    }
+  }
+
+  private final class Worker implements Runnable {
+    public void run() {
+      Task task;
+      while ((task = pollNextTask()) != null) {
+        if (myCpuPermits != null) ParsePermits.enter(myCpuPermits, myIoPermits);
+        try {
+          task.future.run();
+        } finally {
+          ParsePermits.exit();
+          taskFinished(task);
+        }
+      }
+    }
+  }
+
+  /**
+   * CPU permits which follow the parallelism changes
+   */
+  private static final class CpuPermits extends Semaphore {
+    private CpuPermits() {
+      super(0);
+    }
+
+    private void adjust(int delta) {
+      if (delta > 0) release(delta);
+      else if (delta < 0) reducePermits(-delta);
+    }
+  }
+
+  private static final class Lane {
+    @NotNull private final Object key;
+    @NotNull private final Deque<Task> pending = new ArrayDeque<Task>();
+    @NotNull private final Set<File> filesInProgress = new HashSet<File>();
+
+    private Lane(@NotNull Object key) {
+      this.key = key;
+    }
+
+    @Nullable
+    private Task pollRunnable() {
+      Task best = null;
+      for (Task task : pending) {
+        if (filesInProgress.contains(task.file)) continue;
+        if (best == null || task.compareTo(best) < 0) best = task;
+      }
+      if (best == null) return null;
+
+      // an earlier task for the same file goes first
+      for (Task task : pending) {
+        if (task.file.equals(best.file)) {
+          best = task;
+          break;
+        }
+      }
+      pending.remove(best);
+      filesInProgress.add(best.file);
+      return best;
+    }
+  }
+
+  private static final class Task implements Comparable<Task> {
+    @NotNull private final Object laneKey;
+    @NotNull private final File file;
+    @NotNull private final FutureTask<Object> future;
+    private final long sequence;
+    private final long length;
+    private final boolean failureAdvertised;
+
+    private Task(@NotNull Object laneKey, @NotNull File file, @NotNull FutureTask<Object> future,
+                 long sequence, long length, boolean failureAdvertised) {
+      this.laneKey = laneKey;
+      this.file = file;
+      this.future = future;
+      this.sequence = sequence;
+      this.length = length;
+      this.failureAdvertised = failureAdvertised;
+    }
+
+    public int compareTo(@NotNull Task o) {
+      if (failureAdvertised != o.failureAdvertised) return failureAdvertised ? -1 : 1;
+      if (length != o.length) return length < o.length ? -1 : 1;
+      return sequence < o.sequence ? -1 : sequence == o.sequence ? 0 : 1;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs the report scans of a processing context on the shared monitor executor, one scan at a time.
+ *
+ * The interval between the scans doubles up to the ceiling while the scans find nothing new and snaps back
+ * to the minimum once they do. The next scan may be started right away, e.g. when new paths are added,
+ * or cancelled, e.g. when a step finishes, so the final scan is not delayed.
+ */
+public class PollingScheduler {
+  public static final String POLL_INTERVAL_PROPERTY = "teamcity.xmlReport.pollInterval";
+  public static final String MAX_POLL_INTERVAL_PROPERTY = "teamcity.xmlReport.maxPollInterval";
+  public static final String MONITOR_THREADS_PROPERTY = "teamcity.xmlReport.monitorThreads";
+  public static final long DEFAULT_POLL_INTERVAL = 500L;
+  public static final long DEFAULT_MAX_POLL_INTERVAL = 8000L;
+  public static final int DEFAULT_MONITOR_THREADS = 2;
+
+  public interface Scan {
+    /**
+     * @return whether new or changed reports were found
+     */
+    boolean scan();
+  }
+
+  @NotNull
+  private final ScheduledExecutorService myExecutor;
+  @NotNull
+  private final Scan myScan;
+  private final long myMinInterval;
+  private final long myMaxInterval;
+  /**
+   * Interval to wait after the next scan which finds nothing new
+   */
+  private long myInterval;
+
+  @Nullable
+  private ScanTask myNextTask;
+  @Nullable
+  private ScheduledFuture<?> myNextFuture;
+  private boolean myScanning;
+  private boolean myWakeUpRequested;
+  private boolean myStopped;
+
+  public PollingScheduler(@NotNull ScheduledExecutorService executor, @NotNull Scan scan, long minInterval, long maxInterval) {
+    myExecutor = executor;
+    myScan = scan;
+    myMinInterval = Math.max(1L, minInterval);
+    myMaxInterval = Math.max(myMinInterval, maxInterval);
+    myInterval = myMinInterval;
+  }
+
+  /**
+   * @param changesFound whether the previous scan found new or changed reports
+   * @return the interval to wait before the next scan
+   */
+  synchronized long nextInterval(boolean changesFound) {
+    if (changesFound) myInterval = myMinInterval;
+    final long interval = myInterval;
+    myInterval = Math.min(myInterval * 2, myMaxInterval);
+    return interval;
+  }
+
+  public synchronized void start() {
+    if (myStopped || myScanning || myNextTask != null) return;
+    schedule(0);
+  }
+
+  /**
+   * The next scan starts right away and the interval is reset
+   */
+  public synchronized void wakeUp() {
+    if (myStopped) return;
+    myInterval = myMinInterval;
+    if (myScanning) {
+      myWakeUpRequested = true;
+      return;
+    }
+    if (myNextFuture != null) myNextFuture.cancel(false);
+    schedule(0);
+  }
+
+  /**
+   * Cancels the next scan and waits for the running one to finish
+   */
+  public void stop() throws InterruptedException {
+    stop(Long.MAX_VALUE);
+  }
+
+  /**
+   * Cancels the next scan and waits for the running one to finish until the deadline
+   * @return false if the running scan has not finished by the deadline
+   */
+  public synchronized boolean stop(long deadline) throws InterruptedException {
+    myStopped = true;
+    myNextTask = null;
+    if (myNextFuture != null) {
+      myNextFuture.cancel(false);
+      myNextFuture = null;
+    }
+    while (myScanning) {
+      if (deadline == Long.MAX_VALUE) {
+        wait();
+        continue;
+      }
+      final long timeout = deadline - System.currentTimeMillis();
+      if (timeout <= 0) return false;
+      wait(timeout);
+    }
+    return true;
+  }
+
+  private void schedule(long delay) {
+    final ScanTask task = new ScanTask();
+    try {
+      myNextFuture = myExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+      myNextTask = task;
+    } catch (RejectedExecutionException e) {
+      // the agent is shutting down
+      myNextTask = null;
+      myNextFuture = null;
+    }
+  }
+
+  private final class ScanTask implements Runnable {
+    public void run() {
+      synchronized (PollingScheduler.this) {
+        if (myNextTask != this) return; // cancelled or superseded
+        myNextTask = null;
+        myNextFuture = null;
+        myScanning = true;
+      }
+
+      boolean changesFound = true;
+      final long startTime = System.currentTimeMillis();
+      try {
+        changesFound = myScan.scan();
+      } catch (RuntimeException e) {
+        LoggingUtils.LOG.warn("Exception occurred while scanning for reports", e);
+      } finally {
+        if (LoggingUtils.LOG.isDebugEnabled()) {
+          LoggingUtils.LOG.debug("Report scan took " + (System.currentTimeMillis() - startTime) + " ms, " + (changesFound ? "changes found" : "no changes"));
+        }
+        synchronized (PollingScheduler.this) {
+          myScanning = false;
+          if (!myStopped) schedule(myWakeUpRequested ? 0 : nextInterval(changesFound));
+          myWakeUpRequested = false;
+          PollingScheduler.this.notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Tells which directories under the rules root directories have changed since the previous check,
+ * so that only the directories which may have new or updated reports are rescanned.
+ *
+ * Only the directories where the rules may match reports are watched, e.g. excluded {@code node_modules} are not.
+ * Roots which do not exist yet are registered once they are created. A root which can not be watched
+ * (unsupported file system, watch limit exceeded) is polled: all its directories where the rules may match reports
+ * are reported as changed on every check, while the other roots stay watched. Only when events are lost or
+ * the watch service can not be created the watcher falls back to polling for good, i.e. reports every check as a full rescan.
+ */
+public class ReportDirectoryWatcher {
+  public static final String DISCOVERY_MODE_PROPERTY = "teamcity.xmlReport.discoveryMode";
+  public static final String WATCH_DISCOVERY_MODE = "watch";
+
+  @NotNull
+  private final Rules myRules;
+  @NotNull
+  private final Set<File> myRoots;
+  @NotNull
+  private final Set<File> myUnwatchedRoots = new LinkedHashSet<File>();
+  @NotNull
+  private final Set<File> myPolledRoots = new LinkedHashSet<File>();
+  @NotNull
+  private final Map<WatchKey, Path> myKeys = new HashMap<WatchKey, Path>();
+  @Nullable
+  private WatchService myWatchService;
+  private boolean myClosed;
+  private boolean myPolling;
+
+  public ReportDirectoryWatcher(@NotNull Rules rules) {
+    myRules = rules;
+    myRoots = new LinkedHashSet<File>(removeNested(rules.getRootDirectories()));
+  }
+
+  /**
+   * Drains pending file system events
+   * @return directories whose children have been created, modified or deleted, including the whole newly created
+   * subtrees and the polled roots' subtrees, null if everything should be rescanned
+   */
+  @Nullable
+  public synchronized Collection<File> pollChangedDirectories() {
+    if (myClosed || myPolling) return null;
+    if (myWatchService == null) {
+      start();
+      return null; // initial scan
+    }
+
+    final Set<File> changed = new LinkedHashSet<File>();
+    registerUnwatchedRoots(changed);
+
+    WatchKey key;
+    while (!myPolling && (key = myWatchService.poll()) != null) {
+      final Path dir = myKeys.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          fallBackToPolling("file system events lost");
+          break;
+        }
+        if (dir == null || isPolled(dir.toFile())) continue;
+        changed.add(dir.toFile());
+        if (event.kind() == ENTRY_CREATE) {
+          final Path child = dir.resolve((Path)event.context());
+          if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            register(child.toFile(), changed);
+          }
+        }
+      }
+      if (!myPolling && !key.reset()) {
+        myKeys.remove(key);
+        if (dir != null && myRoots.contains(dir.toFile()) && !myPolledRoots.contains(dir.toFile())) myUnwatchedRoots.add(dir.toFile());
+      }
+    }
+    if (myPolling) return null;
+    for (File root : myPolledRoots) {
+      collectDirectories(root, changed);
+    }
+    return changed;
+  }
+
+  /**
+   * Starts watching one more root unless it is already covered by the watched ones
+   */
+  public synchronized void addRoot(@NotNull File root) {
+    if (myClosed || myRoots.contains(root)) return;
+    for (File other : myRoots) {
+      if (FileUtil.isAncestor(other, root, false)) return;
+    }
+    myRoots.add(root);
+    if (myWatchService != null) myUnwatchedRoots.add(root);
+  }
+
+  public synchronized void close() {
+    myClosed = true;
+    closeWatchService();
+  }
+
+  private void start() {
+    try {
+      myWatchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      LoggingUtils.LOG.warn("Failed to create watch service, will poll for reports: " + e.getMessage());
+      myPolling = true;
+      return;
+    }
+    myUnwatchedRoots.addAll(myRoots);
+    registerUnwatchedRoots(new HashSet<File>());
+  }
+
+  /**
+   * Directories are registered by {@link #register(File, Set)} one by one, visible for tests
+   */
+  @NotNull
+  WatchKey registerDirectory(@NotNull Path dir, @NotNull WatchService watchService) throws IOException {
+    return dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+  }
+
+  /**
+   * Roots which do not exist yet stay unwatched, there is nothing to rescan under them
+   */
+  private void registerUnwatchedRoots(@NotNull Set<File> changed) {
+    for (Iterator<File> it = myUnwatchedRoots.iterator(); it.hasNext() && !myPolling; ) {
+      final File root = it.next();
+      if (root.isDirectory()) {
+        it.remove();
+        register(root, changed);
+      }
+    }
+  }
+
+  /**
+   * Registers the directory and its subdirectories where the rules may match reports, they are all added to the changed ones,
+   * as the reports could have been created before they were registered
+   */
+  private void register(@NotNull final File root, @NotNull final Set<File> changed) {
+    final WatchService watchService = myWatchService;
+    if (watchService == null) return;
+    try {
+      Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+          final File file = dir.toFile();
+          if (!myRules.mayContainMatches(file)) return FileVisitResult.SKIP_SUBTREE;
+          myKeys.put(registerDirectory(dir, watchService), dir);
+          changed.add(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      pollRoot(root, e);
+    }
+  }
+
+  /**
+   * A partly watched tree would need to be walked on every check anyway, so nothing under the root is watched any more
+   */
+  private void pollRoot(@NotNull File dir, @NotNull IOException e) {
+    final File root = getRoot(dir);
+    LoggingUtils.LOG.info("Will poll for reports under " + root + ", failed to watch " + dir + ": " + e.getMessage());
+    myPolledRoots.add(root);
+    for (Iterator<Map.Entry<WatchKey, Path>> it = myKeys.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<WatchKey, Path> entry = it.next();
+      if (FileUtil.isAncestor(root, entry.getValue().toFile(), false)) {
+        entry.getKey().cancel();
+        it.remove();
+      }
+    }
+  }
+
+  private boolean isPolled(@NotNull File dir) {
+    for (File root : myPolledRoots) {
+      if (FileUtil.isAncestor(root, dir, false)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the outermost root the directory belongs to
+   */
+  @NotNull
+  private File getRoot(@NotNull File dir) {
+    File result = dir;
+    for (File root : myRoots) {
+      if (FileUtil.isAncestor(root, result, false)) result = root;
+    }
+    return result;
+  }
+
+  /**
+   * Collects the directory and its subdirectories where the rules may match reports
+   */
+  private void collectDirectories(@NotNull File root, @NotNull final Set<File> directories) {
+    if (!root.isDirectory()) return;
+    try {
+      Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+          final File file = dir.toFile();
+          if (!myRules.mayContainMatches(file)) return FileVisitResult.SKIP_SUBTREE;
+          directories.add(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LoggingUtils.LOG.debug("Failed to list directories under " + root, e);
+    }
+  }
+
+  /**
+   * Events are lost or nothing can be watched, so every check is a full rescan
+   */
+  private void fallBackToPolling(@NotNull String reason) {
+    LoggingUtils.LOG.info("Will poll for reports, " + reason);
+    myPolling = true;
+    closeWatchService();
+  }
+
+  private void closeWatchService() {
+    myKeys.clear();
+    myUnwatchedRoots.clear();
+    myPolledRoots.clear();
+    if (myWatchService != null) {
+      try {
+        myWatchService.close();
+      } catch (IOException e) {
+        LoggingUtils.LOG.debug("Failed to close watch service", e);
+      }
+      myWatchService = null;
+    }
+  }
+
+  @NotNull
+  private static Collection<File> removeNested(@NotNull Collection<File> roots) {
+    final List<File> result = new ArrayList<File>();
+    for (File root : roots) {
+      boolean nested = false;
+      for (File other : roots) {
+        if (other != root && !other.equals(root) && FileUtil.isAncestor(other, root, false)) {
+          nested = true;
+          break;
+        }
+      }
+      if (!nested && !result.contains(root)) result.add(root);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Build wide index of the found reports shared by all the rules contexts: build features, build steps and parsing stages.
+ *
+ * Equal rules are scanned once and the result is handed to every context asking for it while it is recent enough,
+ * so several features and importData messages with the same paths don't walk the same directories on every poll.
+ * Only equal rule sets share scans: different rules are scanned separately even if their directories overlap.
+ * The index also makes sure a report is parsed once per report type, even if it is matched by several rules.
+ */
+public class ReportScanIndex {
+  public static final String SHARED_SCAN_WINDOW_PROPERTY = "teamcity.xmlReport.sharedScanWindow";
+  public static final long DEFAULT_SHARED_SCAN_WINDOW = 250L;
+
+  private final long mySharedScanWindow;
+
+  @NotNull
+  private final ConcurrentMap<Rules, Scan> myScans = new ConcurrentHashMap<Rules, Scan>();
+  @NotNull
+  private final ConcurrentMap<String, ConcurrentMap<File, Object>> myReportOwners = new ConcurrentHashMap<String, ConcurrentMap<File, Object>>();
+
+  /**
+   * @param sharedScanWindow how long, in milliseconds, a scan result may be reused by the periodic scans
+   */
+  public ReportScanIndex(long sharedScanWindow) {
+    mySharedScanWindow = sharedScanWindow;
+  }
+
+  /**
+   * @param forceScan the rules are scanned anew, the result is still shared with the next periodic scans
+   */
+  @NotNull
+  public Collection<File> collectFiles(@NotNull Rules rules, boolean forceScan) {
+    return forceScan ? scan(rules) : collectFiles(rules, System.currentTimeMillis() - mySharedScanWindow);
+  }
+
+  /**
+   * @param notBefore a scan started at this time or later may be reused, e.g. the one made by another rules context during the same cycle
+   */
+  @NotNull
+  public Collection<File> collectFiles(@NotNull Rules rules, long notBefore) {
+    final Scan scan = myScans.get(rules);
+    if (scan != null && scan.startTime >= notBefore) return scan.files;
+    return scan(rules);
+  }
+
+  @NotNull
+  private Collection<File> scan(@NotNull Rules rules) {
+    final long startTime = System.currentTimeMillis();
+    final Collection<File> files = Collections.unmodifiableCollection(new ArrayList<File>(rules.collectFiles()));
+    myScans.put(rules, new Scan(startTime, files));
+    return files;
+  }
+
+  /**
+   * @param owner rules context the report was found by
+   * @return true if the report should be parsed by the owner, false if it is already parsed by another context
+   */
+  public boolean claim(@NotNull String type, @NotNull File report, @NotNull Object owner) {
+    ConcurrentMap<File, Object> owners = myReportOwners.get(type);
+    if (owners == null) {
+      final ConcurrentMap<File, Object> newOwners = new ConcurrentHashMap<File, Object>();
+      owners = myReportOwners.putIfAbsent(type, newOwners);
+      if (owners == null) owners = newOwners;
+    }
+    final Object existing = owners.putIfAbsent(report, owner);
+    return existing == null || existing == owner;
+  }
+
+  /**
+   * @return true if a rules context has claimed the report and is not finished yet
+   */
+  public boolean isClaimed(@NotNull String type, @NotNull File report) {
+    final ConcurrentMap<File, Object> owners = myReportOwners.get(type);
+    return owners != null && owners.containsKey(report);
+  }
+
+  /**
+   * Lets other rules contexts parse the reports claimed by the finished one, e.g. when the next build step writes them anew
+   */
+  public void release(@NotNull Object owner) {
+    for (ConcurrentMap<File, Object> owners : myReportOwners.values()) {
+      owners.values().removeAll(Collections.singleton(owner));
+    }
+  }
+
+  private static final class Scan {
+    private final long startTime;
+    @NotNull
+    private final Collection<File> files;
+
+    private Scan(long startTime, @NotNull Collection<File> files) {
+      this.startTime = startTime;
+      this.files = files;
+    }
+  }
+}
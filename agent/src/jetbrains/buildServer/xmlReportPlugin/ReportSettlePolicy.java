@@ -0,0 +1,109 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds back the reports which are still being written, so half-written reports are not parsed over and over.
+ *
+ * A report is settled if its tail is the end tag of the root element found in its prolog, or if its size and
+ * modification time have not changed for the configured number of polls.
+ */
+public class ReportSettlePolicy {
+  /**
+   * Number of polls a report size and modification time should stay the same, may be specified per report type
+   * with the ".&lt;type&gt;" suffix, 0 disables the policy
+   */
+  public static final String SETTLE_POLLS_PROPERTY = "teamcity.xmlReport.settlePolls";
+  public static final int DEFAULT_SETTLE_POLLS = 1;
+
+  private final int mySettlePolls;
+  @NotNull
+  private final Map<File, Observation> myObservations = new HashMap<File, Observation>();
+
+  public ReportSettlePolicy(int settlePolls) {
+    mySettlePolls = settlePolls;
+  }
+
+  /**
+   * Should be called once per poll for a report which is going to be parsed
+   */
+  public synchronized boolean isSettled(@NotNull File report, long lastModified, long length) {
+    Observation observation = myObservations.get(report);
+    if (observation == null || observation.lastModified != lastModified || observation.length != length) {
+      observation = new Observation(lastModified, length, observation == null ? null : observation.rootTag);
+      myObservations.put(report, observation);
+    } else {
+      ++observation.stablePolls;
+    }
+
+    if (observation.rootTag == null) observation.rootTag = ParserUtils.getRootElementName(report);
+    if (observation.stablePolls >= mySettlePolls || observation.rootTag != null && ParserUtils.endsWithEndTag(report, observation.rootTag)) {
+      myObservations.remove(report);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return whether some reports are held back, they should be polled even if no changes are reported
+   */
+  public synchronized boolean isSettling() {
+    return !myObservations.isEmpty();
+  }
+
+  @NotNull
+  public synchronized Collection<File> getSettlingReports() {
+    return new ArrayList<File>(myObservations.keySet());
+  }
+
+  public synchronized void forget(@NotNull File report) {
+    myObservations.remove(report);
+  }
+
+  /**
+   * Forgets the held back reports which are no longer found
+   */
+  public synchronized void retain(@NotNull Collection<File> reports) {
+    if (myObservations.isEmpty()) return;
+    myObservations.keySet().retainAll(reports instanceof Set ? reports : new HashSet<File>(reports));
+  }
+
+  private static final class Observation {
+    private final long lastModified;
+    private final long length;
+    @Nullable
+    private String rootTag;
+    private int stablePolls;
+
+    private Observation(long lastModified, long length, @Nullable String rootTag) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.rootTag = rootTag;
+    }
+  }
+}
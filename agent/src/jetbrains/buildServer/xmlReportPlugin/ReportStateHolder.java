@@ -38,12 +38,58 @@ public interface ReportStateHolder {
     * PROCESSED report was successfully processed
     * ERROR report wasn't fully processed due to some problems
     * OUT_OF_DATE report is out-of-date
+    * DUPLICATE report is processed by other rules of the same type
     */
-    UNKNOWN, ON_PROCESSING, PROCESSED, ERROR, OUT_OF_DATE
+    UNKNOWN, ON_PROCESSING, PROCESSED, ERROR, OUT_OF_DATE, DUPLICATE
   }
 
   @NotNull ReportState getReportState(@NotNull File report);
   @Nullable Long getLastModified(@NotNull File report);
   @Nullable Long getLength(@NotNull File report);
   void setReportState(@NotNull File report, @NotNull ReportState state, long lastModified, long length);
+
+  /**
+   * @return immutable snapshot of the report state or null if the report is brand new
+   */
+  @Nullable FileState getFileState(@NotNull File report);
+
+  /**
+   * Atomically sets the report state if it's still the expected one
+   * @param expected snapshot returned by {@link #getFileState(File)}, null for a brand new report
+   * @return true if the state was changed, false if it was changed concurrently
+   */
+  boolean compareAndSetReportState(@NotNull File report, @Nullable FileState expected,
+                                   @NotNull ReportState state, long lastModified, long length);
+
+  public static final class FileState {
+    @NotNull private final ReportState myReportState;
+    private final long myLastModified;
+    private final long myLength;
+    @Nullable private final ParsingResult myParsingResult;
+
+    public FileState(@NotNull ReportState reportState, long lastModified, long length, @Nullable ParsingResult parsingResult) {
+      myReportState = reportState;
+      myLastModified = lastModified;
+      myLength = length;
+      myParsingResult = parsingResult;
+    }
+
+    @NotNull
+    public ReportState getReportState() {
+      return myReportState;
+    }
+
+    public long getLastModified() {
+      return myLastModified;
+    }
+
+    public long getLength() {
+      return myLength;
+    }
+
+    @Nullable
+    public ParsingResult getParsingResult() {
+      return myParsingResult;
+    }
+  }
 }
@@ -28,5 +28,17 @@ import org.jetbrains.annotations.NotNull;
 public interface Rules {
   @NotNull Collection<String> getBody();
   @NotNull Collection<File> getPaths();
+  /**
+   * @return directories which contain every file these rules may match, pattern parts of the rules are cut off
+   */
+  @NotNull Collection<File> getRootDirectories();
   @NotNull Collection<File> collectFiles();
+  /**
+   * @return the files these rules match among the direct children of the directories, subdirectories are not scanned
+   */
+  @NotNull Collection<File> collectFiles(@NotNull Collection<File> directories);
+  /**
+   * @return false if these rules can match no file under the directory, so it need not be scanned or watched
+   */
+  boolean mayContainMatches(@NotNull File directory);
 }
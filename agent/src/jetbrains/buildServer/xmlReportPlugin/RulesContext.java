@@ -17,13 +17,16 @@
 package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -41,24 +44,50 @@ public class RulesContext {
   @NotNull
   private final RulesState myRulesState;
 
+  @Nullable
+  private final ReportScanIndex myScanIndex;
+
+  /**
+   * Tasks which are not completed yet, a task is dropped once completed whether its reports are parsed or not
+   */
   @NotNull
-  private final Map<ParserFactory.ParsingStage, List<ExecuteTask>> myExecutedTasks = new EnumMap<ParserFactory.ParsingStage, List<ExecuteTask>>(ParserFactory.ParsingStage.class);
+  private final Map<ParserFactory.ParsingStage, Collection<ExecuteTask>> myExecutedTasks = new EnumMap<ParserFactory.ParsingStage, Collection<ExecuteTask>>(ParserFactory.ParsingStage.class);
 
   @NotNull
   private MonitorRulesCommand myMonitorRulesCommand;
 
+  private volatile long myScanStartTime;
+
+  /**
+   * Set once the parsing is abandoned, the reports found after that are abandoned right away
+   */
+  @Nullable
+  private volatile String myAbandonReason;
+
+  /**
+   * @param scanIndex shares the found reports with the other rules contexts, each report is parsed once if not null
+   */
   public RulesContext(@NotNull XmlReportPlugin.RulesData rulesData,
-                      @NotNull RulesState rulesState) {
+                      @NotNull RulesState rulesState,
+                      @Nullable ReportScanIndex scanIndex) {
     myRulesData = rulesData;
     myRulesState = rulesState;
+    myScanIndex = scanIndex;
     for (ParserFactory.ParsingStage stage : ParserFactory.ParsingStage.values()) {
-      myExecutedTasks.put(stage, new ArrayList<ExecuteTask>());
+      myExecutedTasks.put(stage, Collections.newSetFromMap(new ConcurrentHashMap<ExecuteTask, Boolean>()));
     }
   }
 
-  public void addParseTask(@NotNull final ExecutorService executor, @NotNull final ParseReportCommand command) {
-    final ExecuteTask task = new CommandTask(executor, command);
+  public void addParseTask(@NotNull final ParseTaskExecutor executor, @NotNull final ParseReportCommand command) {
+    final String abandonReason = myAbandonReason;
+    if (abandonReason != null) {
+      command.abandon(abandonReason);
+      return;
+    }
+    final ExecuteTask task = new CommandTask(executor, command, this);
     final ParserFactory.ParsingStage stage = command.getParsingStage();
+    // added before started, so it may be dropped once completed
+    myExecutedTasks.get(stage).add(task);
     switch (stage) {
       case RUNTIME:
         task.start();
@@ -66,27 +95,94 @@ public class RulesContext {
       case BEFORE_FINISH:
         break;
     }
-    myExecutedTasks.get(stage).add(task);
   }
 
-  public void addParseFactory(@NotNull final ParserFactory factory) {
-    myExecutedTasks.get(factory.getParsingStage()).add(new FactoryTask(factory, getRulesData(), getRulesState()));
+  public void addParseFactory(@NotNull final ParseTaskExecutor executor, @NotNull final ParserFactory factory) {
+    myExecutedTasks.get(factory.getParsingStage()).add(new FactoryTask(executor, factory, this));
   }
 
   public void finish() throws ExecutionException, InterruptedException {
+    finish(System.currentTimeMillis());
+  }
+
+  /**
+   * @param scanStartTime the rules scans started at this time or later are recent enough for the before finish parsing
+   */
+  public void finish(long scanStartTime) throws ExecutionException, InterruptedException {
+    startFinish(scanStartTime);
+    waitFinish();
+  }
+
+  /**
+   * Starts the before finish parsing, so the reports of several rules contexts may be parsed in parallel
+   *
+   * @param scanStartTime the rules scans started at this time or later are recent enough for the before finish parsing
+   */
+  public void startFinish(long scanStartTime) {
+    myScanStartTime = scanStartTime;
     for (ExecuteTask task : myExecutedTasks.get(BEFORE_FINISH)) {
       task.start();
     }
-    for (List<ExecuteTask> tasks : myExecutedTasks.values()) {
+  }
+
+  /**
+   * Waits for all the parsing started
+   */
+  public void waitFinish() throws ExecutionException, InterruptedException {
+    waitFinish(Long.MAX_VALUE);
+  }
+
+  /**
+   * Waits for all the parsing started
+   * @param deadline time to stop waiting at
+   * @return false if the parsing is not completed by the deadline
+   */
+  public boolean waitFinish(long deadline) throws ExecutionException, InterruptedException {
+    for (Collection<ExecuteTask> tasks : myExecutedTasks.values()) {
       for (ExecuteTask task : tasks) {
-        task.join();
+        if (!task.join(deadline)) return false;
       }
     }
+    return true;
   }
 
   public void waitRuntimeParsing() throws ExecutionException, InterruptedException {
+    waitRuntimeParsing(Long.MAX_VALUE);
+  }
+
+  /**
+   * @param deadline time to stop waiting at
+   * @return false if the runtime parsing is not completed by the deadline
+   */
+  public boolean waitRuntimeParsing(long deadline) throws ExecutionException, InterruptedException {
     for (ExecuteTask task : myExecutedTasks.get(ParserFactory.ParsingStage.RUNTIME)) {
-      task.join();
+      if (!task.join(deadline)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Asks all the parsing started to stop, see {@link ParseReportCommand#cancel(String)}
+   */
+  public void cancelParsing(@NotNull String reason) {
+    for (Collection<ExecuteTask> tasks : myExecutedTasks.values()) {
+      for (ExecuteTask task : tasks) {
+        task.cancel(reason, false);
+      }
+    }
+  }
+
+  /**
+   * Records the reports which are still being parsed or wait to be parsed as failed to parse and stops waiting for them,
+   * see {@link ParseReportCommand#abandon(String)}
+   */
+  public void abandonParsing(@NotNull String reason) {
+    myAbandonReason = reason;
+    for (Collection<ExecuteTask> tasks : myExecutedTasks.values()) {
+      for (ExecuteTask task : tasks) {
+        task.cancel(reason, true);
+      }
+      tasks.clear();
     }
   }
 
@@ -113,60 +209,177 @@ public class RulesContext {
     return myRulesState;
   }
 
+  /**
+   * @return false if the report is parsed by other rules of the same type, the report is marked as a duplicate then
+   */
+  public boolean claimReport(@NotNull File report) {
+    if (myScanIndex == null || myScanIndex.claim(myRulesData.getType(), report, this)) return true;
+    // the monitor has just recorded the report attributes
+    final ReportStateHolder.FileState state = myRulesState.getFileState(report);
+    if (state == null) {
+      myRulesState.setReportState(report, ReportStateHolder.ReportState.DUPLICATE, report.lastModified(), report.length());
+    } else {
+      myRulesState.setReportState(report, ReportStateHolder.ReportState.DUPLICATE, state.getLastModified(), state.getLength());
+    }
+    return false;
+  }
+
+  private void taskCompleted(@NotNull ParserFactory.ParsingStage stage, @NotNull ExecuteTask task) {
+    myExecutedTasks.get(stage).remove(task);
+  }
+
+  @NotNull
+  private Collection<File> collectFiles() {
+    final Rules rules = myRulesData.getMonitorRulesParameters().getRules();
+    return myScanIndex == null ? rules.collectFiles() : myScanIndex.collectFiles(rules, myScanStartTime);
+  }
+
   private interface ExecuteTask {
     void start();
 
-    void join() throws ExecutionException, InterruptedException;
+    /**
+     * @return false if the task is not completed by the deadline
+     */
+    boolean join(long deadline) throws ExecutionException, InterruptedException;
+
+    void cancel(@NotNull String reason, boolean abandon);
   }
 
-  private static class FactoryTask implements ExecuteTask {
+  /**
+   * @return false if the task is not completed by the deadline
+   */
+  static boolean join(@NotNull Future<?> task, long deadline) throws ExecutionException, InterruptedException {
+    if (deadline == Long.MAX_VALUE) {
+      task.get();
+      return true;
+    }
+    try {
+      task.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return false if the latch is not counted down by the deadline
+   */
+  private static boolean await(@NotNull CountDownLatch latch, long deadline) throws InterruptedException {
+    if (deadline == Long.MAX_VALUE) {
+      latch.await();
+      return true;
+    }
+    return latch.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  private static void cancel(@NotNull ParseReportCommand command, @NotNull String reason, boolean abandon) {
+    if (abandon) command.abandon(reason);
+    else command.cancel(reason);
+  }
 
+  /**
+   * Collects the reports and parses them in parallel, each report is parsed by a single task
+   */
+  private static class FactoryTask implements ExecuteTask {
+    @NotNull
+    private final ParseTaskExecutor myExecutor;
     @NotNull
     private final ParserFactory myFactory;
     @NotNull
-    private final XmlReportPlugin.RulesData myRulesData;
+    private final RulesContext myLane;
+    /**
+     * Parsing tasks which are not completed yet
+     */
     @NotNull
-    private final RulesState myRulesState;
+    private final Map<ParseReportCommand, Future<?>> myParseTasks = new ConcurrentHashMap<ParseReportCommand, Future<?>>();
 
-    public FactoryTask(@NotNull final ParserFactory factory, @NotNull final XmlReportPlugin.RulesData rulesData, @NotNull final RulesState rulesState) {
+    public FactoryTask(@NotNull final ParseTaskExecutor executor, @NotNull final ParserFactory factory, @NotNull final RulesContext lane) {
+      myExecutor = executor;
       myFactory = factory;
-      myRulesData = rulesData;
-      myRulesState = rulesState;
+      myLane = lane;
     }
 
     @Override
     public void start() {
-      for (File file : myRulesData.getMonitorRulesParameters().getRules().collectFiles()) {
-        final ParseReportCommand command = new ParseReportCommand(file, myRulesData.getParseReportParameters(), myRulesState, myFactory);
-        command.run();
+      for (final File file : myLane.collectFiles()) {
+        if (!myLane.claimReport(file)) continue;
+        final ParseReportCommand command = new ParseReportCommand(file, myLane.getRulesData().getParseReportParameters(), myLane.getRulesState(), myFactory,
+                                                                  myLane.getRulesData().getParseTimeout());
+        final String abandonReason = myLane.myAbandonReason;
+        if (abandonReason != null) {
+          command.abandon(abandonReason);
+          continue;
+        }
+        final Future<?> parseTask = myExecutor.submit(myLane, file, new Runnable() {
+          public void run() {
+            command.run();
+            myParseTasks.remove(command);
+          }
+        });
+        myParseTasks.put(command, parseTask);
+        if (parseTask.isDone()) myParseTasks.remove(command, parseTask);
+      }
+    }
+
+    @Override
+    public boolean join(long deadline) throws ExecutionException, InterruptedException {
+      for (Future<?> parseTask : myParseTasks.values()) {
+        if (!RulesContext.join(parseTask, deadline)) return false;
       }
+      return true;
     }
 
     @Override
-    public void join() {
+    public void cancel(@NotNull String reason, boolean abandon) {
+      for (ParseReportCommand command : myParseTasks.keySet()) {
+        RulesContext.cancel(command, reason, abandon);
+      }
+      if (abandon) myParseTasks.clear();
     }
   }
 
   private static class CommandTask implements ExecuteTask {
     @NotNull private final ParseReportCommand myCommand;
-    @NotNull private final ExecutorService myExecutor;
-    @Nullable private Future<?> myParseTask;
+    @NotNull private final ParseTaskExecutor myExecutor;
+    @NotNull private final RulesContext myLane;
+    @Nullable private volatile Future<?> myParseTask;
+    /**
+     * The task is pending until it is handed to the executor
+     */
+    @NotNull private final CountDownLatch mySubmitted = new CountDownLatch(1);
 
-    public CommandTask(@NotNull final ExecutorService executor, @NotNull final ParseReportCommand command) {
+    public CommandTask(@NotNull final ParseTaskExecutor executor, @NotNull final ParseReportCommand command, @NotNull final RulesContext lane) {
       myCommand = command;
       myExecutor = executor;
+      myLane = lane;
     }
 
     @Override
     public void start() {
-      synchronized (myExecutor) {
-        myParseTask = myExecutor.submit(myCommand);
+      try {
+        // the report scans are not parked on a full queue, see MonitorRulesCommand.MonitorRulesListener#isAccepting
+        myParseTask = myExecutor.offer(myLane, myCommand.getFile(), new Runnable() {
+          public void run() {
+            myCommand.run();
+            myLane.taskCompleted(myCommand.getParsingStage(), CommandTask.this);
+          }
+        });
+      } finally {
+        mySubmitted.countDown();
       }
     }
 
     @Override
-    public void join() throws ExecutionException, InterruptedException {
-      if (myParseTask != null) myParseTask.get();
+    public boolean join(long deadline) throws ExecutionException, InterruptedException {
+      if (!await(mySubmitted, deadline)) return false;
+      final Future<?> parseTask = myParseTask;
+      // offer() has thrown, so there is nothing to wait for
+      return parseTask == null || RulesContext.join(parseTask, deadline);
+    }
+
+    @Override
+    public void cancel(@NotNull String reason, boolean abandon) {
+      RulesContext.cancel(myCommand, reason, abandon);
     }
   }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Rules registered during a build step by importData service messages.
+ *
+ * Report files and directories registered with the same parameters share one {@link FileSetRules} and one rules context,
+ * so a step which imports every report separately gets one context and one scan per report type instead of one per report.
+ *
+ * Not thread safe, all the calls are made under the {@link XmlReportPlugin} lock.
+ */
+class RulesRegistry {
+  @NotNull
+  private final Map<String, Set<File>> myRegisteredPaths = new HashMap<String, Set<File>>();
+  @NotNull
+  private final Map<Map<String, String>, MergedRules> myMergedRules = new HashMap<Map<String, String>, MergedRules>();
+  @Nullable
+  private String myInspectionType;
+
+  /**
+   * @return true if the path is already monitored for reports of this type
+   */
+  boolean isRegistered(@NotNull String type, @NotNull File path) {
+    final Set<File> paths = myRegisteredPaths.get(type);
+    return paths != null && paths.contains(path);
+  }
+
+  /**
+   * Should be called once the path is accepted for monitoring
+   */
+  void register(@NotNull String type, @NotNull File path) {
+    Set<File> paths = myRegisteredPaths.get(type);
+    if (paths == null) {
+      paths = new HashSet<File>();
+      myRegisteredPaths.put(type, paths);
+    }
+    paths.add(path);
+  }
+
+  @Nullable
+  String getInspectionType() {
+    return myInspectionType;
+  }
+
+  void setInspectionType(@NotNull String inspectionType) {
+    myInspectionType = inspectionType;
+  }
+
+  @Nullable
+  MergedRules getMergedRules(@NotNull Map<String, String> parameters) {
+    return myMergedRules.get(parameters);
+  }
+
+  void putMergedRules(@NotNull Map<String, String> parameters, @NotNull MergedRules rules) {
+    myMergedRules.put(new HashMap<String, String>(parameters), rules);
+  }
+
+  static final class MergedRules {
+    @NotNull
+    private final FileSetRules myRules;
+    @NotNull
+    private final RulesContext myContext;
+
+    MergedRules(@NotNull FileSetRules rules, @NotNull RulesContext context) {
+      myRules = rules;
+      myContext = context;
+    }
+
+    @NotNull
+    FileSetRules getRules() {
+      return myRules;
+    }
+
+    @NotNull
+    RulesContext getContext() {
+      return myContext;
+    }
+  }
+}
@@ -18,9 +18,12 @@ package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -31,105 +34,119 @@ import org.jetbrains.annotations.Nullable;
  */
 public class RulesState implements ReportStateHolder {
   @NotNull
-  private final Map<File, FileState> myParsingResults = new HashMap<File, FileState>();
+  private final ConcurrentMap<File, FileState> myParsingResults = new ConcurrentHashMap<File, FileState>();
 
+  /**
+   * Reports by state, kept up-to-date on every state change so the summary queries don't scan all the reports
+   */
   @NotNull
-  public synchronized ReportState getReportState(@NotNull final File report) {
-    FileState store = myParsingResults.get(report);
-    return store != null ? store.reportState : ReportState.UNKNOWN;
+  private final Map<ReportState, ConcurrentMap<File, FileState>> myIndex = new EnumMap<ReportState, ConcurrentMap<File, FileState>>(ReportState.class);
+
+  public RulesState() {
+    for (ReportState state : ReportState.values()) {
+      myIndex.put(state, new ConcurrentHashMap<File, FileState>());
+    }
+  }
+
+  @NotNull
+  public ReportState getReportState(@NotNull final File report) {
+    final FileState state = myParsingResults.get(report);
+    return state != null ? state.getReportState() : ReportState.UNKNOWN;
   }
 
   @Nullable
-  public synchronized Long getLastModified(@NotNull final File report) {
-    FileState store = myParsingResults.get(report);
-    return store != null ? store.lastModified : null;
+  public Long getLastModified(@NotNull final File report) {
+    final FileState state = myParsingResults.get(report);
+    return state != null ? state.getLastModified() : null;
   }
 
   @Nullable
-  public synchronized Long getLength(@NotNull final File report) {
-    FileState store = myParsingResults.get(report);
-    return store != null ? store.length : null;
+  public Long getLength(@NotNull final File report) {
+    final FileState state = myParsingResults.get(report);
+    return state != null ? state.getLength() : null;
   }
 
-  public synchronized void setReportState(@NotNull final File report, @NotNull final ReportState state, @Nullable ParsingResult parsingResult) {
-    FileState fileState = myParsingResults.get(report);
-    if (fileState == null) {
-      fileState = new FileState(report.lastModified(), report.length());
-      myParsingResults.put(report, fileState);
+  @Nullable
+  public FileState getFileState(@NotNull final File report) {
+    return myParsingResults.get(report);
+  }
+
+  public boolean compareAndSetReportState(@NotNull final File report, @Nullable final FileState expected,
+                                          @NotNull final ReportState state, final long lastModified, final long length) {
+    return changeState(report, expected, new FileState(state, lastModified, length, expected == null ? null : expected.getParsingResult()));
+  }
+
+  public void setReportState(@NotNull final File report, @NotNull final ReportState state, @Nullable ParsingResult parsingResult) {
+    while (true) {
+      final FileState fileState = myParsingResults.get(report);
+      final FileState newState = fileState == null
+                                 ? new FileState(state, report.lastModified(), report.length(), parsingResult)
+                                 : new FileState(state, fileState.getLastModified(), fileState.getLength(), parsingResult);
+      if (changeState(report, fileState, newState)) return;
     }
-    fileState.reportState = state;
-    fileState.parsingResult = parsingResult;
   }
 
-  public synchronized void setReportState(@NotNull final File report, @NotNull final ReportState state, final long lastModified, final long length) {
-    FileState fileState = myParsingResults.get(report);
-    if (fileState == null) {
-      fileState = new FileState(lastModified, length);
-      myParsingResults.put(report, fileState);
+  public void setReportState(@NotNull final File report, @NotNull final ReportState state, final long lastModified, final long length) {
+    while (true) {
+      final FileState fileState = myParsingResults.get(report);
+      if (compareAndSetReportState(report, fileState, state, lastModified, length)) return;
     }
-    fileState.reportState = state;
-    fileState.lastModified = lastModified;
-    fileState.length = length;
   }
 
+  private boolean changeState(@NotNull File report, @Nullable FileState expected, @NotNull FileState newState) {
+    if (expected == null) {
+      if (myParsingResults.putIfAbsent(report, newState) != null) return false;
+    } else {
+      if (!myParsingResults.replace(report, expected, newState)) return false;
+      myIndex.get(expected.getReportState()).remove(report, expected);
+    }
+
+    final ConcurrentMap<File, FileState> index = myIndex.get(newState.getReportState());
+    index.put(report, newState);
+    // a concurrent change of the same report might have been indexed before this one
+    if (myParsingResults.get(report) != newState) index.remove(report, newState);
+    return true;
+  }
 
   @Nullable
-  public synchronized ParsingResult getParsingResult(@NotNull File report) {
+  public ParsingResult getParsingResult(@NotNull File report) {
     final FileState state = myParsingResults.get(report);
-    return state == null ? null : state.parsingResult;
+    return state == null ? null : state.getParsingResult();
   }
 
-  @NotNull
-  public synchronized Map<File, ParsingResult> getProcessedFiles() {
-    final Map<File, ParsingResult> res = new HashMap<File, ParsingResult>();
-    for (Map.Entry<File, FileState> e : myParsingResults.entrySet()) {
-      final File key = e.getKey();
-      final FileState value = e.getValue();
-
-      if (value.reportState == ReportState.PROCESSED) {
-        res.put(key, value.parsingResult);
-      }
-    }
-    return res;
+  /**
+   * @return number of the reports in the specified state, cheap enough to be polled for the progress
+   */
+  public int getReportCount(@NotNull ReportState state) {
+    return myIndex.get(state).size();
   }
 
   @NotNull
-  public synchronized Map<File, ParsingResult> getFailedToProcessFiles() {
-    final Map<File, ParsingResult> res = new HashMap<File, ParsingResult>();
-    for (Map.Entry<File, FileState> e : myParsingResults.entrySet()) {
-      final File key = e.getKey();
-      final FileState value = e.getValue();
+  public Map<File, ParsingResult> getProcessedFiles() {
+    return getParsingResults(ReportState.PROCESSED);
+  }
 
-      if (value.reportState == ReportState.ERROR) {
-        res.put(key, value.parsingResult);
-      }
-    }
-    return res;
+  @NotNull
+  public Map<File, ParsingResult> getFailedToProcessFiles() {
+    return getParsingResults(ReportState.ERROR);
   }
 
   @NotNull
-  public synchronized List<File> getOutOfDateFiles() {
-    final List<File> res = new ArrayList<File>();
-    for (Map.Entry<File, FileState> e : myParsingResults.entrySet()) {
-      final File key = e.getKey();
-      final FileState value = e.getValue();
-
-      if (value.reportState == ReportState.OUT_OF_DATE) {
-        res.add(key);
-      }
-    }
-    return res;
+  public List<File> getOutOfDateFiles() {
+    return new ArrayList<File>(myIndex.get(ReportState.OUT_OF_DATE).keySet());
   }
 
-  private static final class FileState {
-    @Nullable private Long lastModified;
-    @Nullable private Long length;
-    @Nullable private ParsingResult parsingResult;
-    private ReportState reportState = ReportState.UNKNOWN;
+  @NotNull
+  public List<File> getDuplicateFiles() {
+    return new ArrayList<File>(myIndex.get(ReportState.DUPLICATE).keySet());
+  }
 
-    private FileState(long lastModified, long length) {
-      this.lastModified = lastModified;
-      this.length = length;
+  @NotNull
+  private Map<File, ParsingResult> getParsingResults(@NotNull ReportState state) {
+    final Map<File, ParsingResult> res = new HashMap<File, ParsingResult>();
+    for (Map.Entry<File, FileState> e : myIndex.get(state).entrySet()) {
+      res.put(e.getKey(), e.getValue().getParsingResult());
     }
+    return res;
   }
 }
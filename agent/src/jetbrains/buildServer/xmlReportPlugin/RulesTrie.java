@@ -0,0 +1,615 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import com.intellij.openapi.util.SystemInfo;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Include and exclude rules compiled into a trie of path segments, the trie is walked together with the file system.
+ *
+ * A directory is listed only if a wildcard may match its children, otherwise the literal names are probed.
+ * A directory is not entered at all if no include rule can match anything under it or an exclude rule
+ * wins for the whole subtree, e.g. {@code -:**}{@code /node_modules/**}.
+ *
+ * Rules are Ant-like: {@code *} and {@code ?} match within a path segment, {@code **} matches any number of directories,
+ * a path without wildcards matches the file or all the files under the directory. Relative paths are resolved against
+ * the base directory. If several rules match a file, the one with the longest path prefix without wildcards wins,
+ * the last one wins among the equal ones. Names are compared ignoring case on case insensitive file systems.
+ *
+ * Listed directories are remembered together with their modification time, a directory is listed again only if
+ * its modification time changes, so rescanning a quiet tree costs a single {@code stat} per directory.
+ * The listings are shared by all the rules of the agent, at most {@link #REMEMBERED_NAMES_PROPERTY} names are remembered,
+ * the directories beyond that are listed on every scan. The listings are forgotten once the build finishes.
+ */
+class RulesTrie {
+  private static final String ANY_DEPTH = "**";
+  /**
+   * A listing is not reused while the directory modification time is this close to the listing time,
+   * as a file created within the same timestamp granularity would not change the modification time
+   */
+  private static final long LISTING_TIME_GRANULARITY = 2000L;
+  public static final String REMEMBERED_NAMES_PROPERTY = "teamcity.xmlReport.rememberedNames";
+  /**
+   * A remembered name costs about 100 bytes, so the listings take at most about 10 MB for the whole agent
+   */
+  public static final int DEFAULT_REMEMBERED_NAMES = 100000;
+
+  @NotNull
+  private static final ConcurrentMap<File, Listing> ourListings = new ConcurrentHashMap<File, Listing>();
+  @NotNull
+  private static final AtomicInteger ourRememberedNames = new AtomicInteger();
+
+  @NotNull
+  private final Map<File, Node> myRoots = new LinkedHashMap<File, Node>();
+  /**
+   * Whether the rule of the rank is an include one, a greater rank wins
+   */
+  @NotNull
+  private final boolean[] myIncludes;
+  private final boolean myCaseSensitive = SystemInfo.isFileSystemCaseSensitive;
+
+  RulesTrie(@NotNull File baseDir, @NotNull Collection<String> rules) {
+    final List<ParsedRule> parsed = new ArrayList<ParsedRule>(rules.size());
+    for (String rule : rules) {
+      final ParsedRule parsedRule = parse(baseDir, rule, parsed.size());
+      if (parsedRule != null) parsed.add(parsedRule);
+    }
+    Collections.sort(parsed);
+
+    myIncludes = new boolean[parsed.size()];
+    for (int rank = 0; rank < parsed.size(); ++rank) {
+      final ParsedRule rule = parsed.get(rank);
+      myIncludes[rank] = rule.include;
+
+      Node node = getLiteralNode(rule.literalPath);
+      for (String segment : rule.segments) {
+        node = node.getOrCreateChild(segment, myCaseSensitive);
+      }
+      node.setTerminal(rank);
+      // a path without wildcards may also denote a directory
+      if (rule.segments.isEmpty()) node.getOrCreateChild(ANY_DEPTH, myCaseSensitive).setTerminal(rank);
+    }
+
+    for (Node root : myRoots.values()) {
+      root.computeSummary(myIncludes);
+    }
+  }
+
+  @NotNull
+  List<File> collectFiles() {
+    return collectFiles(null);
+  }
+
+  /**
+   * @param pool if specified, the subdirectories are walked in parallel
+   */
+  @NotNull
+  List<File> collectFiles(@Nullable ForkJoinPool pool) {
+    final List<File> result = new ArrayList<File>();
+    for (Map.Entry<File, Node> root : myRoots.entrySet()) {
+      final List<Node> active = new ArrayList<Node>(2);
+      addWithClosure(active, root.getValue());
+      if (pool == null) {
+        walk(root.getKey(), active, result, null);
+      } else {
+        result.addAll(pool.invoke(new WalkTask(root.getKey(), active)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Collects the matching files among the direct children of the directories, the subdirectories are not walked
+   */
+  @NotNull
+  List<File> collectFilesIn(@NotNull Collection<File> dirs) {
+    final List<File> result = new ArrayList<File>();
+    for (File dir : dirs) {
+      final List<Node> active = getActive(dir);
+      if (active.isEmpty()) continue;
+      final Listing listing = list(dir);
+      if (listing == null) continue;
+      for (int i = 0; i < listing.names.length; ++i) {
+        if (listing.kinds[i] == Listing.FILE && isIncluded(step(active, listing.names[i]))) {
+          result.add(new File(dir, listing.names[i]));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return false if the rules can match no file under the directory, e.g. it is outside the roots or excluded as a whole
+   */
+  boolean mayContainMatches(@NotNull File dir) {
+    return !getActive(dir).isEmpty();
+  }
+
+  /**
+   * @return nodes matching the directory path, empty if the directory is pruned
+   */
+  @NotNull
+  private List<Node> getActive(@NotNull File dir) {
+    final LinkedList<String> names = new LinkedList<String>();
+    File root = new File(FileUtil.normalizeAbsolutePath(dir.getAbsolutePath()));
+    for (File parent = root.getParentFile(); parent != null; parent = parent.getParentFile()) {
+      names.addFirst(root.getName());
+      root = parent;
+    }
+
+    final Node rootNode = myRoots.get(root);
+    if (rootNode == null) return Collections.<Node>emptyList();
+    List<Node> active = new ArrayList<Node>(2);
+    addWithClosure(active, rootNode);
+    for (String name : names) {
+      if (isPruned(active)) return Collections.<Node>emptyList();
+      active = step(active, name);
+    }
+    return isPruned(active) ? Collections.<Node>emptyList() : active;
+  }
+
+  /**
+   * @param forks if specified, the subdirectories are walked by the forked tasks added to it rather than recursively
+   */
+  private void walk(@NotNull File dir, @NotNull List<Node> active, @NotNull List<File> result, @Nullable List<WalkTask> forks) {
+    if (isPruned(active)) return;
+
+    if (isListingNeeded(active)) {
+      final Listing listing = list(dir);
+      if (listing == null) return;
+      for (int i = 0; i < listing.names.length; ++i) {
+        final String name = listing.names[i];
+        visit(dir, new File(dir, name), name, active, listing.kinds[i], result, forks);
+      }
+    } else {
+      final Set<String> names = new LinkedHashSet<String>();
+      for (Node node : active) {
+        for (Node child : node.literalChildren.values()) {
+          names.add(child.segment);
+        }
+      }
+      for (String name : names) {
+        visit(dir, new File(dir, name), name, active, Listing.UNKNOWN, result, forks);
+      }
+    }
+  }
+
+  /**
+   * @param kind kind of the file as listed, {@link Listing#UNKNOWN} if the file was not listed and may not exist
+   */
+  private void visit(@NotNull File dir, @NotNull File file, @NotNull String name, @NotNull List<Node> active, byte kind,
+                     @NotNull List<File> result, @Nullable List<WalkTask> forks) {
+    final List<Node> next = step(active, name);
+    if (next.isEmpty()) return;
+
+    if (kind == Listing.UNKNOWN) {
+      kind = file.isDirectory() ? Listing.DIRECTORY : file.exists() ? Listing.FILE : Listing.UNKNOWN;
+      if (kind == Listing.UNKNOWN) return;
+    }
+
+    if (kind != Listing.FILE) {
+      if (kind == Listing.LINKED_DIRECTORY && isLinkCycle(dir, file)) return;
+      if (forks == null) {
+        walk(file, next, result, null);
+      } else {
+        final WalkTask task = new WalkTask(file, next);
+        task.fork();
+        forks.add(task);
+      }
+    } else if (isIncluded(next)) {
+      result.add(file);
+    }
+  }
+
+  /**
+   * @return the directory listing, the remembered one if the directory has not been modified since, null if the directory cannot be listed
+   */
+  @Nullable
+  private static Listing list(@NotNull File dir) {
+    final long lastModified = dir.lastModified();
+    final Listing cached = ourListings.get(dir);
+    if (cached != null && lastModified != 0 && cached.isUpToDate(lastModified)) return cached;
+
+    final long listedAt = System.currentTimeMillis();
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      forget(dir);
+      return null;
+    }
+    final Listing listing = new Listing(lastModified, listedAt, children);
+    remember(dir, listing);
+    return listing;
+  }
+
+  private static void remember(@NotNull File dir, @NotNull Listing listing) {
+    final int names = listing.names.length;
+    if (ourRememberedNames.addAndGet(names) > TeamCityProperties.getInteger(REMEMBERED_NAMES_PROPERTY, DEFAULT_REMEMBERED_NAMES)) {
+      ourRememberedNames.addAndGet(-names);
+      forget(dir);
+      return;
+    }
+    final Listing previous = ourListings.put(dir, listing);
+    if (previous != null) ourRememberedNames.addAndGet(-previous.names.length);
+  }
+
+  private static void forget(@NotNull File dir) {
+    final Listing previous = ourListings.remove(dir);
+    if (previous != null) ourRememberedNames.addAndGet(-previous.names.length);
+  }
+
+  /**
+   * Forgets the remembered listings of all the rules, e.g. once the build finishes
+   */
+  static void forgetListings() {
+    for (File dir : new ArrayList<File>(ourListings.keySet())) {
+      forget(dir);
+    }
+  }
+
+  @NotNull
+  private List<Node> step(@NotNull List<Node> active, @NotNull String name) {
+    final List<Node> next = new ArrayList<Node>(2);
+    for (Node node : active) {
+      if (node.anyDepth) addWithClosure(next, node);
+
+      final Node literal = node.literalChildren.get(literalKey(name, myCaseSensitive));
+      if (literal != null) addWithClosure(next, literal);
+
+      for (Node pattern : node.patternChildren) {
+        if (matches(pattern.segment, name, myCaseSensitive)) addWithClosure(next, pattern);
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Adds the node and the "**" child, which may match no directories at all
+   */
+  private static void addWithClosure(@NotNull List<Node> nodes, @NotNull Node node) {
+    while (node != null) {
+      if (nodes.contains(node)) return;
+      nodes.add(node);
+      node = node.anyDepthChild;
+    }
+  }
+
+  private boolean isIncluded(@NotNull List<Node> nodes) {
+    int rank = -1;
+    for (Node node : nodes) {
+      rank = Math.max(rank, node.terminalRank);
+    }
+    return rank >= 0 && myIncludes[rank];
+  }
+
+  private static boolean isPruned(@NotNull List<Node> active) {
+    int include = -1;
+    int exclude = -1;
+    for (Node node : active) {
+      include = Math.max(include, node.maxIncludeBelow);
+      exclude = Math.max(exclude, node.coveringExclude);
+    }
+    return include < 0 || include < exclude;
+  }
+
+  private static boolean isListingNeeded(@NotNull List<Node> active) {
+    for (Node node : active) {
+      if (node.anyDepth || !node.patternChildren.isEmpty()) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Wildcards could make the walk go around a symbolic link to a parent directory forever
+   */
+  private static boolean isLinkCycle(@NotNull File dir, @NotNull File child) {
+    try {
+      return FileUtil.isAncestor(child.getCanonicalFile(), dir.getCanonicalFile(), false);
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  @NotNull
+  private Node getLiteralNode(@NotNull File path) {
+    final LinkedList<String> names = new LinkedList<String>();
+    File root = path;
+    for (File parent = path.getParentFile(); parent != null; parent = parent.getParentFile()) {
+      names.addFirst(root.getName());
+      root = parent;
+    }
+
+    Node node = myRoots.get(root);
+    if (node == null) {
+      node = new Node(root.getPath());
+      myRoots.put(root, node);
+    }
+    for (String name : names) {
+      node = node.getOrCreateChild(name, myCaseSensitive);
+    }
+    return node;
+  }
+
+  @Nullable
+  private static ParsedRule parse(@NotNull File baseDir, @NotNull String rule, int index) {
+    final boolean include = !rule.startsWith("-:");
+    String path = rule.startsWith("+:") || rule.startsWith("-:") ? rule.substring(2) : rule;
+    path = path.replace('\\', '/');
+    if (path.length() == 0) return null;
+
+    final int wildcard = indexOfWildcard(path);
+    final String literal;
+    final List<String> segments = new ArrayList<String>();
+    if (wildcard < 0) {
+      literal = path;
+    } else {
+      final int separator = path.lastIndexOf('/', wildcard);
+      literal = path.substring(0, separator + 1);
+      for (String segment : path.substring(separator + 1).split("/")) {
+        if (segment.length() == 0 || ".".equals(segment)) continue;
+        if (ANY_DEPTH.equals(segment) && !segments.isEmpty() && ANY_DEPTH.equals(segments.get(segments.size() - 1))) continue;
+        segments.add(segment);
+      }
+    }
+
+    final File literalFile = literal.length() == 0 ? baseDir : new File(literal).isAbsolute() ? new File(literal) : new File(baseDir, literal);
+    final File literalPath = new File(FileUtil.normalizeAbsolutePath(literalFile.getAbsolutePath()));
+    return new ParsedRule(include, literalPath, segments, index);
+  }
+
+  private static int indexOfWildcard(@NotNull String path) {
+    for (int i = 0; i < path.length(); ++i) {
+      final char c = path.charAt(i);
+      if (c == '*' || c == '?') return i;
+    }
+    return -1;
+  }
+
+  private static boolean hasWildcard(@NotNull String segment) {
+    return indexOfWildcard(segment) >= 0;
+  }
+
+  @NotNull
+  private static String literalKey(@NotNull String name, boolean caseSensitive) {
+    return caseSensitive ? name : name.toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Matches a single path segment, {@code *} stands for any characters, {@code ?} for any one character
+   */
+  static boolean matches(@NotNull String pattern, @NotNull String name, boolean caseSensitive) {
+    int p = 0;
+    int n = 0;
+    int star = -1;
+    int starMatch = 0;
+    while (n < name.length()) {
+      if (p < pattern.length() && (pattern.charAt(p) == '?' || equals(pattern.charAt(p), name.charAt(n), caseSensitive))) {
+        ++p;
+        ++n;
+      } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+        star = p++;
+        starMatch = n;
+      } else if (star >= 0) {
+        p = star + 1;
+        n = ++starMatch;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') ++p;
+    return p == pattern.length();
+  }
+
+  private static boolean equals(char a, char b, boolean caseSensitive) {
+    return a == b || !caseSensitive && Character.toLowerCase(a) == Character.toLowerCase(b);
+  }
+
+  /**
+   * Walks a directory, its subdirectories are walked by the forked tasks, so idle workers may steal them
+   */
+  private final class WalkTask extends RecursiveTask<List<File>> {
+    @NotNull
+    private final File myDir;
+    @NotNull
+    private final List<Node> myActive;
+
+    private WalkTask(@NotNull File dir, @NotNull List<Node> active) {
+      myDir = dir;
+      myActive = active;
+    }
+
+    @Override
+    protected List<File> compute() {
+      final List<File> result = new ArrayList<File>();
+      final List<WalkTask> forks = new ArrayList<WalkTask>();
+      walk(myDir, myActive, result, forks);
+      for (WalkTask fork : forks) {
+        result.addAll(fork.join());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Names of the directory children and whether they are directories, as of the directory modification time
+   */
+  private static final class Listing {
+    private static final byte UNKNOWN = 0;
+    private static final byte FILE = 1;
+    private static final byte DIRECTORY = 2;
+    private static final byte LINKED_DIRECTORY = 3;
+
+    private final long lastModified;
+    private final long listedAt;
+    @NotNull
+    private final String[] names;
+    @NotNull
+    private final byte[] kinds;
+
+    private Listing(long lastModified, long listedAt, @NotNull File[] children) {
+      this.lastModified = lastModified;
+      this.listedAt = listedAt;
+      names = new String[children.length];
+      kinds = new byte[children.length];
+      for (int i = 0; i < children.length; ++i) {
+        names[i] = children[i].getName();
+        if (!children[i].isDirectory()) {
+          kinds[i] = FILE;
+        } else {
+          kinds[i] = Files.isSymbolicLink(children[i].toPath()) ? LINKED_DIRECTORY : DIRECTORY;
+        }
+      }
+    }
+
+    private boolean isUpToDate(long lastModified) {
+      return this.lastModified == lastModified && listedAt - lastModified > LISTING_TIME_GRANULARITY;
+    }
+  }
+
+  private static final class ParsedRule implements Comparable<ParsedRule> {
+    private final boolean include;
+    @NotNull
+    private final File literalPath;
+    @NotNull
+    private final List<String> segments;
+    private final int index;
+    private final int specificity;
+
+    private ParsedRule(boolean include, @NotNull File literalPath, @NotNull List<String> segments, int index) {
+      this.include = include;
+      this.literalPath = literalPath;
+      this.segments = segments;
+      this.index = index;
+
+      int depth = 0;
+      for (File parent = literalPath.getParentFile(); parent != null; parent = parent.getParentFile()) {
+        ++depth;
+      }
+      specificity = depth;
+    }
+
+    public int compareTo(@NotNull ParsedRule o) {
+      if (specificity != o.specificity) return specificity < o.specificity ? -1 : 1;
+      return index < o.index ? -1 : index == o.index ? 0 : 1;
+    }
+  }
+
+  private static final class Node {
+    @NotNull
+    private final String segment;
+    private final boolean anyDepth;
+
+    /**
+     * Keyed by the names in lower case on case insensitive file systems
+     */
+    @NotNull
+    private final Map<String, Node> literalChildren = new HashMap<String, Node>(2);
+    @NotNull
+    private final List<Node> patternChildren = new ArrayList<Node>(1);
+    @Nullable
+    private Node anyDepthChild;
+
+    /**
+     * Rank of the winning rule ending at this node, -1 if none
+     */
+    private int terminalRank = -1;
+    /**
+     * Greatest rank of an include rule which may match a file under the node's path, -1 if none
+     */
+    private int maxIncludeBelow = -1;
+    /**
+     * For "**" nodes, rank of the exclude rule which matches every file under the node's path, -1 if none
+     */
+    private int coveringExclude = -1;
+
+    private Node(@NotNull String segment) {
+      this.segment = segment;
+      anyDepth = ANY_DEPTH.equals(segment);
+    }
+
+    @NotNull
+    private Node getOrCreateChild(@NotNull String segment, boolean caseSensitive) {
+      if (ANY_DEPTH.equals(segment)) {
+        if (anyDepthChild == null) anyDepthChild = new Node(segment);
+        return anyDepthChild;
+      }
+      if (hasWildcard(segment)) {
+        for (Node child : patternChildren) {
+          if (child.segment.equals(segment)) return child;
+        }
+        final Node child = new Node(segment);
+        patternChildren.add(child);
+        return child;
+      }
+      final String key = literalKey(segment, caseSensitive);
+      Node child = literalChildren.get(key);
+      if (child == null) {
+        child = new Node(segment);
+        literalChildren.put(key, child);
+      }
+      return child;
+    }
+
+    private void setTerminal(int rank) {
+      terminalRank = Math.max(terminalRank, rank);
+    }
+
+    /**
+     * @return greatest rank of an include rule ending at this node or under it
+     */
+    private int computeSummary(@NotNull boolean[] includes) {
+      int below = anyDepth ? includeRank(terminalRank, includes) : -1;
+      for (Node child : literalChildren.values()) {
+        below = Math.max(below, child.computeSummary(includes));
+      }
+      for (Node child : patternChildren) {
+        below = Math.max(below, child.computeSummary(includes));
+      }
+      if (anyDepthChild != null) {
+        below = Math.max(below, anyDepthChild.computeSummary(includes));
+      }
+      maxIncludeBelow = below;
+
+      if (anyDepth) {
+        int rank = terminalRank;
+        for (Node child : patternChildren) {
+          if ("*".equals(child.segment)) rank = Math.max(rank, child.terminalRank);
+        }
+        coveringExclude = rank >= 0 && !includes[rank] ? rank : -1;
+      }
+
+      return Math.max(includeRank(terminalRank, includes), below);
+    }
+
+    private static int includeRank(int rank, @NotNull boolean[] includes) {
+      return rank >= 0 && includes[rank] ? rank : -1;
+    }
+  }
+}
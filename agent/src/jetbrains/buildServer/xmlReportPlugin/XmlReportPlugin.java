@@ -20,13 +20,17 @@ import java.io.File;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import jetbrains.buildServer.BuildProblemData;
 import jetbrains.buildServer.ExtensionsProvider;
 import jetbrains.buildServer.agent.*;
 import jetbrains.buildServer.agent.duplicates.DuplicatesReporter;
 import jetbrains.buildServer.agent.impl.MessageTweakingSupport;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.util.*;
 import jetbrains.buildServer.util.executors.ExecutorsFactory;
 import jetbrains.buildServer.util.impl.Lazy;
@@ -39,6 +43,9 @@ import jetbrains.buildServer.xmlReportPlugin.inspections.TeamCityInspectionRepor
 import jetbrains.buildServer.xmlReportPlugin.tests.TeamCityTestReporter;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
 import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParseDeadline;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParsePermits;
+import jetbrains.buildServer.xmlReportPlugin.utils.VirtualThreads;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -57,8 +64,15 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
   @Nullable
   private AgentRunningBuild myBuild;
 
+  /**
+   * Starts a virtual thread per task, null unless enabled by the agent property and supported by the JVM
+   */
+  @Nullable
+  private final ExecutorService myVirtualExecutor;
+  @NotNull
+  private final ParseTaskExecutor myParseExecutor;
   @NotNull
-  private final ExecutorService myParseExecutor;
+  private final ScheduledExecutorService myMonitorExecutor;
 
   @NotNull
   private final Lazy<Map<String, ParserFactory>> myParserFactoryMap = new Lazy<Map<String, ParserFactory>>() {
@@ -76,6 +90,12 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
 
   @NotNull private final BuildAgentConfiguration myConfiguration;
 
+  @Nullable
+  private ReportScanIndex myScanIndex;
+
+  @Nullable
+  private ForkJoinPool myScanPool;
+
   @Nullable
   private ProcessingContext myBuildProcessingContext;
 
@@ -83,6 +103,12 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
   private ProcessingContext myStepProcessingContext;
   private boolean myQuietMode;
 
+  /**
+   * Milliseconds from finding a report to reporting the first failed test of the build from it, -1 if none
+   */
+  @NotNull
+  private final AtomicLong myFirstFailureDelay = new AtomicLong(-1);
+
   public XmlReportPlugin(@NotNull ExtensionsProvider extensionsProvider,
                          @NotNull EventDispatcher<AgentLifeCycleListener> agentDispatcher,
                          @NotNull jetbrains.buildServer.agent.inspections.InspectionReporter inspectionReporter,
@@ -96,12 +122,19 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
     myInspectionReporter = inspectionReporter;
     myDuplicatesReporter = duplicatesReporter;
 
-    myParseExecutor = createExecutor();
+    myVirtualExecutor = createVirtualExecutor();
+    myParseExecutor = createExecutor(myVirtualExecutor);
+    myMonitorExecutor = createMonitorExecutor();
   }
 
   @Override
   public void buildStarted(@NotNull AgentRunningBuild runningBuild) {
     myBuild = runningBuild;
+    myParseExecutor.setParallelism(getParsingThreads(runningBuild.getSharedConfigParameters().get(ParseTaskExecutor.PARSING_THREADS_PROPERTY)));
+    myParseExecutor.setOrder(getParseOrder());
+    myFirstFailureDelay.set(-1);
+    myScanIndex = new ReportScanIndex(getSharedScanWindow());
+    myScanPool = createScanPool();
     initBuildProcessingContext(runningBuild);
   }
 
@@ -136,31 +169,47 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
      // here we check if this path is already monitored for reports of this type
      // we also don't support processing two inspections type during one build
     final String newType = getReportType(params);
+    if (newType == null) return;
 
-    for (RulesContext context : stepContext.rulesContexts) {
-      final String existingType = context.getRulesData().getType();
-
-      if (existingType.equals(newType)) {
-        final Collection<File> paths = context.getRulesData().getRules().getPaths();
-        if (paths.size() == 1) {
-          if (paths.contains(rulesFile)) {
-            LoggingUtils.LOG.info("Skip monitoring " + rulesFile + " (already monitoring)");
-            return;
-          }
-        }
-      }
-      if (isInspectionType(existingType) && newType != null && isInspectionType(newType)) {
+    final RulesRegistry registry = stepContext.rulesRegistry;
+    if (registry.isRegistered(newType, rulesFile)) {
+      LoggingUtils.LOG.info("Skip monitoring " + rulesFile + " (already monitoring)");
+      return;
+    }
+    if (isInspectionType(newType)) {
+      if (registry.getInspectionType() != null) {
         LoggingUtils
           .warn(String.format("Two different inspections can not be processed during one build, skip %s reports", getReportTypeName(
             newType)), getBuild().getBuildLogger());
         return;
       }
+      registry.setInspectionType(newType);
+    }
+    registry.register(newType, rulesFile);
+
+    final RulesContext rulesContext;
+    final File path = getFilePath(rulesFile.getAbsolutePath());
+    if (path == null) {
+      rulesContext = createRulesContext(new RulesData(getRules(rulesFile, params), params, stepContext.startTime));
+    } else {
+      final RulesRegistry.MergedRules mergedRules = registry.getMergedRules(params);
+      if (mergedRules != null) {
+        if (mergedRules.getRules().add(path)) {
+          final MonitorRulesCommand monitorRules = mergedRules.getContext().getMonitorRulesCommand();
+          if (monitorRules != null) monitorRules.pathAdded(path);
+          wakeUpProcessing(stepContext);
+        }
+        return;
+      }
+      final FileSetRules rules = new FileSetRules();
+      rules.add(path);
+      rulesContext = createRulesContext(new RulesData(rules, params, stepContext.startTime));
+      registry.putMergedRules(params, new RulesRegistry.MergedRules(rules, rulesContext));
     }
 
-    final RulesData rulesData = new RulesData(getRules(rulesFile, params), params, stepContext.startTime);
-
-    stepContext.rulesContexts.add(createRulesContext(rulesData));
+    stepContext.rulesContexts.add(rulesContext);
 
+    wakeUpProcessing(stepContext);
     startProcessing(stepContext);
   }
 
@@ -181,56 +230,94 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
   public void beforeBuildFinish(@NotNull final AgentRunningBuild build, @NotNull final BuildFinishedStatus buildStatus) {
     if (myBuildProcessingContext == null) return;
     finishProcessing(getBuildProcessingContext(), true);
+    logFirstFailureTime();
     myBuild = null;
     myBuildProcessingContext = null;
+    myScanIndex = null;
+    RulesTrie.forgetListings();
+    if (myScanPool != null) {
+      myScanPool.shutdown();
+      myScanPool = null;
+    }
   }
 
   @Override
   public void agentShutdown() {
-    shutdownExecutor(myParseExecutor);
+    shutdownExecutor(myMonitorExecutor);
+    shutdownExecutor(myParseExecutor.getWorkers());
   }
 
   private RulesContext createRulesContext(@NotNull final RulesData rulesData) {
     final RulesState fileStateHolder = new RulesState();
     final ParserFactory parserFactory = getParserFactory(rulesData.getType());
 
-    final RulesContext rulesContext = new RulesContext(rulesData, fileStateHolder);
+    final RulesContext rulesContext = new RulesContext(rulesData, fileStateHolder, getScanIndex());
     switch (parserFactory.getParsingStage()) {
       case BEFORE_FINISH:
-        rulesContext.addParseFactory(parserFactory);
+        rulesContext.addParseFactory(myParseExecutor, parserFactory);
         break;
       case RUNTIME:
         rulesContext.setMonitorRulesCommand(new MonitorRulesCommand(rulesData.getMonitorRulesParameters(), rulesContext.getRulesState(), myQuietMode,
                                                                     new MonitorRulesCommand.MonitorRulesListener() {
                                                                       public void modificationDetected(@NotNull File file) {
-                                                                        submitParsing(file, rulesContext, parserFactory);
+                                                                        if (rulesContext.claimReport(file)) submitParsing(file, rulesContext, parserFactory);
                                                                       }
-                                                                    }));
+
+                                                                      public boolean isAccepting() {
+                                                                        return !myParseExecutor.isSaturated();
+                                                                      }
+                                                                    }, new MonitorRulesCommand.Options()
+                                                                      .withWatcher(createWatcher(rulesData.getRules()))
+                                                                      .withScanIndex(getScanIndex())
+                                                                      .withSettlePolicy(createSettlePolicy(rulesData.getType()))
+                                                                      .withProbeExecutor(myVirtualExecutor, myParseExecutor.getIoPermits())));
         break;
     }
     return rulesContext;
   }
 
+  @Nullable
+  private ReportDirectoryWatcher createWatcher(@NotNull Rules rules) {
+    final String mode = getParameter(ReportDirectoryWatcher.DISCOVERY_MODE_PROPERTY);
+    return ReportDirectoryWatcher.WATCH_DISCOVERY_MODE.equalsIgnoreCase(mode) ? new ReportDirectoryWatcher(rules) : null;
+  }
+
+  @Nullable
+  private ReportSettlePolicy createSettlePolicy(@NotNull String type) {
+    String value = getParameter(ReportSettlePolicy.SETTLE_POLLS_PROPERTY + "." + type);
+    if (StringUtil.isEmpty(value)) value = getParameter(ReportSettlePolicy.SETTLE_POLLS_PROPERTY);
+
+    int settlePolls = ReportSettlePolicy.DEFAULT_SETTLE_POLLS;
+    if (StringUtil.isNotEmpty(value)) {
+      try {
+        settlePolls = Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        LoggingUtils.LOG.warn("Unexpected " + ReportSettlePolicy.SETTLE_POLLS_PROPERTY + " value: " + value);
+      }
+    }
+    return settlePolls > 0 ? new ReportSettlePolicy(settlePolls) : null;
+  }
+
   private void startProcessing(@NotNull final ProcessingContext processingContext) {
-    Thread monitor = processingContext.monitorThread;
-    if (isStarted(monitor)) return;
+    if (isStarted(processingContext.scheduler)) return;
     if (isRulesEmpty(processingContext)) return;
 
     processingContext.finished = false;
-    monitor = new Thread(new Runnable() {
-      public void run() {
-        while (!processingContext.finished) {
-          processAllRules(processingContext);
-
-          try {
-            Thread.sleep(500L);
-          } catch (InterruptedException e) {
-            getBuild().getBuildLogger().exception(e);
-          }
-        }
+    final PollingScheduler scheduler = new PollingScheduler(myMonitorExecutor, new PollingScheduler.Scan() {
+      public boolean scan() {
+        return processAllRules(processingContext, false);
       }
-    });
-    (processingContext.monitorThread = monitor).start();
+    }, getLongParameter(PollingScheduler.POLL_INTERVAL_PROPERTY, PollingScheduler.DEFAULT_POLL_INTERVAL),
+       getLongParameter(PollingScheduler.MAX_POLL_INTERVAL_PROPERTY, PollingScheduler.DEFAULT_MAX_POLL_INTERVAL));
+    (processingContext.scheduler = scheduler).start();
+  }
+
+  /**
+   * The next monitor scan of the context starts right away
+   */
+  private void wakeUpProcessing(@NotNull ProcessingContext processingContext) {
+    final PollingScheduler scheduler = processingContext.scheduler;
+    if (scheduler != null) scheduler.wakeUp();
   }
 
   private boolean isRulesEmpty(final @NotNull ProcessingContext processingContext) {
@@ -238,52 +325,101 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
   }
 
   @Contract("null -> false")
-  private boolean isStarted(@Nullable final Thread monitor) {
-    return monitor != null;
+  private boolean isStarted(@Nullable final PollingScheduler scheduler) {
+    return scheduler != null;
   }
 
-  private void processAllRules(final @NotNull ProcessingContext processingContext) {
+  /**
+   * @return whether new or changed reports were found
+   */
+  private boolean processAllRules(final @NotNull ProcessingContext processingContext, boolean forceScan) {
+    boolean changesFound = false;
     for (RulesContext rulesContext : processingContext.rulesContexts) {
       final MonitorRulesCommand monitorRules = rulesContext.getMonitorRulesCommand();
-      if (monitorRules != null) monitorRules.run();
+      if (monitorRules != null && monitorRules.run(forceScan)) changesFound = true;
     }
+    return changesFound;
   }
 
   private void finishProcessing(@NotNull final ProcessingContext processingContext, boolean fullFinish) {
-    Thread monitor = processingContext.monitorThread;
-    if (!isStarted(monitor) && isRulesEmpty(processingContext)) return;
-    if (!isStarted(monitor)) {
+    final PollingScheduler scheduler = processingContext.scheduler;
+    if (!isStarted(scheduler) && isRulesEmpty(processingContext)) return;
+    if (!isStarted(scheduler)) {
       // process all rules even if we do not have build steps
-      processAllRules(processingContext);
+      processAllRules(processingContext, true);
     }
 
     processingContext.finished = true;
+    final int parallelism = myParseExecutor.getParallelism();
     try {
-      monitor = processingContext.monitorThread;
-      processingContext.monitorThread = null;
-      if (isStarted(monitor)) {
-        monitor.join();
-      }
+      final List<RulesContext> rulesContexts = new ArrayList<RulesContext>(processingContext.rulesContexts);
+      // a stuck parsing or scan does not stall the build finish
+      final FinishDeadline deadline = new FinishDeadline(rulesContexts,
+                                                         getLongParameter(FinishDeadline.FINISH_TIMEOUT_PROPERTY, FinishDeadline.DEFAULT_FINISH_TIMEOUT));
 
+      processingContext.scheduler = null;
+      // the final scan starts right away rather than after the next periodic one
+      if (isStarted(scheduler)) deadline.stopScans(scheduler);
 
-      for (RulesContext rulesContext : processingContext.rulesContexts) {
-        rulesContext.waitRuntimeParsing();
+      // the final scans of equal rules made from now on are shared
+      final long scanStartTime = System.currentTimeMillis();
+      // the build waits for the reports parsed before finish, so they may be parsed with more threads
+      if (fullFinish) myParseExecutor.setParallelism(getFinishParsingThreads(parallelism));
+
+      final BuildProgressLogger logger = getBuild().getBuildLogger();
+
+      // the reports being parsed are checked for the latest changes by the final scans once parsed
+      for (RulesContext rulesContext : rulesContexts) {
+        deadline.waitRuntimeParsing(rulesContext);
         rulesContext.clearRuntimeParseTasks();
+      }
+
+      runFinalScans(rulesContexts, fullFinish, scanStartTime, deadline);
 
-        final MonitorRulesCommand monitorRules = rulesContext.getMonitorRulesCommand();
-        if (monitorRules != null) monitorRules.run();
-        if (fullFinish) rulesContext.finish();
-        else rulesContext.waitRuntimeParsing();
+      // all the parsing is running at once, so the build waits for the longest one rather than for the sum of them
+      deadline.waitParsing(rulesContexts, fullFinish, logger);
 
-        if (fullFinish && !myQuietMode) logStatistics(rulesContext);
+      if (fullFinish) {
+        for (RulesContext rulesContext : rulesContexts) {
+          final MonitorRulesCommand monitorRules = rulesContext.getMonitorRulesCommand();
+          if (monitorRules != null) monitorRules.dispose();
+          getScanIndex().release(rulesContext);
+
+          if (!myQuietMode) logStatistics(rulesContext);
+        }
+      }
+      if (deadline.isExceeded()) {
+        LoggingUtils.warn("Stopped waiting for the report parsing after " + FinishDeadline.FINISH_TIMEOUT_PROPERTY +
+                          ", the reports not parsed in time are reported as failed to parse", getBuild().getBuildLogger());
       }
     } catch (Exception e) {
       LoggingUtils.logError("Exception occurred while finishing rules monitoring", e, getBuild().getBuildLogger(), false);
+    } finally {
+      myParseExecutor.setParallelism(parallelism);
     }
   }
 
+  /**
+   * Runs the final scans of the rules contexts and starts their before finish parsing in parallel
+   */
+  private void runFinalScans(@NotNull List<RulesContext> rulesContexts, final boolean fullFinish, final long scanStartTime,
+                             @NotNull FinishDeadline deadline) throws InterruptedException {
+    final List<Runnable> scans = new ArrayList<Runnable>(rulesContexts.size());
+    for (final RulesContext rulesContext : rulesContexts) {
+      scans.add(new Runnable() {
+        public void run() {
+          final MonitorRulesCommand monitorRules = rulesContext.getMonitorRulesCommand();
+          if (monitorRules != null) monitorRules.run(true);
+          if (fullFinish) rulesContext.startFinish(scanStartTime);
+        }
+      });
+    }
+    deadline.runScans(rulesContexts, scans, getFinalScanThreads(), getBuild().getBuildLogger());
+  }
+
   private void submitParsing(@NotNull File file, @NotNull final RulesContext rulesContext, @NotNull ParserFactory parserFactory) {
-    final ParseReportCommand parseReportCommand = new ParseReportCommand(file, rulesContext.getRulesData().getParseReportParameters(), rulesContext.getRulesState(), parserFactory);
+    final ParseReportCommand parseReportCommand = new ParseReportCommand(file, rulesContext.getRulesData().getParseReportParameters(), rulesContext.getRulesState(), parserFactory,
+                                                                         rulesContext.getRulesData().getParseTimeout());
     rulesContext.addParseTask(myParseExecutor, parseReportCommand);
   }
 
@@ -310,8 +446,119 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
     }
   }
 
-  private static ExecutorService createExecutor() {
-    return ExecutorsFactory.newFixedDaemonExecutor("xml-report-plugin", 1);
+  @NotNull
+  private static ParseTaskExecutor createExecutor(@Nullable ExecutorService workers) {
+    return new ParseTaskExecutor(Math.max(Runtime.getRuntime().availableProcessors(), getDefaultParsingThreads()), getDefaultParsingThreads(),
+                                 new ParseTaskExecutor.Options()
+                                   .withCapacity(TeamCityProperties.getInteger(ParseTaskExecutor.QUEUE_CAPACITY_PROPERTY, ParseTaskExecutor.DEFAULT_QUEUE_CAPACITY))
+                                   .withWorkers(workers)
+                                   .withIoThreads(TeamCityProperties.getInteger(ParsePermits.IO_THREADS_PROPERTY, ParsePermits.DEFAULT_IO_THREADS)));
+  }
+
+  @Nullable
+  private static ExecutorService createVirtualExecutor() {
+    if (!TeamCityProperties.getBoolean(ParseTaskExecutor.VIRTUAL_THREADS_PROPERTY)) return null;
+    final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("xml-report-plugin");
+    if (executor == null) {
+      LoggingUtils.LOG.info(ParseTaskExecutor.VIRTUAL_THREADS_PROPERTY + " is set, but the JVM does not support virtual threads, using platform threads");
+    }
+    return executor;
+  }
+
+  /**
+   * All the processing contexts are monitored by the same threads, so starting and finishing steps is cheap
+   * and the monitoring CPU usage is bounded
+   */
+  @NotNull
+  private static ScheduledExecutorService createMonitorExecutor() {
+    final int threads = Math.max(1, TeamCityProperties.getInteger(PollingScheduler.MONITOR_THREADS_PROPERTY, PollingScheduler.DEFAULT_MONITOR_THREADS));
+    return ExecutorsFactory.newFixedScheduledDaemonExecutor("xml-report-plugin monitor", threads);
+  }
+
+  private int getFinishParsingThreads(int runtimeParallelism) {
+    final String value = getParameter(ParseTaskExecutor.FINISH_PARSING_THREADS_PROPERTY);
+    if (StringUtil.isNotEmpty(value)) {
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        LoggingUtils.LOG.warn("Unexpected " + ParseTaskExecutor.FINISH_PARSING_THREADS_PROPERTY + " value: " + value);
+      }
+    }
+    return runtimeParallelism;
+  }
+
+  private int getFinalScanThreads() {
+    final String value = getParameter(FinishDeadline.FINAL_SCAN_THREADS_PROPERTY);
+    if (StringUtil.isNotEmpty(value)) {
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        LoggingUtils.LOG.warn("Unexpected " + FinishDeadline.FINAL_SCAN_THREADS_PROPERTY + " value: " + value);
+      }
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private static int getDefaultParsingThreads() {
+    return TeamCityProperties.getInteger(ParseTaskExecutor.PARSING_THREADS_PROPERTY, 1);
+  }
+
+  @Nullable
+  private ForkJoinPool createScanPool() {
+    final String value = getParameter(OptimizingIncludeExcludeRules.SCAN_PARALLELISM_PROPERTY);
+    if (StringUtil.isEmpty(value)) return null;
+    try {
+      final int parallelism = Integer.parseInt(value.trim());
+      return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    } catch (NumberFormatException e) {
+      LoggingUtils.LOG.warn("Unexpected " + OptimizingIncludeExcludeRules.SCAN_PARALLELISM_PROPERTY + " value: " + value);
+      return null;
+    }
+  }
+
+  private static long getSharedScanWindow() {
+    return TeamCityProperties.getLong(ReportScanIndex.SHARED_SCAN_WINDOW_PROPERTY, ReportScanIndex.DEFAULT_SHARED_SCAN_WINDOW);
+  }
+
+  @NotNull
+  private ParseTaskExecutor.ParseOrder getParseOrder() {
+    final String value = getParameter(ParseTaskExecutor.PARSE_ORDER_PROPERTY);
+    if (StringUtil.isEmpty(value)) return ParseTaskExecutor.ParseOrder.FIFO;
+    final ParseTaskExecutor.ParseOrder order = ParseTaskExecutor.ParseOrder.of(value);
+    if (order != null) return order;
+    LoggingUtils.LOG.warn("Unexpected " + ParseTaskExecutor.PARSE_ORDER_PROPERTY + " value: " + value);
+    return ParseTaskExecutor.ParseOrder.FIFO;
+  }
+
+  private long getLongParameter(@NotNull String name, long defaultValue) {
+    final String value = getParameter(name);
+    if (StringUtil.isEmpty(value)) return defaultValue;
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LoggingUtils.LOG.warn("Unexpected " + name + " value: " + value);
+      return defaultValue;
+    }
+  }
+
+  private static int getParsingThreads(@Nullable String buildValue) {
+    if (StringUtil.isNotEmpty(buildValue)) {
+      try {
+        return Integer.parseInt(buildValue.trim());
+      } catch (NumberFormatException e) {
+        LoggingUtils.LOG.warn("Unexpected " + ParseTaskExecutor.PARSING_THREADS_PROPERTY + " value: " + buildValue);
+      }
+    }
+    return getDefaultParsingThreads();
+  }
+
+  /**
+   * @return build configuration parameter value if set, agent property value otherwise
+   */
+  @Nullable
+  private String getParameter(@NotNull String name) {
+    final String value = getBuild().getSharedConfigParameters().get(name);
+    return StringUtil.isNotEmpty(value) ? value : TeamCityProperties.getPropertyOrNull(name);
   }
 
   @SuppressWarnings("ConstantConditions")
@@ -328,17 +575,27 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
 
   @NotNull
   private Rules getRules(@NotNull String rulesStr) {
+    final File file = getFilePath(rulesStr);
+    if (file != null) {
+      return new FileRules(file);
+    }
     final List<String> rules = Arrays.asList(SPLIT_RULES.split(rulesStr));
-    final File baseDir = getBuild().getCheckoutDirectory();
-
-    if (rules.size() == 1) {
-      final String rule = rules.get(0);
-      if (isFilePath(rule)) {
-        return new FileRules(new File(resolveRule(rule, baseDir)));
-      }
+    if (Boolean.parseBoolean(getParameter(AntPatternIncludeExcludeRules.ANT_PATTERN_SCAN_PROPERTY))) {
+      return new AntPatternIncludeExcludeRules(getBuild().getCheckoutDirectory(), rules);
     }
+    return new OptimizingIncludeExcludeRules(getBuild().getCheckoutDirectory(), rules, myScanPool);
+  }
 
-    return new OptimizingIncludeExcludeRules(baseDir, rules);
+  /**
+   * @return resolved path if the rules consist of a single file or directory path, null otherwise
+   */
+  @Nullable
+  private File getFilePath(@NotNull String rulesStr) {
+    final String[] rules = SPLIT_RULES.split(rulesStr);
+    if (rules.length == 1 && isFilePath(rules[0])) {
+      return new File(resolveRule(rules[0], getBuild().getCheckoutDirectory()));
+    }
+    return null;
   }
 
   @NotNull
@@ -353,22 +610,34 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
     return !new AntPathMatcher().isPattern(rule);
   }
 
+  /**
+   * Logs how soon the first failed test was reported after its report was found, the parse order may make it sooner
+   */
+  private void logFirstFailureTime() {
+    final long firstFailureDelay = myFirstFailureDelay.get();
+    if (firstFailureDelay < 0) return;
+    final String message = "First failed test reported in " + firstFailureDelay + " ms since its report was found";
+    LoggingUtils.LOG.info(message + " in build " + getBuild().getBuildId());
+    LoggingUtils.verbose(message, getBuild().getBuildLogger());
+  }
+
   private void logStatistics(@NotNull final RulesContext rulesContext) {
     final BuildProgressLogger logger = getBuild().getBuildLogger();
 
     final Map<File, ParsingResult> succeeded = rulesContext.getRulesState().getProcessedFiles();
     final Map<File, ParsingResult> failedToParse = rulesContext.getRulesState().getFailedToProcessFiles();
     final List<File> outOfDate = rulesContext.getRulesState().getOutOfDateFiles();
+    final List<File> duplicates = rulesContext.getRulesState().getDuplicateFiles();
 
     final int processedFileCount = succeeded.size() + failedToParse.size();
 
-    final LogAction summaryLogAction = processedFileCount == 0 ? rulesContext.getRulesData().getWhenNoDataPublished() : LogAction.INFO;
+    final LogAction summaryLogAction = processedFileCount + duplicates.size() == 0 ? rulesContext.getRulesData().getWhenNoDataPublished() : LogAction.INFO;
     if (summaryLogAction == LogAction.DO_NOTHING) return;
 
     LoggingUtils.logInTarget(LoggingUtils.getTypeDisplayName(rulesContext.getRulesData().getType()) + " report watcher",
       new Runnable() {
         public void run() {
-          final int totalFileCount = processedFileCount + outOfDate.size();
+          final int totalFileCount = processedFileCount + outOfDate.size() + duplicates.size();
           summaryLogAction.doLogAction(
             totalFileCount == 0
             ? "No reports found for paths:"
@@ -383,6 +652,17 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
             summaryLogAction.doLogAction(rule, logger);
           }
 
+          if (processedFileCount != 0) {
+            final LogAction noDataLogAction = rulesContext.getRulesData().getWhenNoDataPublished();
+            final Collection<File> pathsWithoutReports = getPathsWithoutReports(rulesContext.getRulesData().getRules(), succeeded.keySet(), failedToParse.keySet(), outOfDate, duplicates);
+            if (noDataLogAction != LogAction.DO_NOTHING && !pathsWithoutReports.isEmpty()) {
+              noDataLogAction.doLogAction("No reports found for paths:", logger);
+              for (File path : pathsWithoutReports) {
+                noDataLogAction.doLogAction(path.getPath(), logger);
+              }
+            }
+          }
+
           final ParsingResult result = getParserFactory(rulesContext.getRulesData().getType()).createEmptyResult();
 
           if (!failedToParse.isEmpty()) {
@@ -457,11 +737,59 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
               }
             }, logger);
           }
+          if (!duplicates.isEmpty()) {
+            LoggingUtils.logInTarget("Parsed by other rules", new Runnable() {
+              public void run() {
+                LoggingUtils.message(duplicates.size() + " " + StringUtil.pluralize("report", duplicates.size()), logger);
+
+                for (File duplicate : duplicates) {
+                  final String path = getPathInCheckoutDir(duplicate);
+                  if (rulesContext.getRulesData().isVerbose() || duplicates.size() == 1) {
+                    LoggingUtils.message(path, logger);
+                  } else {
+                    LoggingUtils.LOG.debug(path);
+                  }
+                }
+              }
+            }, logger);
+          }
           result.logAsTotalResult(rulesContext.getRulesData().getParseReportParameters());
         }
       }, logger);
   }
 
+  /**
+   * Several importData paths may share one rules context, the ones none of the reports came from are reported separately
+   */
+  @NotNull
+  private static Collection<File> getPathsWithoutReports(@NotNull Rules rules,
+                                                         @NotNull Collection<File> succeeded,
+                                                         @NotNull Collection<File> failedToParse,
+                                                         @NotNull Collection<File> outOfDate,
+                                                         @NotNull Collection<File> duplicates) {
+    if (!(rules instanceof FileSetRules)) return Collections.emptyList();
+
+    final Set<File> reportPaths = new HashSet<File>();
+    addReportPaths(reportPaths, succeeded);
+    addReportPaths(reportPaths, failedToParse);
+    addReportPaths(reportPaths, outOfDate);
+    addReportPaths(reportPaths, duplicates);
+
+    final List<File> result = new ArrayList<File>();
+    for (File path : rules.getPaths()) {
+      if (!reportPaths.contains(path)) result.add(path);
+    }
+    return result;
+  }
+
+  private static void addReportPaths(@NotNull Set<File> reportPaths, @NotNull Collection<File> reports) {
+    for (File report : reports) {
+      reportPaths.add(report);
+      final File parent = report.getParentFile();
+      if (parent != null) reportPaths.add(parent);
+    }
+  }
+
   private String getPathInCheckoutDir(@NotNull File file) {
     String relativePath = null;
     if (FileUtil.isAncestor(getBuild().getCheckoutDirectory(), file, false)) {
@@ -487,6 +815,14 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
     return myBuild;
   }
 
+  @NotNull
+  private ReportScanIndex getScanIndex() {
+    if (myScanIndex == null) {
+      throw new IllegalStateException("Report scan index is null");
+    }
+    return myScanIndex;
+  }
+
   @NotNull
   private ParserFactory getParserFactory(@NotNull String type) {
     final Map<String, ParserFactory> map = myParserFactoryMap.getValue();
@@ -562,6 +898,13 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
       return isFailBuildIfParsingFailed(myParameters);
     }
 
+    /**
+     * @return milliseconds a single report may be parsed for
+     */
+    public long getParseTimeout() {
+      return getLongParameter(ParseReportCommand.PARSE_TIMEOUT_PROPERTY, ParseReportCommand.DEFAULT_PARSE_TIMEOUT);
+    }
+
     @NotNull
     public MonitorRulesCommand.MonitorRulesParameters getMonitorRulesParameters() {
       return new MonitorRulesCommand.MonitorRulesParameters() {
@@ -631,7 +974,14 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
 
         @NotNull
         public TestReporter getTestReporter() {
-          return new TeamCityTestReporter(getInternalizingThreadLogger(), getBuildProblemType(getType(), "TestFailure"), getCheckoutDir().getAbsolutePath());
+          return new TeamCityTestReporter(getInternalizingThreadLogger(), getBuildProblemType(getType(), "TestFailure"), getCheckoutDir().getAbsolutePath()) {
+            @Override
+            public void testFail(@Nullable String error, @Nullable String stacktrace) {
+              final long reportFoundTime = ParseDeadline.getReportFoundTime();
+              if (reportFoundTime > 0 && !ParseDeadline.isAbandoned()) myFirstFailureDelay.compareAndSet(-1, System.currentTimeMillis() - reportFoundTime);
+              super.testFail(error, stacktrace);
+            }
+          };
         }
 
         @NotNull
@@ -666,9 +1016,11 @@ public class XmlReportPlugin extends AgentLifeCycleAdapter implements RulesProce
     private final long startTime;
     private volatile boolean finished;
     @Nullable
-    private volatile Thread monitorThread;
+    private volatile PollingScheduler scheduler;
     @NotNull
     private final List<RulesContext> rulesContexts;
+    @NotNull
+    private final RulesRegistry rulesRegistry = new RulesRegistry();
 
     private ProcessingContext(@NotNull List<RulesContext> rulesContexts) {
       this.rulesContexts = rulesContexts;
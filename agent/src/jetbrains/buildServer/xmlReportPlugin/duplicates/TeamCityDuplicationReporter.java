@@ -32,6 +32,7 @@ import org.jetbrains.annotations.NotNull;
 public class TeamCityDuplicationReporter extends BaseMessageLogger implements DuplicationReporter {
   @NotNull
   private final DuplicatesReporter myDuplicatesReporter;
+  private boolean myStarted;
 
   public TeamCityDuplicationReporter(@NotNull DuplicatesReporter duplicatesReporter,
                                      @NotNull BuildProgressLogger logger,
@@ -42,10 +43,13 @@ public class TeamCityDuplicationReporter extends BaseMessageLogger implements Du
   }
 
   public void startDuplicates() {
+    if (isDropped()) return;
+    myStarted = true;
     myDuplicatesReporter.startDuplicates();
   }
 
   public void reportDuplicate(@NotNull DuplicationResult duplicate) {
+    if (isDropped()) return;
     final List<DuplicateInfo.Fragment> fragmentsList = new ArrayList<DuplicateInfo.Fragment>();
 
     for (DuplicatingFragment fragment : duplicate.getFragments()) {
@@ -56,7 +60,12 @@ public class TeamCityDuplicationReporter extends BaseMessageLogger implements Du
     myDuplicatesReporter.addDuplicate(new DuplicateInfo(duplicate.getHash(), duplicate.getTokens(), fragmentsList.toArray(new DuplicateInfo.Fragment[0])));
   }
 
+  /**
+   * Finishes the started duplicates even if the parsing is abandoned meanwhile
+   */
   public void finishDuplicates() {
+    if (!myStarted) return;
+    myStarted = false;
     myDuplicatesReporter.finishDuplicates();
   }
 }
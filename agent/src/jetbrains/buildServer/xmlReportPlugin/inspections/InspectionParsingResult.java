@@ -51,6 +51,22 @@ public class InspectionParsingResult extends ProblemParsingResult {
     return myInfos;
   }
 
+  /**
+   * Counts an inspection by its priority: 1 is an error, 2 is a warning, the rest are info messages
+   */
+  public void count(int priority) {
+    switch (priority) {
+      case 1:
+        ++myErrors;
+        break;
+      case 2:
+        ++myWarnings;
+        break;
+      default:
+        ++myInfos;
+    }
+  }
+
   public void accumulate(@NotNull ParsingResult parsingResult) {
     final InspectionParsingResult inspectionParsingResult = (InspectionParsingResult) parsingResult;
     myErrors += inspectionParsingResult.getErrors();
@@ -45,10 +45,12 @@ public class TeamCityInspectionReporter extends BaseMessageLogger implements Ins
   }
 
   public void markBuildAsInspectionsBuild() {
+    if (isDropped()) return;
     myInspectionReporter.markBuildAsInspectionsBuild();
   }
 
   public void reportInspection(@NotNull final InspectionResult inspection) {
+    if (isDropped()) return;
     final InspectionInstance inspectionInstance = new InspectionInstance();
 
     inspectionInstance.setFilePath(PathUtils.getRelativePath(myBaseFolder, inspection.getFilePath()));
@@ -74,6 +76,7 @@ public class TeamCityInspectionReporter extends BaseMessageLogger implements Ins
   }
 
   public void reportInspectionType(@NotNull final InspectionTypeResult inspectionType) {
+    if (isDropped()) return;
     final jetbrains.buildServer.agent.inspections.InspectionTypeInfo inspectionTypeInfo = new jetbrains.buildServer.agent.inspections.InspectionTypeInfo();
 
     inspectionTypeInfo.setId(getValueOrUnknown(inspectionType.getId()));
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import jetbrains.buildServer.util.XmlXppAbstractParser;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParseDeadline;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -27,6 +28,19 @@ import org.jetbrains.annotations.Nullable;
  * @author vbedrosova
  */
 public abstract class BaseXmlXppAbstractParser extends XmlXppAbstractParser {
+  /**
+   * Same as {@code elementsPath}, but checks the {@link ParseDeadline} of the current thread on each element,
+   * so the parsing of a report which is read quickly, but processed slowly stops on time as well
+   */
+  @NotNull
+  protected XmlHandler checkedElementsPath(@NotNull final Handler handler, @NotNull final String... names) {
+    return elementsPath(new Handler() {
+      public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+        ParseDeadline.checkElement();
+        return handler.processElement(reader);
+      }
+    }, names);
+  }
 
   protected abstract class ORHandler implements CloseableHandler, XmlHandler {
     private final List<XmlHandler> myDelegates;
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers;
+
+import java.util.ArrayList;
+import java.util.List;
+import jetbrains.buildServer.xmlReportPlugin.MessageLogger;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationResult;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionResult;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionTypeResult;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Buffers the reporting actions of a parsing pass and performs them only after the report root element is closed,
+ * so an incomplete report is detected in the same pass it's parsed in and nothing is reported from it.
+ *
+ * The inspection and duplication reporters of the agent are shared by the whole build, so the commits to each of them
+ * are serialized: several reports may be parsed in parallel, but the calls made for one report never interleave
+ * with the calls made for another.
+ */
+public class DeferredActions {
+  private static final Object INSPECTIONS_COMMIT_LOCK = new Object();
+  private static final Object DUPLICATES_COMMIT_LOCK = new Object();
+
+  @NotNull
+  private final List<Runnable> myActions = new ArrayList<Runnable>();
+  @NotNull
+  private Object myCommitLock = this;
+  private boolean myComplete;
+
+  public void add(@NotNull Runnable action) {
+    myActions.add(action);
+  }
+
+  /**
+   * Adds an action which calls the inspection reporter itself, it is serialized with the other commits to the reporter
+   */
+  public void addInspectionsAction(@NotNull Runnable action) {
+    myCommitLock = INSPECTIONS_COMMIT_LOCK;
+    add(action);
+  }
+
+  /**
+   * @return reporter which buffers the calls, they are made on the given reporter by {@link #commit()}
+   */
+  @NotNull
+  public InspectionReporter defer(@NotNull InspectionReporter reporter) {
+    myCommitLock = INSPECTIONS_COMMIT_LOCK;
+    return new DeferredInspectionReporter(reporter);
+  }
+
+  /**
+   * @return reporter which buffers the calls, they are made on the given reporter by {@link #commit()}
+   */
+  @NotNull
+  public DuplicationReporter defer(@NotNull DuplicationReporter reporter) {
+    myCommitLock = DUPLICATES_COMMIT_LOCK;
+    return new DeferredDuplicationReporter(reporter);
+  }
+
+  /**
+   * Should be called when the end tag of the expected root element is met
+   */
+  public void complete() {
+    myComplete = true;
+  }
+
+  public boolean isComplete() {
+    return myComplete;
+  }
+
+  /**
+   * Performs the buffered actions if the report is complete, no other commit to the same reporter runs meanwhile
+   * @return true if the report is complete
+   */
+  public boolean commit() {
+    if (!myComplete) return false;
+    synchronized (myCommitLock) {
+      for (Runnable action : myActions) {
+        action.run();
+      }
+    }
+    myActions.clear();
+    return true;
+  }
+
+  private class DeferredMessageLogger implements MessageLogger {
+    @NotNull
+    private final MessageLogger myLogger;
+
+    private DeferredMessageLogger(@NotNull MessageLogger logger) {
+      myLogger = logger;
+    }
+
+    public void info(@NotNull final String message) {
+      add(new Runnable() {
+        public void run() {
+          myLogger.info(message);
+        }
+      });
+    }
+
+    public void warning(@NotNull final String message) {
+      add(new Runnable() {
+        public void run() {
+          myLogger.warning(message);
+        }
+      });
+    }
+
+    public void error(@NotNull final String message) {
+      add(new Runnable() {
+        public void run() {
+          myLogger.error(message);
+        }
+      });
+    }
+
+    public void failure(@NotNull final String message) {
+      add(new Runnable() {
+        public void run() {
+          myLogger.failure(message);
+        }
+      });
+    }
+  }
+
+  private final class DeferredInspectionReporter extends DeferredMessageLogger implements InspectionReporter {
+    @NotNull
+    private final InspectionReporter myReporter;
+
+    private DeferredInspectionReporter(@NotNull InspectionReporter reporter) {
+      super(reporter);
+      myReporter = reporter;
+    }
+
+    public void reportInspection(@NotNull final InspectionResult inspection) {
+      add(new Runnable() {
+        public void run() {
+          myReporter.reportInspection(inspection);
+        }
+      });
+    }
+
+    public void reportInspectionType(@NotNull final InspectionTypeResult inspectionType) {
+      add(new Runnable() {
+        public void run() {
+          myReporter.reportInspectionType(inspectionType);
+        }
+      });
+    }
+  }
+
+  private final class DeferredDuplicationReporter extends DeferredMessageLogger implements DuplicationReporter {
+    @NotNull
+    private final DuplicationReporter myReporter;
+
+    private DeferredDuplicationReporter(@NotNull DuplicationReporter reporter) {
+      super(reporter);
+      myReporter = reporter;
+    }
+
+    public void startDuplicates() {
+      add(new Runnable() {
+        public void run() {
+          myReporter.startDuplicates();
+        }
+      });
+    }
+
+    public void reportDuplicate(@NotNull final DuplicationResult duplicate) {
+      add(new Runnable() {
+        public void run() {
+          myReporter.reportDuplicate(duplicate);
+        }
+      });
+    }
+
+    public void finishDuplicates() {
+      add(new Runnable() {
+        public void run() {
+          myReporter.finishDuplicates();
+        }
+      });
+    }
+  }
+}
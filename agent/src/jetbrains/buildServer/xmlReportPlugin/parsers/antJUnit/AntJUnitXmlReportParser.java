@@ -42,8 +42,8 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
   protected List<XmlHandler> getRootHandlers() {
     final Handler handler = getSuiteHandler();
     return new ORHandler(
-      elementsPath(handler, "testsuite"),
-      elementsPath(handler, "testsuites", "testsuite")
+      checkedElementsPath(handler, "testsuite"),
+      checkedElementsPath(handler, "testsuites", "testsuite")
     ) {
       @Override
       protected void finished(final boolean matched) {
@@ -63,7 +63,7 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
           myCallback.suiteFound(suiteName);
 
           return reader.visitChildren(
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               @Override
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 final String type = reader.getAttribute("type");
@@ -76,7 +76,7 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
                 });
               }
             }, "failure"),
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               @Override
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 final String type = reader.getAttribute("type");
@@ -101,7 +101,7 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
                 myCallback.suiteSystemErrFound(suiteName, text.trim());
               }
             }, "system-err"),
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               @Override
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 final String name = reader.getAttribute("name");
@@ -114,14 +114,14 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
                 testData.setExecuted(isExecuted(reader));
 
                 return reader.visitChildren(
-                  elementsPath(new Handler() {
+                  checkedElementsPath(new Handler() {
                     @Override
                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                       testData.setExecuted(true);
                       return processTestFailure(reader, testData);
                     }
                   }, "failure"),
-                  elementsPath(new Handler() {
+                  checkedElementsPath(new Handler() {
                     @Override
                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                       return processTestFailure(reader, testData);
@@ -138,7 +138,7 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
                       testData.setStdErr(text.trim());
                     }
                   }, "system-err"),
-                  elementsPath(new Handler() {
+                  checkedElementsPath(new Handler() {
                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                       testData.setExecuted(false);
                       return reader.noDeep();
@@ -158,7 +158,7 @@ class AntJUnitXmlReportParser extends BaseXmlXppAbstractParser {
                 });
               }
             }, "testcase"),
-            elementsPath(getSuiteHandler(), "testsuite")
+            checkedElementsPath(getSuiteHandler(), "testsuite")
           ).than(new XmlAction() {
             @Override
             public void apply() {
@@ -25,6 +25,7 @@ import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionParsingResult
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionResult;
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionTypeResult;
+import jetbrains.buildServer.xmlReportPlugin.parsers.DeferredActions;
 import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -38,55 +39,55 @@ class CheckstyleReportParser implements Parser {
   @NotNull
   private final InspectionReporter myInspectionReporter;
 
-  private int myErrors;
-  private int myWarnings;
-  private int myInfos;
+  @NotNull
+  private final InspectionParsingResult myResult = InspectionParsingResult.createEmptyResult();
 
   public CheckstyleReportParser(@NotNull final InspectionReporter inspectionReporter) {
     myInspectionReporter = inspectionReporter;
   }
 
   public boolean parse(@NotNull final File file, @Nullable final ParsingResult prevResult) throws ParsingException {
-    if (!ParserUtils.isReportComplete(file, "checkstyle")) {
+    if (ParserUtils.hasDocumentTypeDeclaration(file) && !ParserUtils.isReportComplete(file, "checkstyle")) {
       return false;
     }
 
+    final DeferredActions actions = new DeferredActions();
+    final InspectionReporter reporter = actions.defer(myInspectionReporter);
+    final InspectionParsingResult found = InspectionParsingResult.createEmptyResult();
     try {
       new CheckstyleXmlReportParser(new CheckstyleXmlReportParser.Callback() {
         public void reportInspection(@NotNull final InspectionResult inspection) {
-          switch (inspection.getPriority()) {
-            case 1:
-              ++myErrors;
-              break;
-            case 2:
-              ++myWarnings;
-              break;
-            default:
-              ++myInfos;
-          }
-          myInspectionReporter.reportInspection(inspection);
+          found.count(inspection.getPriority());
+          reporter.reportInspection(inspection);
         }
 
         public void reportInspectionType(@NotNull final InspectionTypeResult inspectionType) {
-          myInspectionReporter.reportInspectionType(inspectionType);
+          reporter.reportInspectionType(inspectionType);
         }
 
         public void reportException(@NotNull final String message) {
-          myInspectionReporter.error("Exception in report " + file.getAbsolutePath() + "\n" + message);
+          reporter.error("Exception in report " + file.getAbsolutePath() + "\n" + message);
         }
 
         @Override
         public void error(@NotNull final String message) {
-          myInspectionReporter.error(message);
+          reporter.error(message);
+        }
+
+        public void reportFinished() {
+          actions.complete();
         }
       }).parse(file);
     } catch (IOException e) {
-      throw new ParsingException(e);
+      if (!ParserUtils.isTruncated(file, "checkstyle")) throw new ParsingException(e);
+      return false; // incomplete report, will be parsed again later
     }
+    if (!actions.commit()) return false;
+    myResult.accumulate(found);
     return true;
   }
 
   public ParsingResult getParsingResult() {
-    return new InspectionParsingResult(myErrors, myWarnings, myInfos);
+    return new InspectionParsingResult(myResult.getErrors(), myResult.getWarnings(), myResult.getInfos());
   }
 }
\ No newline at end of file
@@ -38,14 +38,14 @@ class CheckstyleXmlReportParser extends BaseXmlXppAbstractParser {
 
   @Override
   protected List<XmlHandler> getRootHandlers() {
-    return new ORHandler(elementsPath(new Handler() {
+    return new ORHandler(checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
         return reader.visitChildren(
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
               final String file = reader.getAttribute("name");
 
-              return reader.visitChildren(elementsPath(new Handler() {
+              return reader.visitChildren(checkedElementsPath(new Handler() {
                 public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                   myCallback.reportInspectionType(
                     new InspectionTypeResult(reader.getAttribute("source"), reader.getAttribute("source"),
@@ -66,7 +66,12 @@ class CheckstyleXmlReportParser extends BaseXmlXppAbstractParser {
             public void setText(@NotNull final String text) {
               myCallback.reportException(text.trim());
             }
-          }, "exception"));
+          }, "exception")
+        ).than(new XmlAction() {
+          public void apply() {
+            myCallback.reportFinished();
+          }
+        });
       }
     }, "checkstyle")) {
       @Override
@@ -98,5 +103,6 @@ class CheckstyleXmlReportParser extends BaseXmlXppAbstractParser {
     void reportInspectionType(@NotNull InspectionTypeResult inspectionType);
     void reportException(@NotNull String message);
     void error(@NotNull String message);
+    void reportFinished();
   }
 }
@@ -40,7 +40,7 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
   @Override
   protected List<XmlHandler> getRootHandlers() {
     // TODO: support for Coverage.xml & other reports produced by CTest
-    return new ORHandler(elementsPath(getSiteHandler(), "Site")) {
+    return new ORHandler(checkedElementsPath(getSiteHandler(), "Site")) {
       @Override
       protected void finished(final boolean matched) {
         if (!matched) myCallback.unexpectedFormat("\"Site\" root element expected.");
@@ -58,7 +58,7 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
   }
 
   private XmlHandler testingHandler() {
-    return elementsPath(new Handler() {
+    return checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
         return reader.visitChildren(
 //                // This does not needed
@@ -89,9 +89,9 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
 
   @NotNull
   private XmlHandler testsListHandler() {
-    return elementsPath(new Handler() {
+    return checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull XmlElementInfo reader) {
-        return reader.visitChildren(elementsPath(new Handler() {
+        return reader.visitChildren(checkedElementsPath(new Handler() {
           public XmlReturn processElement(@NotNull XmlElementInfo reader1) {
             return reader1.visitText(new TextHandler() {
               public void setText(@NotNull String text) {
@@ -107,7 +107,7 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
 
   @NotNull
   private XmlHandler testHandler() {
-    return elementsPath(new Handler() {
+    return checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
         final TestData testData = new TestData(reader.getAttribute("Status"));
         return reader.visitChildren(
@@ -142,10 +142,10 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
 
   @NotNull
   private XmlHandler testResultsHandler(@NotNull final TestData testData) {
-    return elementsPath(new Handler() {
+    return checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull XmlElementInfo reader) {
         return reader.visitChildren(
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                 final String type = reader.getAttribute("type");
                 final String name = reader.getAttribute("name");
@@ -178,11 +178,11 @@ class TestXmlReportParser extends BaseXmlXppAbstractParser {
                 });
               }
             }, "NamedMeasurement"),
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                 final String[] compression = new String[1];
                 final String[] value = new String[1];
-                return reader.visitChildren(elementsPath(new Handler() {
+                return reader.visitChildren(checkedElementsPath(new Handler() {
                   public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                     compression[0] = reader.getAttribute("compression");
                     return reader.visitText(new TextHandler() {
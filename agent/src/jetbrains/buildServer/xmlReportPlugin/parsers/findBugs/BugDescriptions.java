@@ -0,0 +1,139 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.text.html.parser.DTD;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Names and descriptions of bug patterns and categories collected from FindBugs reports and plugins messages
+ */
+class BugDescriptions implements PatternXmlParser.Callback, CategoryXmlParser.Callback {
+  @NotNull
+  private final Map<String, NameAndDescritionInfo> myPatterns = new HashMap<String, NameAndDescritionInfo>();
+  @NotNull
+  private final Map<String, NameAndDescritionInfo> myCategories = new HashMap<String, NameAndDescritionInfo>();
+
+  @Nullable
+  private DetailsParser myDetailsParser;
+  private boolean myDetailsParserCreated;
+
+  public void patternFound(@NotNull final String type) {
+    if (!myPatterns.containsKey(type)) myPatterns.put(type, new NameAndDescritionInfo());
+  }
+
+  public void patternShortDescriptionFound(@NotNull final String type, @NotNull final String description) {
+    myPatterns.get(type).setName(description);
+  }
+
+  public void patternDetailsFound(@NotNull final String type, @NotNull final String details) {
+    myPatterns.get(type).setDescription(formatText(details));
+  }
+
+  public void categoryFound(@NotNull final String category) {
+    if (!myCategories.containsKey(category)) myCategories.put(category, new NameAndDescritionInfo());
+  }
+
+  public void categoryDescriptionFound(@NotNull final String category, @NotNull final String description) {
+    myCategories.get(category).setName(description);
+  }
+
+  public void categoryDetailsFound(@NotNull final String category, @NotNull final String details) {
+    final String text = formatText(details);
+    myCategories.get(category).setDescription(text.substring(0, 1).toUpperCase() + text.substring(1));
+  }
+
+  @Nullable
+  public NameAndDescritionInfo getPattern(@Nullable String type) {
+    return myPatterns.get(type);
+  }
+
+  @Nullable
+  public NameAndDescritionInfo getCategory(@Nullable String category) {
+    return myCategories.get(category);
+  }
+
+  /**
+   * Adds the descriptions from other source, the descriptions it specifies override the existing ones
+   */
+  public void addAll(@NotNull BugDescriptions other) {
+    merge(myPatterns, other.myPatterns);
+    merge(myCategories, other.myCategories);
+  }
+
+  private static void merge(@NotNull Map<String, NameAndDescritionInfo> to, @NotNull Map<String, NameAndDescritionInfo> from) {
+    for (Map.Entry<String, NameAndDescritionInfo> e : from.entrySet()) {
+      NameAndDescritionInfo info = to.get(e.getKey());
+      if (info == null) {
+        info = new NameAndDescritionInfo();
+        to.put(e.getKey(), info);
+      }
+      if (e.getValue().getName().length() > 0) info.setName(e.getValue().getName());
+      if (e.getValue().getDescription().length() > 0) info.setDescription(e.getValue().getDescription());
+    }
+  }
+
+  @SuppressWarnings({"ConstantConditions"})
+  private String formatText(@NotNull String s) {
+    if (!myDetailsParserCreated) {
+      myDetailsParserCreated = true;
+      try {
+        myDetailsParser = new DetailsParser(DTD.getDTD(""));
+      } catch (IOException e) {
+        FindBugsReportParser.LOG.warn("Failed to create empty DTD");
+      }
+    }
+    if (myDetailsParser == null) return s;
+    try {
+      myDetailsParser.parse(new BufferedReader(new StringReader(s)));
+    } catch (IOException e) {
+      FindBugsReportParser.LOG.warn("Couldn't format html description to text", e);
+    }
+    return myDetailsParser.getText().replace("&nbsp", "");
+  }
+
+  static final class NameAndDescritionInfo {
+    @NotNull
+    private String myName = "";
+    @NotNull
+    private String myDescription = "";
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public void setName(@NotNull final String name) {
+      myName = name;
+    }
+
+    @NotNull
+    public String getDescription() {
+      return myDescription;
+    }
+
+    public void setDescription(@NotNull final String description) {
+      myDescription = description;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bug instances buffered until the report patterns and categories are known.
+ *
+ * Bug types and categories are interned, the numeric fields of all the bugs are packed into one array.
+ * Errors are kept along with the number of bugs found before them, so that they are replayed in the report order.
+ */
+class BugInstances {
+  private static final int TYPE = 0;
+  private static final int CATEGORY = 1;
+  private static final int LINE = 2;
+  private static final int PRIORITY = 3;
+  private static final int INT_FIELDS = 4;
+
+  private static final int FILE = 0;
+  private static final int CLASS = 1;
+  private static final int MESSAGE = 2;
+  private static final int DETAILS = 3;
+  private static final int STRING_FIELDS = 4;
+
+  private static final int NO_NAME = -1;
+
+  @NotNull
+  private final Map<String, Integer> myNameIds = new HashMap<String, Integer>();
+  @NotNull
+  private final List<String> myNames = new ArrayList<String>();
+
+  @NotNull
+  private int[] myInts = new int[16 * INT_FIELDS];
+  @NotNull
+  private String[] myStrings = new String[16 * STRING_FIELDS];
+  private int mySize;
+
+  @NotNull
+  private final List<String> myErrors = new ArrayList<String>();
+  @NotNull
+  private int[] myErrorPositions = new int[4];
+
+  public void add(@Nullable String file, @Nullable String clazz, int line,
+                  @Nullable String type, @Nullable String category, @Nullable String message, @Nullable String details, int priority) {
+    if (mySize * INT_FIELDS == myInts.length) {
+      myInts = Arrays.copyOf(myInts, myInts.length * 2);
+      myStrings = Arrays.copyOf(myStrings, myStrings.length * 2);
+    }
+
+    final int i = mySize * INT_FIELDS;
+    myInts[i + TYPE] = intern(type);
+    myInts[i + CATEGORY] = intern(category);
+    myInts[i + LINE] = line;
+    myInts[i + PRIORITY] = priority;
+
+    final int s = mySize * STRING_FIELDS;
+    myStrings[s + FILE] = file;
+    myStrings[s + CLASS] = clazz;
+    myStrings[s + MESSAGE] = message;
+    myStrings[s + DETAILS] = details;
+
+    ++mySize;
+  }
+
+  public void addError(@NotNull String message) {
+    if (myErrors.size() == myErrorPositions.length) {
+      myErrorPositions = Arrays.copyOf(myErrorPositions, myErrorPositions.length * 2);
+    }
+    myErrorPositions[myErrors.size()] = mySize;
+    myErrors.add(message);
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public int errorsCount() {
+    return myErrors.size();
+  }
+
+  @NotNull
+  public String getError(int errorIndex) {
+    return myErrors.get(errorIndex);
+  }
+
+  /**
+   * @return the number of bugs found before the error
+   */
+  public int getErrorPosition(int errorIndex) {
+    return myErrorPositions[errorIndex];
+  }
+
+  public void setFile(int index, @Nullable String file) {
+    myStrings[index * STRING_FIELDS + FILE] = file;
+  }
+
+  @Nullable
+  public String getFile(int index) {
+    return myStrings[index * STRING_FIELDS + FILE];
+  }
+
+  @Nullable
+  public String getClass(int index) {
+    return myStrings[index * STRING_FIELDS + CLASS];
+  }
+
+  @Nullable
+  public String getMessage(int index) {
+    return myStrings[index * STRING_FIELDS + MESSAGE];
+  }
+
+  @Nullable
+  public String getDetails(int index) {
+    return myStrings[index * STRING_FIELDS + DETAILS];
+  }
+
+  @Nullable
+  public String getType(int index) {
+    return getName(myInts[index * INT_FIELDS + TYPE]);
+  }
+
+  @Nullable
+  public String getCategory(int index) {
+    return getName(myInts[index * INT_FIELDS + CATEGORY]);
+  }
+
+  public int getLine(int index) {
+    return myInts[index * INT_FIELDS + LINE];
+  }
+
+  public int getPriority(int index) {
+    return myInts[index * INT_FIELDS + PRIORITY];
+  }
+
+  private int intern(@Nullable String name) {
+    if (name == null) return NO_NAME;
+    Integer id = myNameIds.get(name);
+    if (id == null) {
+      id = myNames.size();
+      myNames.add(name);
+      myNameIds.put(name, id);
+    }
+    return id;
+  }
+
+  @Nullable
+  private String getName(int id) {
+    return id == NO_NAME ? null : myNames.get(id);
+  }
+}
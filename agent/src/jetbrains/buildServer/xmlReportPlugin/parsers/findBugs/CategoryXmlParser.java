@@ -39,31 +39,39 @@ class CategoryXmlParser extends XmlXppAbstractParser {
   protected List<XmlHandler> getRootHandlers() {
     return Arrays.asList(elementsPatternPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-        return reader.visitChildren(elementsPath(new Handler() {
-          public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-            final String category = reader.getAttribute("category");
+        return reader.visitChildren(getBugCategoryHandler());
+      }
+    }, ".*Collection"));
+  }
 
-            if (category == null) return reader.noDeep();
+  /**
+   * Handles a BugCategory element, the FindBugs report describes its patterns and categories the same way as the plugins do
+   */
+  @NotNull
+  XmlHandler getBugCategoryHandler() {
+    return elementsPath(new Handler() {
+      public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+        final String category = reader.getAttribute("category");
+
+        if (category == null) return reader.noDeep();
 
-            myCallback.categoryFound(category);
+        myCallback.categoryFound(category);
 
-            return reader.visitChildren(
-              elementsPath(new TextHandler() {
-                public void setText(@NotNull final String text) {
-                  myCallback.categoryDescriptionFound(category, ParserUtils.formatText(text));
-                }
-              }, "Description"),
+        return reader.visitChildren(
+          elementsPath(new TextHandler() {
+            public void setText(@NotNull final String text) {
+              myCallback.categoryDescriptionFound(category, ParserUtils.formatText(text));
+            }
+          }, "Description"),
 
-              elementsPath(new TextHandler() {
-                public void setText(@NotNull final String text) {
-                  myCallback.categoryDetailsFound(category, ParserUtils.formatText(text));
-                }
-              }, "Details")
-            );
-          }
-        }, "BugCategory"));
+          elementsPath(new TextHandler() {
+            public void setText(@NotNull final String text) {
+              myCallback.categoryDetailsFound(category, ParserUtils.formatText(text));
+            }
+          }, "Details")
+        );
       }
-    }, ".*Collection"));
+    }, "BugCategory");
   }
 
   public static interface Callback {
@@ -28,6 +28,9 @@ import org.jetbrains.annotations.NotNull;
  * Time: 20:32
  */
 public class FindBugsFactory implements ParserFactory {
+  @NotNull
+  private final FindBugsPluginCatalog myPluginCatalog = new FindBugsPluginCatalog();
+
   @NotNull
   @Override
   public String getType() {
@@ -47,7 +50,8 @@ public class FindBugsFactory implements ParserFactory {
   public Parser createParser(@NotNull ParseParameters parameters) {
     final Map<String,String> params = parameters.getParameters();
     return new FindBugsReportParser(parameters.getInspectionReporter(), XmlReportPluginUtil.getFindBugsHomePath(params),
-                                    parameters.getCheckoutDir(), XmlReportPluginUtil.isFindBugsLookupFiles(params));
+                                    parameters.getCheckoutDir(), XmlReportPluginUtil.isFindBugsLookupFiles(params),
+                                    myPluginCatalog);
   }
 
   @NotNull
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Bug pattern and category descriptions from the messages.xml of FindBugs plugins.
+ *
+ * Shared by the FindBugs parsers of the agent: a plugin jar is read only the first time it's met
+ * and read again only if its size or modification time has changed. A plugin which failed to load is read again next time.
+ */
+class FindBugsPluginCatalog {
+  @NotNull
+  private final ConcurrentMap<File, Plugin> myPlugins = new ConcurrentHashMap<File, Plugin>();
+
+  /**
+   * @param findBugsHome FindBugs home directory
+   * @return descriptions of all the plugins found under the FindBugs home, core plugin first
+   */
+  @NotNull
+  public List<Plugin> getPlugins(@NotNull File findBugsHome) {
+    final List<Plugin> result = new ArrayList<Plugin>();
+    new FindBugsPluginVisitor(new FindBugsPluginVisitor.Callback() {
+      public void pluginFound(@NotNull File plugin) {
+        result.add(getPlugin(plugin));
+      }
+    }).visit(findBugsHome);
+    return result;
+  }
+
+  @NotNull
+  private Plugin getPlugin(@NotNull File jar) {
+    final long lastModified = jar.lastModified();
+    final long length = jar.length();
+
+    final Plugin cached = myPlugins.get(jar);
+    if (cached != null && cached.myLastModified == lastModified && cached.myLength == length) return cached;
+
+    final Plugin plugin = load(jar, lastModified, length);
+    if (plugin.isLoadFailed()) {
+      myPlugins.remove(jar);
+    } else {
+      myPlugins.put(jar, plugin);
+    }
+    return plugin;
+  }
+
+  @NotNull
+  private static Plugin load(@NotNull File file, long lastModified, long length) {
+    final BugDescriptions descriptions = new BugDescriptions();
+    JarFile jar = null;
+    try {
+      jar = new JarFile(file);
+
+      final JarEntry messages = jar.getJarEntry("messages.xml");
+      if (messages == null) {
+        FindBugsReportParser.LOG.warn("Couldn't find messages.xml in plugin " + file);
+        return new Plugin(descriptions, lastModified, length, false);
+      }
+
+      try {
+        new PatternXmlParser(descriptions).parse(openReader(jar, messages));
+        new CategoryXmlParser(descriptions).parse(openReader(jar, messages));
+      } catch (IOException e) {
+        FindBugsReportParser.LOG.warn("Couldn't load bug patterns from plugin " + file, e);
+        return new Plugin(descriptions, lastModified, length, true);
+      }
+    } catch (Exception e) {
+      FindBugsReportParser.LOG.warn("Couldn't read messages.xml from plugin " + file, e);
+      return new Plugin(descriptions, lastModified, length, true);
+    } finally {
+      try {
+        if (jar != null) {
+          jar.close();
+        }
+      } catch (IOException e) {
+        FindBugsReportParser.LOG.warn("Couldn't close plugin " + file, e);
+      }
+    }
+    return new Plugin(descriptions, lastModified, length, false);
+  }
+
+  @NotNull
+  private static Reader openReader(@NotNull JarFile jar, @NotNull JarEntry entry) throws IOException {
+    return new InputStreamReader(jar.getInputStream(entry), "UTF-8");
+  }
+
+  static final class Plugin {
+    @NotNull
+    private final BugDescriptions myDescriptions;
+    private final long myLastModified;
+    private final long myLength;
+    private final boolean myLoadFailed;
+
+    private Plugin(@NotNull BugDescriptions descriptions, long lastModified, long length, boolean loadFailed) {
+      myDescriptions = descriptions;
+      myLastModified = lastModified;
+      myLength = length;
+      myLoadFailed = loadFailed;
+    }
+
+    @NotNull
+    public BugDescriptions getDescriptions() {
+      return myDescriptions;
+    }
+
+    /**
+     * @return true if the plugin jar can not be read or its messages.xml is malformed
+     */
+    public boolean isLoadFailed() {
+      return myLoadFailed;
+    }
+  }
+}
@@ -17,12 +17,6 @@
 package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import jetbrains.buildServer.util.FileUtil;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -48,7 +42,7 @@ class FindBugsPluginVisitor {
     if (!corePlugin.isFile()) {
       LOG.info("Couldn't find core plugin " + corePlugin + ". Ensure specified FindBugs home path is correct");
     } else {
-      load(corePlugin);
+      myCallback.pluginFound(corePlugin);
     }
     final File pluginFolder = new File(findBugsHome, "plugin");
     final File[] plugins = pluginFolder.listFiles();
@@ -57,53 +51,12 @@ class FindBugsPluginVisitor {
     }
     for (File p : plugins) {
       if (p.getAbsolutePath().endsWith(".jar")) {
-        load(p);
-      }
-    }
-  }
-
-  private void load(@NotNull File file) {
-    JarFile jar = null;
-    try {
-      jar = new JarFile(file);
-
-      final JarEntry messages = jar.getJarEntry("messages.xml");
-
-      if (messages == null) {
-        LOG.warn("Couldn't find messages.xml in plugin " + file);
-        return;
-      }
-
-      final File tempFile = FileUtil.createTempFile("", "");
-      InputStream jarFileStream = null;
-      FileOutputStream tempFileStream = null;
-      try {
-        jarFileStream = jar.getInputStream(messages);
-        tempFileStream = new FileOutputStream(tempFile);
-
-        FileUtil.copy(jarFileStream, tempFileStream);
-      } finally {
-        FileUtil.close(jarFileStream);
-        FileUtil.close(tempFileStream);
-      }
-
-      myCallback.pluginFound(tempFile);
-
-      FileUtil.delete(tempFile);
-    } catch (Exception e) {
-      LOG.warn("Couldn't copy out messages.xml from plugin " + file, e);
-    } finally {
-      try {
-        if (jar != null) {
-          jar.close();
-        }
-      } catch (IOException e) {
-        LOG.warn("Couldn't close plugin " + file, e);
+        myCallback.pluginFound(p);
       }
     }
   }
 
   public static interface Callback {
-    void pluginFound(@NotNull File messages);
+    void pluginFound(@NotNull File plugin);
   }
 }
@@ -16,13 +16,8 @@
 
 package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
-import java.util.HashMap;
-import java.util.Map;
-import javax.swing.text.html.parser.DTD;
 import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.xmlReportPlugin.Parser;
@@ -32,6 +27,7 @@ import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionParsingResult
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionResult;
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionTypeResult;
+import jetbrains.buildServer.xmlReportPlugin.parsers.DeferredActions;
 import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -53,62 +49,28 @@ class FindBugsReportParser implements Parser {
   private int myInfos;
 
   @NotNull
-  private final PatternXmlParser myPatternXmlParser;
+  private final FindBugsPluginCatalog myPluginCatalog;
   @NotNull
-  private final Map<String, NameAndDescritionInfo> myPatterns = new HashMap<String, NameAndDescritionInfo>();
-  @NotNull
-  private final CategoryXmlParser myCategoryXmlParser;
-  @NotNull
-  private final Map<String, NameAndDescritionInfo> myCategories = new HashMap<String, NameAndDescritionInfo>();
+  private final BugDescriptions myDescriptions = new BugDescriptions();
 
   @NotNull
   private final FileFinder myFileFinder;
 
-  @Nullable
-  private DetailsParser myDetailsParser;
-
   public FindBugsReportParser(@NotNull final InspectionReporter inspectionReporter,
                               @Nullable final String findBugsHome,
                               @NotNull final File baseFolder) {
-    this(inspectionReporter, findBugsHome, baseFolder, true);
+    this(inspectionReporter, findBugsHome, baseFolder, true, new FindBugsPluginCatalog());
   }
 
   public FindBugsReportParser(@NotNull final InspectionReporter inspectionReporter,
                               @Nullable final String findBugsHome,
                               @NotNull final File baseFolder,
-                              boolean lookForFiles) {
+                              boolean lookForFiles,
+                              @NotNull final FindBugsPluginCatalog pluginCatalog) {
     myInspectionReporter = inspectionReporter;
     myBaseFolder = baseFolder;
     myFindBugsHome = findBugsHome == null ? null : new File(findBugsHome);
-
-    myPatternXmlParser = new PatternXmlParser(new PatternXmlParser.Callback() {
-      public void patternFound(@NotNull final String type) {
-        if (!myPatterns.containsKey(type)) myPatterns.put(type, new NameAndDescritionInfo());
-      }
-
-      public void patternShortDescriptionFound(@NotNull final String type, @NotNull final String description) {
-        myPatterns.get(type).setName(description);
-      }
-
-      public void patternDetailsFound(@NotNull final String type, @NotNull final String details) {
-        myPatterns.get(type).setDescription(formatText(details));
-      }
-    });
-
-    myCategoryXmlParser = new CategoryXmlParser(new CategoryXmlParser.Callback() {
-      public void categoryFound(@NotNull final String category) {
-        if (!myCategories.containsKey(category)) myCategories.put(category, new NameAndDescritionInfo());
-      }
-
-      public void categoryDescriptionFound(@NotNull final String category, @NotNull final String description) {
-        myCategories.get(category).setName(description);
-      }
-
-      public void categoryDetailsFound(@NotNull final String category, @NotNull final String details) {
-        final String text = formatText(details);
-        myCategories.get(category).setDescription(text.substring(0, 1).toUpperCase() + text.substring(1));
-      }
-    });
+    myPluginCatalog = pluginCatalog;
 
     myFileFinder = lookForFiles ? new FileFinder() : new FileFinder() {
       @Override
@@ -118,79 +80,122 @@ class FindBugsReportParser implements Parser {
       @Override
       public void close() {}
     };
-
-    try {
-      myDetailsParser = new DetailsParser(DTD.getDTD(""));
-    } catch (IOException e) {
-      LOG.warn("Failed to create empty DTD");
-    }
   }
 
   public boolean parse(@NotNull final File file, @Nullable final ParsingResult prevResult) throws ParsingException {
-    if (!ParserUtils.isReportComplete(file, "BugCollection")) {
+    if (ParserUtils.hasDocumentTypeDeclaration(file) && !ParserUtils.isReportComplete(file, "BugCollection")) {
       return false;
     }
 
-    if (myFindBugsHome != null) {
-      new FindBugsPluginVisitor(new FindBugsPluginVisitor.Callback() {
-        public void pluginFound(@NotNull File messages) {
-          try {
-            myPatternXmlParser.parse(messages);
-            myCategoryXmlParser.parse(messages);
-          } catch (IOException e) {
+    try {
+      final DeferredActions actions = new DeferredActions();
+      final BugInstances bugs = new BugInstances();
+      final BugDescriptions reportDescriptions = new BugDescriptions();
+      try {
+        parseReport(file, actions, bugs, reportDescriptions);
+      } catch (IOException e) {
+        if (!ParserUtils.isTruncated(file, "BugCollection")) throw new ParsingException(e);
+        return false; // incomplete report, will be parsed again later
+      }
+      if (!actions.isComplete()) {
+        return false;
+      }
+
+      if (myFindBugsHome != null) {
+        for (FindBugsPluginCatalog.Plugin plugin : myPluginCatalog.getPlugins(myFindBugsHome)) {
+          if (plugin.isLoadFailed()) {
             myInspectionReporter.error("Error occurred while loading bug patterns from " + myFindBugsHome);
           }
+          myDescriptions.addAll(plugin.getDescriptions());
         }
-      }).visit(myFindBugsHome);
+      }
+      myDescriptions.addAll(reportDescriptions);
+
+      // the jars are looked up before the commit, which holds the lock shared by all the inspection reports
+      for (int i = 0; i < bugs.size(); ++i) {
+        bugs.setFile(i, findFile(bugs.getFile(i), bugs.getClass(i)));
+      }
+
+      return actions.commit();
+    } finally {
+      myFileFinder.close();
     }
+  }
 
-    try {
-      myPatternXmlParser.parse(file);
-      myCategoryXmlParser.parse(file);
+  private void parseReport(@NotNull File file,
+                           @NotNull final DeferredActions actions,
+                           @NotNull final BugInstances bugs,
+                           @NotNull BugDescriptions descriptions) throws IOException {
+    new FindBugsReportXmlParser(new FindBugsReportXmlParser.Callback() {
+      public void jarFound(@NotNull final String jar) {
+        myFileFinder.addJar(FileUtil.resolvePath(myBaseFolder, jar).getAbsolutePath());
+      }
 
-      new FindBugsReportXmlParser(new FindBugsReportXmlParser.Callback() {
-        public void jarFound(@NotNull final String jar) {
-          myFileFinder.addJar(FileUtil.resolvePath(myBaseFolder, jar).getAbsolutePath());
-        }
+      public void bugInstanceFound(@Nullable final String file,
+                                   @Nullable final String clazz,
+                                   final int line,
+                                   @Nullable final String type,
+                                   @Nullable final String category,
+                                   @Nullable final String message,
+                                   @Nullable final String details,
+                                   final int priority) {
+        // reported once the patterns and categories are known, in the report order along with the errors
+        bugs.add(file, clazz, line, type, category, message, details, priority);
+      }
+
+      @Override
+      public void error(@NotNull final String message) {
+        bugs.addError(message);
+      }
 
-        public void bugInstanceFound(@Nullable final String file,
-                                     @Nullable final String clazz,
-                                     final int line,
-                                     @Nullable final String type,
-                                     @Nullable final String category,
-                                     @Nullable final String message,
-                                     @Nullable final String details,
-                                     final int priority) {
-          switch (priority) {
-            case 1:
-              ++myErrors;
-              break;
-            case 2:
-              ++myWarnings;
-              break;
-            default:
-              ++myInfos;
+      public void reportFinished() {
+        actions.addInspectionsAction(new Runnable() {
+          public void run() {
+            reportBugs(bugs);
           }
-          final String cName = myCategories.containsKey(category) ? myCategories.get(category).getName() : category;
-          final String descr = myCategories.containsKey(category) ? myCategories.get(category).getDescription() : null;
-          final String mess = getFullMessage(message, myPatterns.containsKey(type) ? myPatterns.get(type).getDescription() : null, details);
-          final String pName = myPatterns.containsKey(type) ? myPatterns.get(type).getName() : type;
+        });
+        actions.complete();
+      }
+    }, descriptions, descriptions).parse(file);
+  }
 
-          myInspectionReporter.reportInspectionType(new InspectionTypeResult(type, pName, descr, cName));
-          myInspectionReporter.reportInspection(new InspectionResult(findFile(file, clazz), type, mess, line, priority));
-        }
+  private void reportBugs(@NotNull BugInstances bugs) {
+    int error = 0;
+    for (int i = 0; i < bugs.size(); ++i) {
+      for (; error < bugs.errorsCount() && bugs.getErrorPosition(error) == i; ++error) {
+        myInspectionReporter.error(bugs.getError(error));
+      }
+      reportBug(bugs, i);
+    }
+    for (; error < bugs.errorsCount(); ++error) {
+      myInspectionReporter.error(bugs.getError(error));
+    }
+  }
 
-        @Override
-        public void error(@NotNull final String message) {
-          myInspectionReporter.error(message);
-        }
-      }).parse(file);
-    } catch (IOException e) {
-      throw new ParsingException(e);
-    } finally {
-      myFileFinder.close();
+  private void reportBug(@NotNull BugInstances bugs, int index) {
+    final int priority = bugs.getPriority(index);
+    switch (priority) {
+      case 1:
+        ++myErrors;
+        break;
+      case 2:
+        ++myWarnings;
+        break;
+      default:
+        ++myInfos;
     }
-    return true;
+
+    final String type = bugs.getType(index);
+    final String category = bugs.getCategory(index);
+    final BugDescriptions.NameAndDescritionInfo categoryInfo = myDescriptions.getCategory(category);
+    final BugDescriptions.NameAndDescritionInfo patternInfo = myDescriptions.getPattern(type);
+    final String cName = categoryInfo != null ? categoryInfo.getName() : category;
+    final String descr = categoryInfo != null ? categoryInfo.getDescription() : null;
+    final String mess = getFullMessage(bugs.getMessage(index), patternInfo != null ? patternInfo.getDescription() : null, bugs.getDetails(index));
+    final String pName = patternInfo != null ? patternInfo.getName() : type;
+
+    myInspectionReporter.reportInspectionType(new InspectionTypeResult(type, pName, descr, cName));
+    myInspectionReporter.reportInspection(new InspectionResult(bugs.getFile(index), type, mess, bugs.getLine(index), priority));
   }
 
   @Nullable
@@ -225,41 +230,4 @@ class FindBugsReportParser implements Parser {
     if (sourcepath != null) return sourcepath;
     return clazz;
   }
-
-  @SuppressWarnings({"ConstantConditions"})
-  private String formatText(@NotNull String s) {
-    if (myDetailsParser == null) return s;
-    try {
-      myDetailsParser.parse(new BufferedReader(new StringReader(s)));
-    } catch (IOException e) {
-      LOG.warn("Couldn't format html description to text", e);
-    }
-    return myDetailsParser.getText().replace("&nbsp", "");
-  }
-
-
-  private static final class NameAndDescritionInfo {
-    @NotNull
-    private String myName = "";
-    @NotNull
-    private String myDescription = "";
-
-    @NotNull
-    public String getName() {
-      return myName;
-    }
-
-    public void setName(@NotNull final String name) {
-      myName = name;
-    }
-
-    @NotNull
-    public String getDescription() {
-      return myDescription;
-    }
-
-    public void setDescription(@NotNull final String description) {
-      myDescription = description;
-    }
-  }
-}
\ No newline at end of file
+}
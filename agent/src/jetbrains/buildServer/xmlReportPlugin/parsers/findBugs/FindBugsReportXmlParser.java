@@ -31,17 +31,29 @@ import org.jetbrains.annotations.Nullable;
 class FindBugsReportXmlParser extends BaseXmlXppAbstractParser {
   @NotNull
   private final Callback myCallback;
-
-  public FindBugsReportXmlParser(@NotNull Callback callback) {
+  @NotNull
+  private final PatternXmlParser myPatternParser;
+  @NotNull
+  private final CategoryXmlParser myCategoryParser;
+
+  /**
+   * Reports the bug patterns and categories described in the report along with the bug instances,
+   * so the report is read only once. The patterns and categories are written after the bug instances.
+   */
+  public FindBugsReportXmlParser(@NotNull Callback callback,
+                                 @NotNull PatternXmlParser.Callback patternCallback,
+                                 @NotNull CategoryXmlParser.Callback categoryCallback) {
     myCallback = callback;
+    myPatternParser = new PatternXmlParser(patternCallback);
+    myCategoryParser = new CategoryXmlParser(categoryCallback);
   }
 
   @Override
   protected List<XmlXppAbstractParser.XmlHandler> getRootHandlers() {
-    return new ORHandler(elementsPath(new XmlXppAbstractParser.Handler() {
+    return new ORHandler(checkedElementsPath(new XmlXppAbstractParser.Handler() {
       public XmlXppAbstractParser.XmlReturn processElement(@NotNull final XmlXppAbstractParser.XmlElementInfo reader) {
         return reader.visitChildren(
-          elementsPath(new XmlXppAbstractParser.Handler() {
+          checkedElementsPath(new XmlXppAbstractParser.Handler() {
             public XmlXppAbstractParser.XmlReturn processElement(@NotNull final XmlXppAbstractParser.XmlElementInfo reader) {
               final TextHandler textHandler = new TextHandler() {
                 public void setText(@NotNull final String text) {
@@ -55,7 +67,7 @@ class FindBugsReportXmlParser extends BaseXmlXppAbstractParser {
             }
           }, "Project"),
 
-          elementsPath(new XmlXppAbstractParser.Handler() {
+          checkedElementsPath(new XmlXppAbstractParser.Handler() {
             public XmlXppAbstractParser.XmlReturn processElement(@NotNull final XmlXppAbstractParser.XmlElementInfo reader) {
               final String type = reader.getAttribute("type");
               final String category = reader.getAttribute("category");
@@ -66,7 +78,7 @@ class FindBugsReportXmlParser extends BaseXmlXppAbstractParser {
               final SourceLine sourceLine = new SourceLine();
               final StringBuilder details = new StringBuilder();
 
-              final XmlHandler sourceLineHandler = elementsPath(new Handler() {
+              final XmlHandler sourceLineHandler = checkedElementsPath(new Handler() {
                 public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                   sourceLine.update(reader.getAttribute("sourcepath"), getInt(reader.getAttribute("start")), reader.getAttribute("primary"));
                   return reader.noDeep();
@@ -119,8 +131,15 @@ class FindBugsReportXmlParser extends BaseXmlXppAbstractParser {
                 }
               });
             }
-          }, "BugInstance")
-        );
+          }, "BugInstance"),
+
+          myPatternParser.getBugPatternHandler(),
+          myCategoryParser.getBugCategoryHandler()
+        ).than(new XmlAction() {
+          public void apply() {
+            myCallback.reportFinished();
+          }
+        });
       }
     }, "BugCollection")) {
       @Override
@@ -143,6 +162,7 @@ class FindBugsReportXmlParser extends BaseXmlXppAbstractParser {
     void bugInstanceFound(@Nullable String file, @Nullable String clazz, int line,
                           @Nullable String type, @Nullable String category, @Nullable String message, @Nullable String details, int priority);
     void error(@NotNull String message);
+    void reportFinished();
   }
 
   private static class SourceLine {
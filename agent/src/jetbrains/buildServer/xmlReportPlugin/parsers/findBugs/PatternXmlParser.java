@@ -39,31 +39,39 @@ class PatternXmlParser extends XmlXppAbstractParser {
   protected List<XmlHandler> getRootHandlers() {
     return Arrays.asList(elementsPatternPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-        return reader.visitChildren(elementsPath(new Handler() {
-          public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-            final String type = reader.getAttribute("type");
+        return reader.visitChildren(getBugPatternHandler());
+      }
+    }, ".*Collection"));
+  }
 
-            if (type == null) return reader.noDeep();
+  /**
+   * Handles a BugPattern element, the FindBugs report describes its patterns and categories the same way as the plugins do
+   */
+  @NotNull
+  XmlHandler getBugPatternHandler() {
+    return elementsPath(new Handler() {
+      public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+        final String type = reader.getAttribute("type");
+
+        if (type == null) return reader.noDeep();
 
-            myCallback.patternFound(type);
+        myCallback.patternFound(type);
 
-            return reader.visitChildren(
-              elementsPath(new TextHandler() {
-                public void setText(@NotNull final String text) {
-                  myCallback.patternShortDescriptionFound(type, ParserUtils.formatText(text));
-                }
-              }, "ShortDescription"),
+        return reader.visitChildren(
+          elementsPath(new TextHandler() {
+            public void setText(@NotNull final String text) {
+              myCallback.patternShortDescriptionFound(type, ParserUtils.formatText(text));
+            }
+          }, "ShortDescription"),
 
-              elementsPath(new TextHandler() {
-                public void setText(@NotNull final String text) {
-                  myCallback.patternDetailsFound(type, ParserUtils.formatText(text));
-                }
-              }, "Details")
-            );
-          }
-        }, "BugPattern"));
+          elementsPath(new TextHandler() {
+            public void setText(@NotNull final String text) {
+              myCallback.patternDetailsFound(type, ParserUtils.formatText(text));
+            }
+          }, "Details")
+        );
       }
-    }, ".*Collection"));
+    }, "BugPattern");
   }
 
   public static interface Callback {
@@ -22,6 +22,7 @@ import jetbrains.buildServer.xmlReportPlugin.Parser;
 import jetbrains.buildServer.xmlReportPlugin.ParsingException;
 import jetbrains.buildServer.xmlReportPlugin.ParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.inspections.*;
+import jetbrains.buildServer.xmlReportPlugin.parsers.DeferredActions;
 import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -46,33 +47,41 @@ class JSLintReportParser implements Parser {
       return false;
     }
 
+    final DeferredActions actions = new DeferredActions();
+    final InspectionReporter reporter = actions.defer(myInspectionReporter);
     try {
       new JSLintXmlReportParser(new JSLintXmlReportParser.Callback() {
         @Override
         public void markBuildAsInspectionsBuild() {
           if (myInspectionReporter instanceof TeamCityInspectionReporter) {
-            ((TeamCityInspectionReporter)myInspectionReporter).markBuildAsInspectionsBuild();
+            actions.add(new Runnable() {
+              public void run() {
+                ((TeamCityInspectionReporter)myInspectionReporter).markBuildAsInspectionsBuild();
+              }
+            });
           }
         }
 
         public void reportInspection(@NotNull final InspectionResult inspection) {
           ++myWarnings;
-          myInspectionReporter.reportInspection(inspection);
+          reporter.reportInspection(inspection);
         }
 
         public void reportInspectionType(@NotNull final InspectionTypeResult inspectionType) {
-          myInspectionReporter.reportInspectionType(inspectionType);
+          reporter.reportInspectionType(inspectionType);
         }
 
         @Override
         public void error(@NotNull final String message) {
-          myInspectionReporter.error(message);
+          reporter.error(message);
         }
       }).parse(file);
     } catch (IOException e) {
       throw new ParsingException(e);
     }
-    return true;
+    // the report is known to be complete, the actions are deferred only to commit them at once
+    actions.complete();
+    return actions.commit();
   }
 
   public ParsingResult getParsingResult() {
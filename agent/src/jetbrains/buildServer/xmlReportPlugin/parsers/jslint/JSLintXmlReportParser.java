@@ -41,13 +41,13 @@ class JSLintXmlReportParser extends BaseXmlXppAbstractParser {
 
   @Override
   protected List<XmlHandler> getRootHandlers() {
-    return new ORHandler(elementsPath(new Handler() {
+    return new ORHandler(checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-        return reader.visitChildren(elementsPath(new Handler() {
+        return reader.visitChildren(checkedElementsPath(new Handler() {
           public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
             final String file = reader.getAttribute("name");
 
-            return reader.visitChildren(elementsPath(new Handler() {
+            return reader.visitChildren(checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 myCallback.reportInspectionType(INSPECTION_TYPE);
 
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers.mstest;
+
+import java.io.*;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds back the test results events until the test names are known.
+ *
+ * In .trx files written by VSTest the results usually precede the test definitions, such results are spooled
+ * to a temporary file and replayed by {@link #startStreaming()}. After that the events are passed through as is.
+ */
+class DeferredTestResults implements TestResultsTableParser.Callback {
+  private static final byte TEST_FOUND = 0;
+  private static final byte TEST_OUTPUT = 1;
+  private static final byte TEST_ERROR = 2;
+  private static final byte TEST_EXCEPTION = 3;
+  private static final byte TEST_FINISHED = 4;
+  private static final byte TEST_IGNORED = 5;
+  private static final byte TEST_WARNING = 6;
+  private static final byte RUN_WARNING = 7;
+  private static final byte ERROR = 8;
+
+  @NotNull
+  private final TestResultsTableParser.Callback myTarget;
+
+  private boolean myStreaming;
+
+  @Nullable
+  private File mySpoolFile;
+  @Nullable
+  private DataOutputStream mySpool;
+  @Nullable
+  private IOException myError;
+
+  public DeferredTestResults(@NotNull TestResultsTableParser.Callback target) {
+    myTarget = target;
+  }
+
+  public boolean isStreaming() {
+    return myStreaming;
+  }
+
+  /**
+   * Replays the spooled events and passes all the next ones to the target directly
+   */
+  public void startStreaming() {
+    if (myStreaming) return;
+    myStreaming = true;
+
+    if (mySpool == null) return;
+    DataInputStream in = null;
+    try {
+      mySpool.close();
+      mySpool = null;
+      //noinspection ConstantConditions
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(mySpoolFile)));
+      int event;
+      while ((event = in.read()) != -1) {
+        replay((byte)event, in);
+      }
+    } catch (IOException e) {
+      setError(e);
+    } finally {
+      FileUtil.close(in);
+    }
+  }
+
+  /**
+   * @throws IOException if spooling or replaying the events failed
+   */
+  public void checkError() throws IOException {
+    if (myError != null) throw myError;
+  }
+
+  public void close() {
+    FileUtil.close(mySpool);
+    mySpool = null;
+    if (mySpoolFile != null) {
+      FileUtil.delete(mySpoolFile);
+      mySpoolFile = null;
+    }
+  }
+
+  public void testFound(@NotNull final TestName testId) {
+    if (myStreaming) {
+      myTarget.testFound(testId);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_FOUND);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void testOutput(@NotNull final TestName testId, @NotNull final String text) {
+    if (myStreaming) {
+      myTarget.testOutput(testId, text);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_OUTPUT);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+      writeString(out, text);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void testError(@NotNull final TestName testId, @NotNull final String text) {
+    if (myStreaming) {
+      myTarget.testError(testId, text);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_ERROR);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+      writeString(out, text);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void testException(@NotNull final TestName testId, @Nullable final String message, @Nullable final String error) {
+    if (myStreaming) {
+      myTarget.testException(testId, message, error);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_EXCEPTION);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+      writeString(out, message);
+      writeString(out, error);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void testFinished(@NotNull final TestName testId, @NotNull final TestOutcome outcome, final long duration) {
+    if (myStreaming) {
+      myTarget.testFinished(testId, outcome, duration);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_FINISHED);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+      out.writeInt(outcome.ordinal());
+      out.writeLong(duration);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void testIgnored(@NotNull final TestName testId, @Nullable final String message, @Nullable final String error) {
+    if (myStreaming) {
+      myTarget.testIgnored(testId, message, error);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_IGNORED);
+    if (out == null) return;
+    try {
+      writeTestName(out, testId);
+      writeString(out, message);
+      writeString(out, error);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void warning(@Nullable final TestName testId, @NotNull final String message) {
+    if (myStreaming) {
+      myTarget.warning(testId, message);
+      return;
+    }
+    final DataOutputStream out = startEvent(TEST_WARNING);
+    if (out == null) return;
+    try {
+      out.writeBoolean(testId != null);
+      if (testId != null) writeTestName(out, testId);
+      writeString(out, message);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void warning(@Nullable final String message, @Nullable final String exception) {
+    if (myStreaming) {
+      myTarget.warning(message, exception);
+      return;
+    }
+    final DataOutputStream out = startEvent(RUN_WARNING);
+    if (out == null) return;
+    try {
+      writeString(out, message);
+      writeString(out, exception);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  public void error(@NotNull final String message) {
+    if (myStreaming) {
+      myTarget.error(message);
+      return;
+    }
+    final DataOutputStream out = startEvent(ERROR);
+    if (out == null) return;
+    try {
+      writeString(out, message);
+    } catch (IOException e) {
+      setError(e);
+    }
+  }
+
+  @SuppressWarnings("ConstantConditions")
+  private void replay(byte event, @NotNull DataInputStream in) throws IOException {
+    switch (event) {
+      case TEST_FOUND:
+        myTarget.testFound(readTestName(in));
+        break;
+      case TEST_OUTPUT:
+        myTarget.testOutput(readTestName(in), readString(in));
+        break;
+      case TEST_ERROR:
+        myTarget.testError(readTestName(in), readString(in));
+        break;
+      case TEST_EXCEPTION:
+        myTarget.testException(readTestName(in), readString(in), readString(in));
+        break;
+      case TEST_FINISHED:
+        myTarget.testFinished(readTestName(in), TestOutcome.values()[in.readInt()], in.readLong());
+        break;
+      case TEST_IGNORED:
+        myTarget.testIgnored(readTestName(in), readString(in), readString(in));
+        break;
+      case TEST_WARNING:
+        myTarget.warning(in.readBoolean() ? readTestName(in) : null, readString(in));
+        break;
+      case RUN_WARNING:
+        myTarget.warning(readString(in), readString(in));
+        break;
+      case ERROR:
+        myTarget.error(readString(in));
+        break;
+      default:
+        throw new IOException("Unexpected event " + event + " in " + mySpoolFile);
+    }
+  }
+
+  @Nullable
+  private DataOutputStream startEvent(byte event) {
+    if (myError != null) return null;
+    try {
+      if (mySpool == null) {
+        mySpoolFile = FileUtil.createTempFile("trx", ".spool");
+        mySpool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mySpoolFile)));
+      }
+      mySpool.writeByte(event);
+      return mySpool;
+    } catch (IOException e) {
+      setError(e);
+      return null;
+    }
+  }
+
+  private void setError(@NotNull IOException e) {
+    if (myError == null) myError = e;
+  }
+
+  private static void writeTestName(@NotNull DataOutputStream out, @NotNull TestName testName) throws IOException {
+    writeString(out, testName.getTestId());
+    writeString(out, testName.getDataRowInfo());
+  }
+
+  @NotNull
+  private static TestName readTestName(@NotNull DataInputStream in) throws IOException {
+    //noinspection ConstantConditions
+    return new TestName(readString(in), readString(in));
+  }
+
+  private static void writeString(@NotNull DataOutputStream out, @Nullable String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = str.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @Nullable
+  private static String readString(@NotNull DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) return null;
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+}
@@ -37,7 +37,7 @@ class TRXParser implements Parser {
   private static final Logger LOG = Logger.getLogger(TRXParser.class);
 
   private final TestNamesTableParser myNamesParser;
-  private final TestResultsTableParser myResultsParser;
+  private final TestResultsTableParser.Callback myResultsCallback;
 
   private final Map<String,String> myTestIdToName = new HashMap<String,String>();
 
@@ -58,7 +58,7 @@ class TRXParser implements Parser {
       }
     });
 
-    myResultsParser = new TestResultsTableParser(new TestResultsTableParser.Callback() {
+    myResultsCallback = new TestResultsTableParser.Callback() {
       private TestName myTestName;
 
       private String testName() {
@@ -136,7 +136,7 @@ class TRXParser implements Parser {
       public void error(@NotNull final String message) {
         myLogger.error(message);
       }
-    });
+    };
   }
 
   public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
@@ -147,18 +147,28 @@ class TRXParser implements Parser {
     }
 
     myTestIdToName.clear();
+    final DeferredTestResults results = new DeferredTestResults(myResultsCallback);
     try {
-      myNamesParser.parse(file);
+      // test names are read in the same pass, results met before the test definitions are reported after them
+      new TestResultsTableParser(results, myNamesParser.getTestDefinitionsHandler(new Runnable() {
+        public void run() {
+          if (results.isStreaming()) return;
+          logTestDefinitionsFound();
+          results.startStreaming();
+        }
+      })).parse(file);
 
-      if (myTestIdToName.size() == 0) {
-        myLogger.error("There were no test definitions found. Wrong or broken .trx file?");
-      } else {
-        myLogger.info("Found " + myTestIdToName.size() + " test definitions.");
+      if (!results.isStreaming()) {
+        // no test definitions section, e.g. VS 2005 format, the names are read in a separate pass
+        myNamesParser.parse(file);
+        logTestDefinitionsFound();
+        results.startStreaming();
       }
-
-      myResultsParser.parse(file);
+      results.checkError();
     } catch (IOException e) {
       throw new ParsingException(e);
+    } finally {
+      results.close();
     }
 
     if (myReportedTestsCount == 0) {
@@ -172,6 +182,14 @@ class TRXParser implements Parser {
     return true;
   }
 
+  private void logTestDefinitionsFound() {
+    if (myTestIdToName.size() == 0) {
+      myLogger.error("There were no test definitions found. Wrong or broken .trx file?");
+    } else {
+      myLogger.info("Found " + myTestIdToName.size() + " test definitions.");
+    }
+  }
+
   public ParsingResult getParsingResult() {
     return new TestParsingResult(1, myReportedTestsCount);
   }
@@ -41,6 +41,11 @@ class TestName {
     return myTestId;
   }
 
+  @Nullable
+  public String getDataRowInfo() {
+    return myDataRowInfo;
+  }
+
   public String presentName(@Nullable final String testName) {
     final String name = testName == null ? myTestId : testName;
     if (myDataRowInfo == null) {
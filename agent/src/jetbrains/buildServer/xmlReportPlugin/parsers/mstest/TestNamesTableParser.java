@@ -85,16 +85,40 @@ class TestNamesTableParser extends XmlXppAbstractParser {
     return elementsPath(
       new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-          return reader.visitChildren(
-              getUnitTest2008Handler(),
-              getLoadTest2008Handler(),
-              getUnknownTest2008Handler(".*Test")
-            );
+          return reader.visitChildren(getTestDefinitionHandlers());
         }
       }
       , "TestRun", "TestDefinitions");
   }
 
+  /**
+   * Handler of the "TestDefinitions" element to be used as a "TestRun" child handler by a parser reading the whole report
+   * @param finished is run when the test definitions end
+   */
+  @NotNull
+  XmlHandler getTestDefinitionsHandler(@NotNull final Runnable finished) {
+    return elementsPath(
+      new Handler() {
+        public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+          return reader.visitChildren(getTestDefinitionHandlers()).than(new XmlAction() {
+            public void apply() {
+              finished.run();
+            }
+          });
+        }
+      }
+      , "TestDefinitions");
+  }
+
+  @NotNull
+  private XmlHandler[] getTestDefinitionHandlers() {
+    return new XmlHandler[]{
+      getUnitTest2008Handler(),
+      getLoadTest2008Handler(),
+      getUnknownTest2008Handler(".*Test")
+    };
+  }
+
   private XmlHandler getUnitTest2008Handler() {
     return elementsPath(
       new Handler() {
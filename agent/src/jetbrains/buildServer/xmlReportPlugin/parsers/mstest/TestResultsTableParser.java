@@ -16,6 +16,7 @@
 
 package jetbrains.buildServer.xmlReportPlugin.parsers.mstest;
 
+import java.util.ArrayList;
 import java.util.List;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.xmlReportPlugin.parsers.BaseXmlXppAbstractParser;
@@ -29,9 +30,20 @@ import org.jetbrains.annotations.Nullable;
 class TestResultsTableParser extends BaseXmlXppAbstractParser {
   private final Callback myCallback;
   private final DurationParser myDurationParser = new DurationParser();
+  @Nullable
+  private final XmlHandler myTestDefinitionsHandler;
 
   public TestResultsTableParser(final Callback callback) {
+    this(callback, null);
+  }
+
+  /**
+   * @param testDefinitionsHandler handler of the "TestRun" children other than results, e.g. test definitions,
+   *                               allows reading test names in the same pass
+   */
+  public TestResultsTableParser(final Callback callback, @Nullable final XmlHandler testDefinitionsHandler) {
     myCallback = callback;
+    myTestDefinitionsHandler = testDefinitionsHandler;
   }
 
   @Override
@@ -45,7 +57,7 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
   }
 
   protected XmlHandler getRootHandler8() {
-    return elementsPath(new Handler() {
+    return checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull XmlElementInfo reader) {
         final TestResult result = new TestResult(TestResult.VS_Version.VS_8);
 
@@ -60,7 +72,7 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
               result.setDuration(text);
             }
           }, "duration"),
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             public XmlReturn processElement(@NotNull XmlElementInfo reader) {
               return reader.visitChildren(
                 elementsPath(new TextHandler() {
@@ -183,11 +195,12 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
   }
 
   protected XmlHandler getRootHandler9() {
-    return elementsPath(
+    return checkedElementsPath(
       new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-          return reader.visitChildren(
-              elementsPath(new Handler() {
+          final List<XmlHandler> handlers = new ArrayList<XmlHandler>();
+          handlers.add(
+              checkedElementsPath(new Handler() {
                 public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                   final String outcome = reader.getAttribute("outcome");
                   final String[] textAndException = {null, null};
@@ -215,13 +228,17 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
                   }
                   return reader.noDeep();
                 }
-              }, "ResultSummary", "RunInfos", "RunInfo"),
-              elementsPath(new Handler() {
+              }, "ResultSummary", "RunInfos", "RunInfo"));
+          handlers.add(
+              checkedElementsPath(new Handler() {
                 public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                   return reader.visitChildren(getUnknown2008RecursiveResult(".*Result"));
                 }
-              }, "Results")
-            );
+              }, "Results"));
+          if (myTestDefinitionsHandler != null) {
+            handlers.add(myTestDefinitionsHandler);
+          }
+          return reader.visitChildren(handlers.toArray(new XmlHandler[handlers.size()]));
         }
       }, "TestRun");
   }
@@ -246,13 +263,13 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
         result.setEndTime(reader.getAttribute("endTime"));
 
         return reader.visitChildren(
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
               result.setHasInnerResults(true);
               return reader.visitChildren(getUnknown2008RecursiveResult(pattern));
             }
           }, "InnerResults"),
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             public XmlReturn processElement(@NotNull XmlElementInfo reader) {
               return reader.visitChildren(
                 elementsPath(new TextHandler() {
@@ -265,7 +282,7 @@ class TestResultsTableParser extends BaseXmlXppAbstractParser {
                     result.setStdError(text);
                   }
                 }, "StdErr"),
-                elementsPath(new Handler() {
+                checkedElementsPath(new Handler() {
                   public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                     return reader.visitChildren(
                       elementsPath(new TextHandler() {
@@ -19,13 +19,19 @@ package jetbrains.buildServer.xmlReportPlugin.parsers.nUnit;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.xmlReportPlugin.Parser;
 import jetbrains.buildServer.xmlReportPlugin.ParsingException;
 import jetbrains.buildServer.xmlReportPlugin.ParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
+import jetbrains.buildServer.xmlReportPlugin.utils.ReportCheckpoint;
+import jetbrains.buildServer.xmlReportPlugin.utils.ResumableReportInput;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -33,6 +39,9 @@ import org.jetbrains.annotations.Nullable;
 class NUnitReportParser implements Parser {
   public static final org.apache.log4j.Logger LOG = org.apache.log4j.Logger.getLogger(NUnitReportParser.class);
 
+  private static final Set<String> CONTAINERS = new HashSet<String>(Arrays.asList("test-results", "test-suite", "results", "test-run"));
+  private static final String TEST_ELEMENT = "test-case";
+
   @NotNull
   private final TestReporter myTestReporter;
 
@@ -41,6 +50,12 @@ class NUnitReportParser implements Parser {
 
   private int myLoggedSuites;
 
+  private int myPrevTests;
+  private int myPrevSuites;
+  @Nullable
+  private ReportCheckpoint myCheckpoint;
+  private int myOpenSuites;
+
   @Nullable
   private ParsingException myParsingException;
 
@@ -55,7 +70,15 @@ class NUnitReportParser implements Parser {
     if (prevResult != null) {
       myTestsToSkip = ((TestParsingResult) prevResult).getTests();
     }
+    ResumableReportInput input = null;
     try {
+      input = ResumableReportInput.open(file, prevResult == null ? null : ((TestParsingResult) prevResult).getCheckpoint(), CONTAINERS, TEST_ELEMENT);
+      if (input.isResumed()) {
+        final TestParsingResult prev = (TestParsingResult) prevResult;
+        myTestsToSkip = 0;
+        myPrevTests = prev.getTests();
+        myPrevSuites = prev.getSuites() - prev.getOpenSuites();
+      }
       new NUnitXmlReportParser(new NUnitXmlReportParser.Callback() {
         public void suiteFound(@Nullable final String suiteName) {
           if (suiteName == null) {
@@ -130,11 +153,16 @@ class NUnitReportParser implements Parser {
         public void message(@NotNull final String msg) {
           myTestReporter.info(file + ": " + msg);
         }
-      }).parse(file);
+      }).parse(input.createReader());
       return true;
     } catch (IOException e) {
       myParsingException = new ParsingException(e);
 
+      if (input != null && input.isEndOfFileReached() && input.getCompletedUnits() == myLoggedTests) {
+        myCheckpoint = input.getLastCheckpoint();
+        myOpenSuites = mySuites.size();
+      }
+
       while (!mySuites.isEmpty()) {
         myTestReporter.closeTestSuite();
         mySuites.pop();
@@ -142,13 +170,16 @@ class NUnitReportParser implements Parser {
 
       LOG.debug("Couldn't completely parse " + file
                 + " report, exception occurred: " + e + ", " + myLoggedTests + " tests logged");
+    } finally {
+      FileUtil.close(input);
     }
 
     return false;
   }
 
   public ParsingResult getParsingResult() {
-    return new TestParsingResult(myLoggedSuites, (myLoggedTests > myTestsToSkip) ? myLoggedTests : myTestsToSkip, myParsingException);
+    final int tests = (myLoggedTests > myTestsToSkip) ? myLoggedTests : myTestsToSkip;
+    return new TestParsingResult(myPrevSuites + myLoggedSuites, myPrevTests + tests, myParsingException, myCheckpoint, myOpenSuites);
   }
 
   private boolean testSkipped() {
@@ -68,7 +68,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
   private final class Version2Handler {
     @NotNull
     public XmlHandler getRootHandler() {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           return reader.visitChildren(suiteHandler(true));
         }
@@ -77,7 +77,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
 
     @NotNull
     private XmlHandler suiteHandler(final boolean addLogging) {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           final String name = getSuiteName(reader.getAttribute("name"));
           final boolean ignored = ignored(reader);
@@ -86,7 +86,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
           if (addLogging) myCallback.suiteFound(name);
 
           return reader.visitChildren(
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 return reader.visitChildren(suiteHandler(false), testHandler());
               }
@@ -103,7 +103,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
 
     @NotNull
     private XmlHandler testHandler() {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           final TestData testData = new TestData();
 
@@ -215,7 +215,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
   private final class Version3Handler {
     @NotNull
     public XmlHandler getRootHandler() {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           return reader.visitChildren(suiteHandler());
         }
@@ -224,7 +224,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
 
     @NotNull
     private XmlHandler suiteHandler() {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           final String name = StringUtil.emptyIfNull(reader.getAttribute("name"));
           final String fullName = reader.getAttribute("fullname");
@@ -249,7 +249,7 @@ class NUnitXmlReportParser extends BaseXmlXppAbstractParser {
 
     @NotNull
     private XmlHandler testHandler() {
-      return elementsPath(new Handler() {
+      return checkedElementsPath(new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           final TestData testData = new TestData();
 
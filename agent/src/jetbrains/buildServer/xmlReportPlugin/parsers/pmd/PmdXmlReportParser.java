@@ -38,13 +38,13 @@ class PmdXmlReportParser extends BaseXmlXppAbstractParser {
 
   @Override
   protected List<XmlHandler> getRootHandlers() {
-    return new ORHandler(elementsPath(new Handler() {
+    return new ORHandler(checkedElementsPath(new Handler() {
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
-        return reader.visitChildren(elementsPath(new Handler() {
+        return reader.visitChildren(checkedElementsPath(new Handler() {
           public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
             final String file = reader.getAttribute("name");
 
-            return reader.visitChildren(elementsPath(new Handler() {
+            return reader.visitChildren(checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                 final String rule = reader.getAttribute("rule");
                 final String ruleset = reader.getAttribute("ruleset");
@@ -63,7 +63,11 @@ class PmdXmlReportParser extends BaseXmlXppAbstractParser {
               }
             }, "violation"));
           }
-        }, "file"));
+        }, "file")).than(new XmlAction() {
+          public void apply() {
+            myCallback.reportFinished();
+          }
+        });
       }
     }, "pmd")) {
       @Override
@@ -85,5 +89,6 @@ class PmdXmlReportParser extends BaseXmlXppAbstractParser {
     void reportInspection(@NotNull InspectionResult inspection);
     void reportInspectionType(@NotNull InspectionTypeResult inspectionType);
     void error(@NotNull String message);
+    void reportFinished();
   }
 }
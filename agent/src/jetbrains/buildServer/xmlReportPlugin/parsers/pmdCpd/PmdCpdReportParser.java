@@ -23,6 +23,7 @@ import jetbrains.buildServer.xmlReportPlugin.ParsingException;
 import jetbrains.buildServer.xmlReportPlugin.ParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
 import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationResult;
+import jetbrains.buildServer.xmlReportPlugin.parsers.DeferredActions;
 import jetbrains.buildServer.xmlReportPlugin.utils.ParserUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -43,33 +44,37 @@ class PmdCpdReportParser implements Parser {
   }
 
   public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
-    if (!ParserUtils.isReportComplete(file, "pmd-cpd")) {
+    if (ParserUtils.hasDocumentTypeDeclaration(file) && !ParserUtils.isReportComplete(file, "pmd-cpd")) {
       return false;
     }
 
+    final DeferredActions actions = new DeferredActions();
+    final DuplicationReporter reporter = actions.defer(myDuplicationReporter);
     try {
       new PmdCpdXmlReportParser(new PmdCpdXmlReportParser.Callback() {
         public void startDuplicates() {
-          myDuplicationReporter.startDuplicates();
+          reporter.startDuplicates();
         }
 
         public void finishDuplicates() {
-          myDuplicationReporter.finishDuplicates();
+          reporter.finishDuplicates();
+          actions.complete();
         }
 
-        public void reportDuplicate(@NotNull DuplicationResult duplicate) {
-          myDuplicationReporter.reportDuplicate(duplicate);
+        public void reportDuplicate(@NotNull final DuplicationResult duplicate) {
+          reporter.reportDuplicate(duplicate);
         }
 
         @Override
         public void error(@NotNull final String message) {
-          myDuplicationReporter.error(message);
+          reporter.error(message);
         }
       }, myCheckoutDirectory.getAbsolutePath()).parse(file);
     } catch (IOException e) {
-      throw new ParsingException(e);
+      if (!ParserUtils.isTruncated(file, "pmd-cpd")) throw new ParsingException(e);
+      return false; // incomplete report, will be parsed again later
     }
-    return true;
+    return actions.commit();
   }
 
   public ParsingResult getParsingResult() {
@@ -41,13 +41,13 @@ class PmdCpdXmlReportParser extends BaseXmlXppAbstractParser {
 
   @Override
   protected List<XmlHandler> getRootHandlers() {
-    return new ORHandler(elementsPath(
+    return new ORHandler(checkedElementsPath(
       new Handler() {
         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
           myCallback.startDuplicates();
 
           return reader.visitChildren(
-            elementsPath(new Handler() {
+            checkedElementsPath(new Handler() {
               public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                 final DuplicationResult duplicationResult
                   = new DuplicationResult(getInt(reader.getAttribute("lines")), getInt(reader.getAttribute("tokens")));
@@ -59,7 +59,7 @@ class PmdCpdXmlReportParser extends BaseXmlXppAbstractParser {
                     }
                   }, "codefragment"),
 
-                  elementsPath(new Handler() {
+                  checkedElementsPath(new Handler() {
                     public XmlReturn processElement(@NotNull XmlElementInfo reader) {
                       duplicationResult.addFragment(new DuplicatingFragment(getRelativePath(reader.getAttribute("path")), getInt(reader.getAttribute("line"))));
                       return reader.noDeep();
@@ -19,7 +19,11 @@ package jetbrains.buildServer.xmlReportPlugin.parsers.testng;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.xmlReportPlugin.Parser;
 import jetbrains.buildServer.xmlReportPlugin.ParsingException;
@@ -28,12 +32,17 @@ import jetbrains.buildServer.xmlReportPlugin.parsers.TestMessages;
 import jetbrains.buildServer.xmlReportPlugin.tests.DurationParser;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
+import jetbrains.buildServer.xmlReportPlugin.utils.ReportCheckpoint;
+import jetbrains.buildServer.xmlReportPlugin.utils.ResumableReportInput;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class TestNGReportParser implements Parser {
   public static final org.apache.log4j.Logger LOG = org.apache.log4j.Logger.getLogger(TestNGReportParser.class);
 
+  private static final Set<String> CONTAINERS = new HashSet<String>(Arrays.asList("testng-results", "suite", "test", "class"));
+  private static final String TEST_ELEMENT = "test-method";
+
   @NotNull
   private final TestReporter myTestReporter;
   @NotNull
@@ -44,6 +53,11 @@ public class TestNGReportParser implements Parser {
   private int myTestsToSkip;
   private int myLoggedTests;
   private int myLoggedSuites;
+  private int myPrevTests;
+  private int myPrevSuites;
+  @Nullable
+  private ReportCheckpoint myCheckpoint;
+  private int myOpenSuites;
   @Nullable
   private ParsingException myParsingException;
 
@@ -60,7 +74,15 @@ public class TestNGReportParser implements Parser {
       myTestsToSkip = ((TestParsingResult)prevResult).getTests();
     }
 
+    ResumableReportInput input = null;
     try {
+      input = ResumableReportInput.open(file, prevResult == null ? null : ((TestParsingResult)prevResult).getCheckpoint(), CONTAINERS, TEST_ELEMENT);
+      if (input.isResumed()) {
+        final TestParsingResult prev = (TestParsingResult)prevResult;
+        myTestsToSkip = 0;
+        myPrevTests = prev.getTests();
+        myPrevSuites = prev.getSuites() - prev.getOpenSuites();
+      }
       new TestNGXmlReportParser(new TestNGXmlReportParser.Callback() {
 
         @Override
@@ -141,17 +163,24 @@ public class TestNGReportParser implements Parser {
         public void unexpectedFormat(@NotNull final String msg) {
           myTestReporter.error(TestMessages.getFileExpectedFormatMessage(file, msg, "Ant TestNG Task"));
         }
-      }, myDurationParser).parse(file);
+      }, myDurationParser).parse(input.createReader());
       return true;
     } catch (IOException e) {
       myParsingException = new ParsingException(e);
 
+      if (input != null && input.isEndOfFileReached() && input.getCompletedUnits() == myLoggedTests) {
+        myCheckpoint = input.getLastCheckpoint();
+        myOpenSuites = mySuites.size();
+      }
+
       while (!mySuites.isEmpty()) {
         myTestReporter.closeTestSuite();
         mySuites.pop();
       }
 
       LOG.debug(TestMessages.getCouldNotCompletelyParseMessage(file, e, myLoggedTests));
+    } finally {
+      FileUtil.close(input);
     }
     return false;
   }
@@ -159,7 +188,8 @@ public class TestNGReportParser implements Parser {
   @Nullable
   @Override
   public ParsingResult getParsingResult() {
-    return new TestParsingResult(myLoggedSuites, (myLoggedTests > myTestsToSkip) ? myLoggedTests : myTestsToSkip, myParsingException);
+    final int tests = (myLoggedTests > myTestsToSkip) ? myLoggedTests : myTestsToSkip;
+    return new TestParsingResult(myPrevSuites + myLoggedSuites, myPrevTests + tests, myParsingException, myCheckpoint, myOpenSuites);
   }
 
   private boolean testSkipped() {
@@ -41,7 +41,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
   protected List<XmlHandler> getRootHandlers() {
     final Handler handler = getSuiteHandler();
     return new ORHandler(
-      elementsPath(handler, "testng-results")
+      checkedElementsPath(handler, "testng-results")
     ) {
       @Override
       protected void finished(final boolean matched) {
@@ -56,7 +56,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
       @Override
       public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
         return reader.visitChildren(
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             @Override
             public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
               final List<String> message = new ArrayList<String>();
@@ -75,7 +75,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
               });
             }
           }, "reporter-output"),
-          elementsPath(new Handler() {
+          checkedElementsPath(new Handler() {
             @Override
             public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
               final Suite suite = new Suite(reader.getAttribute("name"), SuiteSource.SUITE);
@@ -83,7 +83,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                 myCallback.suiteFound(suite.getName(SuiteSource.SUITE));
               }
               return reader.visitChildren(
-                elementsPath(new Handler() {
+                checkedElementsPath(new Handler() {
                   @Override
                   public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                     suite.set(reader.getAttribute("name"), SuiteSource.TEST);
@@ -91,7 +91,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                       myCallback.suiteFound(suite.getName(SuiteSource.TEST));
                     }
                     return reader.visitChildren(
-                      elementsPath(new Handler() {
+                      checkedElementsPath(new Handler() {
                         @Override
                         public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                           final String className = reader.getAttribute("name");
@@ -101,7 +101,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                           }
 
                           return reader.visitChildren(
-                            elementsPath(new Handler() {
+                            checkedElementsPath(new Handler() {
                               @Override
                               public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                                 final TestData testData = new TestData();
@@ -110,11 +110,11 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                                 testData.setDuration(myDurationParser.parseTestDuration(reader.getAttribute("duration-ms")));
                                 testData.setStatus(reader.getAttribute("status"));
                                 return reader.visitChildren(
-                                  elementsPath(new Handler() {
+                                  checkedElementsPath(new Handler() {
                                     @Override
                                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                                       return reader.visitChildren(
-                                        elementsPath(new Handler() {
+                                        checkedElementsPath(new Handler() {
                                           @Override
                                           public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                                             final String index = reader.getAttribute("index");
@@ -129,7 +129,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                                         }, "param"));
                                     }
                                   }, "params"),
-                                  elementsPath(new Handler() {
+                                  checkedElementsPath(new Handler() {
                                     @Override
                                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                                       return reader.visitChildren(
@@ -142,7 +142,7 @@ public class TestNGXmlReportParser extends BaseXmlXppAbstractParser {
                                       );
                                     }
                                   }, "reporter-output"),
-                                  elementsPath(new Handler() {
+                                  checkedElementsPath(new Handler() {
                                     @Override
                                     public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
                                       testData.setFailureType(reader.getAttribute("class"));
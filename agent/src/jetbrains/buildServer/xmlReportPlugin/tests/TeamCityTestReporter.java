@@ -33,6 +33,11 @@ public class TeamCityTestReporter extends BaseMessageLogger implements TestRepor
   private final Deque<String> myTestSuites = new ArrayDeque<String>();
   @NotNull
   private final Deque<String> myTests = new ArrayDeque<String>();
+  /**
+   * Number of the outer suites and tests opened in the build log, the ones opened after the parsing is abandoned are not
+   */
+  private int myLoggedSuites;
+  private int myLoggedTests;
 
   public TeamCityTestReporter(@NotNull final BuildProgressLogger logger, @NotNull final String buildProblemType, @NotNull final String baseFolder) {
     super(logger, buildProblemType, baseFolder);
@@ -40,37 +45,54 @@ public class TeamCityTestReporter extends BaseMessageLogger implements TestRepor
 
   public void openTestSuite(@NotNull final String name) {
     myTestSuites.push(name);
+    if (isDropped()) return;
+    ++myLoggedSuites;
     myLogger.logMessage(DefaultMessagesInfo.createTestSuiteStart(name));
   }
 
   public void openTest(@NotNull final String name) {
     myTests.push(name);
+    if (isDropped()) return;
+    ++myLoggedTests;
     myLogger.logMessage(DefaultMessagesInfo.createTestBlockStart(name, false, 0L));
   }
 
   public void testStdOutput(@NotNull final String text) {
+    if (isDropped()) return;
     myLogger.logMessage(DefaultMessagesInfo.createTestStdout(myTests.peek(), text));
   }
 
   public void testErrOutput(@NotNull final String text) {
+    if (isDropped()) return;
     myLogger.logMessage(DefaultMessagesInfo.createTestStderr(myTests.peek(), text));
   }
 
   public void testFail(@Nullable String error, @Nullable final String stacktrace) {
+    if (isDropped()) return;
     if (error == null) error = "";
     myLogger.logTestFailed(myTests.peek(), error, stacktrace);
   }
 
   public void testIgnored(@NotNull final String message) {
+    if (isDropped()) return;
     myLogger.logMessage(DefaultMessagesInfo.createTestIgnoreMessage(myTests.peek(), message));
   }
 
+  /**
+   * The tests and suites opened in the build log are closed even if the parsing is abandoned meanwhile
+   */
   public void closeTest(final long duration) {
-    myLogger.logMessage(DefaultMessagesInfo.createTestBlockEnd(myTests.pop(), (int) duration, null));
+    final String name = myTests.pop();
+    if (myTests.size() >= myLoggedTests) return;
+    --myLoggedTests;
+    myLogger.logMessage(DefaultMessagesInfo.createTestBlockEnd(name, (int) duration, null));
   }
 
   public void closeTestSuite() {
-    myLogger.logMessage(DefaultMessagesInfo.createTestSuiteEnd(myTestSuites.pop()));
+    final String name = myTestSuites.pop();
+    if (myTestSuites.size() >= myLoggedSuites) return;
+    --myLoggedSuites;
+    myLogger.logMessage(DefaultMessagesInfo.createTestSuiteEnd(name));
   }
 }
 
@@ -22,6 +22,7 @@ import jetbrains.buildServer.xmlReportPlugin.ParseParameters;
 import jetbrains.buildServer.xmlReportPlugin.ParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.ProblemParsingResult;
 import jetbrains.buildServer.xmlReportPlugin.utils.LoggingUtils;
+import jetbrains.buildServer.xmlReportPlugin.utils.ReportCheckpoint;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -33,15 +34,24 @@ import org.jetbrains.annotations.Nullable;
 public class TestParsingResult extends ProblemParsingResult {
   private int mySuites;
   private int myTests;
+  @Nullable
+  private final ReportCheckpoint myCheckpoint;
+  private final int myOpenSuites;
 
   public TestParsingResult(int suites, int tests) {
     this(suites, tests, null);
   }
 
   public TestParsingResult(int suites, int tests, @Nullable Throwable problem) {
+    this(suites, tests, problem, null, 0);
+  }
+
+  public TestParsingResult(int suites, int tests, @Nullable Throwable problem, @Nullable ReportCheckpoint checkpoint, int openSuites) {
     super(problem);
     mySuites = suites;
     myTests = tests;
+    myCheckpoint = checkpoint;
+    myOpenSuites = openSuites;
   }
 
   public int getSuites() {
@@ -52,6 +62,21 @@ public class TestParsingResult extends ProblemParsingResult {
     return myTests;
   }
 
+  /**
+   * @return position the partially written report parsing may be resumed from
+   */
+  @Nullable
+  public ReportCheckpoint getCheckpoint() {
+    return myCheckpoint;
+  }
+
+  /**
+   * @return number of suites which were open at the {@link #getCheckpoint() checkpoint}
+   */
+  public int getOpenSuites() {
+    return myOpenSuites;
+  }
+
   public void accumulate(@NotNull ParsingResult parsingResult) {
     final TestParsingResult testParsingResult = (TestParsingResult) parsingResult;
     mySuites += testParsingResult.getSuites();
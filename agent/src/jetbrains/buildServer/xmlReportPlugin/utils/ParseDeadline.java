@@ -0,0 +1,148 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.io.InterruptedIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Deadline of the report parsing running in the current thread.
+ *
+ * Parsing is cancelled cooperatively: the report input {@link #check() checks} the deadline on each read
+ * and fails with an {@link InterruptedIOException}, so the parser stops the same way as on a truncated report,
+ * and the xml handlers {@link #checkElement() check} it on each element, so a slowly processed report stops on time too.
+ * Once the parsing is {@link #abandon(String) abandoned} the reporters of the parsing thread drop the calls.
+ */
+public final class ParseDeadline {
+  private static final ThreadLocal<ParseDeadline> CURRENT = new ThreadLocal<ParseDeadline>();
+
+  private final long myTimeout;
+  private final long myDeadline;
+  private final long myReportFoundTime;
+  @Nullable
+  private volatile String myCancelReason;
+  private volatile boolean myAbandoned;
+
+  private ParseDeadline(long timeout, long reportFoundTime) {
+    myTimeout = timeout;
+    myDeadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+    myReportFoundTime = reportFoundTime;
+  }
+
+  /**
+   * Starts the deadline of the parsing in the current thread
+   * @param timeout parsing timeout in milliseconds, not limited if not positive
+   */
+  @NotNull
+  public static ParseDeadline enter(long timeout) {
+    return enter(timeout, 0);
+  }
+
+  /**
+   * Starts the deadline of the parsing in the current thread
+   * @param timeout parsing timeout in milliseconds, not limited if not positive
+   * @param reportFoundTime when the parsed report or its last change was found, 0 if unknown
+   */
+  @NotNull
+  public static ParseDeadline enter(long timeout, long reportFoundTime) {
+    final ParseDeadline deadline = new ParseDeadline(timeout, reportFoundTime);
+    CURRENT.set(deadline);
+    return deadline;
+  }
+
+  /**
+   * Should be called in the thread which has entered the deadline once the parsing is over
+   */
+  public void exit() {
+    if (CURRENT.get() == this) CURRENT.remove();
+  }
+
+  /**
+   * The parsing stops on the next check, may be called from any thread
+   */
+  public void cancel(@NotNull String reason) {
+    if (myCancelReason == null) myCancelReason = reason;
+  }
+
+  /**
+   * The parsing stops on the next check and nothing it reports from now on reaches the build, may be called from any thread
+   */
+  public void abandon(@NotNull String reason) {
+    cancel(reason);
+    myAbandoned = true;
+  }
+
+  /**
+   * @return true if the parsing in the current thread is abandoned, so the reported results should be dropped
+   */
+  public static boolean isAbandoned() {
+    final ParseDeadline deadline = CURRENT.get();
+    return deadline != null && deadline.myAbandoned;
+  }
+
+  /**
+   * @return why the parsing should stop or null if it may go on
+   */
+  @Nullable
+  public String getCancelReason() {
+    final String reason = myCancelReason;
+    if (reason != null) return reason;
+    return System.currentTimeMillis() > myDeadline ? "Parsing took longer than the " + myTimeout + " ms timeout" : null;
+  }
+
+  /**
+   * @return when the report parsed in the current thread or its last change was found, 0 if unknown
+   */
+  public static long getReportFoundTime() {
+    final ParseDeadline deadline = CURRENT.get();
+    return deadline == null ? 0 : deadline.myReportFoundTime;
+  }
+
+  /**
+   * @throws InterruptedIOException if the parsing in the current thread is cancelled, timed out or the thread is interrupted
+   */
+  public static void check() throws InterruptedIOException {
+    final String reason = getCurrentCancelReason();
+    if (reason != null) throw new InterruptedIOException(reason);
+  }
+
+  /**
+   * Same as {@link #check()} for the xml handlers, which can't throw an {@link java.io.IOException}
+   * @throws CancelledException if the parsing in the current thread is cancelled, timed out or the thread is interrupted
+   */
+  public static void checkElement() {
+    final String reason = getCurrentCancelReason();
+    if (reason != null) throw new CancelledException(reason);
+  }
+
+  @Nullable
+  private static String getCurrentCancelReason() {
+    final ParseDeadline deadline = CURRENT.get();
+    if (deadline == null) return null;
+    final String reason = deadline.getCancelReason();
+    if (reason == null && Thread.currentThread().isInterrupted()) return "Parsing thread is interrupted";
+    return reason;
+  }
+
+  public static final class CancelledException extends RuntimeException {
+    private CancelledException(@NotNull String reason) {
+      super(reason);
+    }
+  }
+}
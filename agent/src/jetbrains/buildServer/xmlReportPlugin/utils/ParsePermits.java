@@ -0,0 +1,86 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.util.concurrent.Semaphore;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Bounds of the report parsing on virtual threads, where more reports are parsed at once than there are parsing threads.
+ *
+ * The parsing running in the current thread holds a CPU permit, but while the report file is read the permit is given
+ * away for an I/O permit: the reads of some reports overlap the parsing of the others, at most the parsing threads number
+ * of reports are parsed on the CPU and at most the I/O threads number of report files are read simultaneously.
+ */
+public final class ParsePermits {
+  /**
+   * Number of report files which may be read or probed simultaneously on virtual threads
+   */
+  public static final String IO_THREADS_PROPERTY = "teamcity.xmlReport.ioThreads";
+  public static final int DEFAULT_IO_THREADS = 16;
+
+  private static final ThreadLocal<ParsePermits> CURRENT = new ThreadLocal<ParsePermits>();
+
+  @NotNull
+  private final Semaphore myCpuPermits;
+  @NotNull
+  private final Semaphore myIoPermits;
+
+  private ParsePermits(@NotNull Semaphore cpuPermits, @NotNull Semaphore ioPermits) {
+    myCpuPermits = cpuPermits;
+    myIoPermits = ioPermits;
+  }
+
+  /**
+   * Waits for a CPU permit for the parsing in the current thread
+   */
+  public static void enter(@NotNull Semaphore cpuPermits, @NotNull Semaphore ioPermits) {
+    cpuPermits.acquireUninterruptibly();
+    CURRENT.set(new ParsePermits(cpuPermits, ioPermits));
+  }
+
+  /**
+   * Should be called in the thread which has entered once the parsing is over
+   */
+  public static void exit() {
+    final ParsePermits permits = CURRENT.get();
+    if (permits == null) return;
+    CURRENT.remove();
+    permits.myCpuPermits.release();
+  }
+
+  /**
+   * Gives the CPU permit of the current thread away for an I/O permit, should be followed by {@link #endIo()}
+   */
+  public static void beginIo() {
+    final ParsePermits permits = CURRENT.get();
+    if (permits == null) return;
+    permits.myCpuPermits.release();
+    permits.myIoPermits.acquireUninterruptibly();
+  }
+
+  /**
+   * Gives the I/O permit of the current thread back and waits for a CPU permit
+   */
+  public static void endIo() {
+    final ParsePermits permits = CURRENT.get();
+    if (permits == null) return;
+    permits.myIoPermits.release();
+    permits.myCpuPermits.acquireUninterruptibly();
+  }
+}
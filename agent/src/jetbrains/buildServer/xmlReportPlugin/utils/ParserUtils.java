@@ -17,8 +17,14 @@
 package jetbrains.buildServer.xmlReportPlugin.utils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.util.XmlUtil;
 import org.jetbrains.annotations.Contract;
@@ -40,6 +46,10 @@ public class ParserUtils {
   private static final Pattern SPACES = Pattern.compile("\\s+");
   private static final Pattern HTML_TAGS = Pattern.compile("<[a-z]>|</[a-z]>");
 
+  private static final int PROLOG_CHECK_LENGTH = 8 * 1024;
+  private static final int TAIL_CHECK_SLACK = 64;
+  private static final String[] FAILURE_COUNT_ATTRIBUTES = {"failures", "errors", "failed"};
+
   @NotNull
   public static XMLReader createXmlReader(@NotNull ContentHandler contentHandler,
                                           @NotNull ErrorHandler errorHandler,
@@ -95,6 +105,202 @@ public class ParserUtils {
     }
   }
 
+  /**
+   * Checks whether the report prolog contains a document type declaration. Such reports may declare entities,
+   * so they should be checked with {@link #isReportComplete} which enforces the secure processing limits
+   * before being parsed in a single pass.
+   * Returns true also if the prolog can't be checked, e.g. the root element is not written yet.
+   */
+  public static boolean hasDocumentTypeDeclaration(@NotNull final File report) {
+    final byte[] bytes = new byte[PROLOG_CHECK_LENGTH];
+    final int length = readProlog(report, bytes);
+    return length < 0 || indexOfRootElement(bytes, length) < 0;
+  }
+
+  /**
+   * @return name of the report root element, null if it's not found in the report prolog or the report declares a document type
+   */
+  @Nullable
+  public static String getRootElementName(@NotNull final File report) {
+    final byte[] bytes = new byte[PROLOG_CHECK_LENGTH];
+    final int length = readProlog(report, bytes);
+    if (length < 0) return null;
+
+    final int root = indexOfRootElement(bytes, length);
+    if (root < 0) return null;
+    int end = root + 1;
+    while (end < length && !isNameEnd(bytes[end])) ++end;
+    if (end == length || end == root + 1) return null;
+    try {
+      return new String(bytes, root + 1, end - root - 1, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Cheap check whether the report advertises failed tests, only the root element start tag in the report prolog is checked
+   * for the positive {@code failures}, {@code errors} or {@code failed} attributes written by JUnit and NUnit
+   */
+  public static boolean isFailureAdvertised(@NotNull final File report) {
+    final byte[] bytes = new byte[PROLOG_CHECK_LENGTH];
+    final int length = readProlog(report, bytes);
+    if (length < 0) return false;
+
+    final int root = indexOfRootElement(bytes, length);
+    if (root < 0) return false;
+    int i = root + 1;
+    while (i < length && !isNameEnd(bytes[i])) ++i;
+    while (i < length && bytes[i] != '>') {
+      if (isWhitespace(bytes[i]) || bytes[i] == '/') {
+        ++i;
+        continue;
+      }
+      final int nameStart = i;
+      while (i < length && bytes[i] != '=' && bytes[i] != '>' && !isWhitespace(bytes[i])) ++i;
+      final int nameEnd = i;
+      while (i < length && isWhitespace(bytes[i])) ++i;
+      if (i == length || bytes[i] != '=') continue;
+      ++i;
+      while (i < length && isWhitespace(bytes[i])) ++i;
+      if (i == length || bytes[i] != '"' && bytes[i] != '\'') return false;
+      final byte quote = bytes[i++];
+      final int valueStart = i;
+      while (i < length && bytes[i] != quote) ++i;
+      if (i == length) return false;
+      if (isFailureCount(bytes, nameStart, nameEnd) && isPositive(bytes, valueStart, i)) return true;
+      ++i;
+    }
+    return false;
+  }
+
+  private static boolean isFailureCount(@NotNull byte[] bytes, int start, int end) {
+    for (String name : FAILURE_COUNT_ATTRIBUTES) {
+      if (end - start == name.length() && startsWith(bytes, end, start, name)) return true;
+    }
+    return false;
+  }
+
+  private static boolean isPositive(@NotNull byte[] bytes, int start, int end) {
+    boolean positive = false;
+    for (int i = start; i < end; ++i) {
+      if (bytes[i] < '0' || bytes[i] > '9') return false;
+      if (bytes[i] != '0') positive = true;
+    }
+    return positive;
+  }
+
+  /**
+   * Tells a report which is still being written from a malformed one when the parser fails
+   * @return true if the report does not end with the root element end tag yet
+   */
+  public static boolean isTruncated(@NotNull final File report, @NotNull String rootTag) {
+    return report.isFile() && !endsWithEndTag(report, rootTag);
+  }
+
+  /**
+   * Cheap check whether the report is written completely: only the report tail is read
+   * and is expected to consist of the root element end tag and whitespaces
+   */
+  public static boolean endsWithEndTag(@NotNull final File report, @NotNull String rootTag) {
+    final byte[] endTag;
+    try {
+      endTag = ("</" + rootTag).getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      return false;
+    }
+    final byte[] bytes = new byte[endTag.length + TAIL_CHECK_SLACK];
+    int length = 0;
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(report, "r");
+      final long offset = Math.max(0, file.length() - bytes.length);
+      file.seek(offset);
+      int read;
+      while (length < bytes.length && (read = file.read(bytes, length, bytes.length - length)) != -1) {
+        length += read;
+      }
+    } catch (IOException e) {
+      return false;
+    } finally {
+      FileUtil.close(file);
+    }
+
+    int end = length;
+    while (end > 0 && isWhitespace(bytes[end - 1])) --end;
+    if (end == 0 || bytes[end - 1] != '>') return false;
+    --end;
+    while (end > 0 && isWhitespace(bytes[end - 1])) --end;
+    return end >= endTag.length && startsWith(bytes, end, end - endTag.length, endTag);
+  }
+
+  private static int readProlog(@NotNull File report, @NotNull byte[] bytes) {
+    int length = 0;
+    InputStream is = null;
+    try {
+      is = new FileInputStream(report);
+      int read;
+      while (length < bytes.length && (read = is.read(bytes, length, bytes.length - length)) != -1) {
+        length += read;
+      }
+      return length;
+    } catch (IOException e) {
+      return -1;
+    } finally {
+      FileUtil.close(is);
+    }
+  }
+
+  /**
+   * @return root element start offset, -1 if the prolog declares a document type or the root element is not found
+   */
+  private static int indexOfRootElement(@NotNull byte[] bytes, int length) {
+    for (int i = 0; i + 1 < length; ++i) {
+      if (bytes[i] != '<') continue;
+      final byte next = bytes[i + 1];
+      if (next == '!' && startsWith(bytes, length, i + 2, "--")) {
+        i = indexOf(bytes, length, i + 4, "-->");
+        if (i < 0) return -1;
+      } else if (next == '!' && startsWith(bytes, length, i + 2, "DOCTYPE")) {
+        return -1;
+      } else if (next != '!' && next != '?') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isNameEnd(byte b) {
+    return b == '>' || b == '/' || isWhitespace(b);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  private static boolean startsWith(@NotNull byte[] bytes, int length, int offset, @NotNull byte[] prefix) {
+    if (offset + prefix.length > length) return false;
+    for (int i = 0; i < prefix.length; ++i) {
+      if (bytes[offset + i] != prefix[i]) return false;
+    }
+    return true;
+  }
+
+  private static int indexOf(@NotNull byte[] bytes, int length, int from, @NotNull String str) {
+    for (int i = from; i < length; ++i) {
+      if (startsWith(bytes, length, i, str)) return i;
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(@NotNull byte[] bytes, int length, int offset, @NotNull String prefix) {
+    if (offset + prefix.length() > length) return false;
+    for (int i = 0; i < prefix.length(); ++i) {
+      if (bytes[offset + i] != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
   @Contract("null -> false")
   public static boolean isNumber(@Nullable final String str) {
     if(StringUtil.isEmptyOrSpaces(str)) return false;
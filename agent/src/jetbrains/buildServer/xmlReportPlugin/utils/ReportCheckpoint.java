@@ -0,0 +1,75 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Position in a partially written xml report from which parsing can be resumed:
+ * byte offset right after a complete element and the start tags of the elements which are still open there.
+ */
+public final class ReportCheckpoint {
+  private final long myOffset;
+  @NotNull
+  private final byte[] myProlog;
+  @NotNull
+  private final List<byte[]> myOpenElements;
+  @NotNull
+  private final byte[] myPrecedingBytes;
+
+  ReportCheckpoint(long offset, @NotNull byte[] prolog, @NotNull List<byte[]> openElements, @NotNull byte[] precedingBytes) {
+    myOffset = offset;
+    myProlog = prolog;
+    myOpenElements = Collections.unmodifiableList(openElements);
+    myPrecedingBytes = precedingBytes;
+  }
+
+  public long getOffset() {
+    return myOffset;
+  }
+
+  /**
+   * @return report bytes preceding the root element (xml declaration, doctype, comments)
+   */
+  @NotNull
+  byte[] getProlog() {
+    return myProlog;
+  }
+
+  /**
+   * @return raw start tags of the open elements, the root element first
+   */
+  @NotNull
+  List<byte[]> getOpenElements() {
+    return myOpenElements;
+  }
+
+  /**
+   * @return report bytes right before the offset, used to check the report was appended rather than rewritten
+   */
+  @NotNull
+  byte[] getPrecedingBytes() {
+    return myPrecedingBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ReportCheckpoint{offset=" + myOffset + ", openElements=" + myOpenElements.size() + "}";
+  }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Report input which may start from a {@link ReportCheckpoint} instead of the report beginning.
+ *
+ * When resuming, the prolog and the start tags of the still open elements are replayed first
+ * and then the report is read from the checkpoint offset, so the xml parser sees a well-formed prefix.
+ *
+ * While reading, the report structure is tracked with a lightweight byte scanner to find new checkpoints:
+ * positions right after a complete element when only container elements (e.g. suites) are open.
+ * Tracking is supported for ASCII-compatible encodings only, otherwise the report is always read from the beginning.
+ *
+ * Reading fails once the {@link ParseDeadline} of the current thread is over, so a stuck parsing is stopped.
+ * The report file is read under an I/O permit of the current thread {@link ParsePermits}, if any.
+ */
+public class ResumableReportInput extends InputStream {
+  private static final int PRECEDING_BYTES_LENGTH = 64;
+  private static final int MAX_PROLOG_LENGTH = 64 * 1024;
+  private static final int MAX_START_TAG_LENGTH = 64 * 1024;
+  private static final int HEADER_LENGTH = 256;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Pattern ENCODING_PATTERN = Pattern.compile("^<\\?xml[^>]*encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+  private static final String ASCII_PROBE = "<?xml version=\"1.0\"?><!-- ]]> --></a>'";
+
+  private static final int TEXT = 0;
+  private static final int MARKUP = 1;
+  private static final int START_TAG = 2;
+  private static final int END_TAG = 3;
+  private static final int BANG = 4;
+  private static final int COMMENT = 5;
+  private static final int CDATA = 6;
+  private static final int PI = 7;
+  private static final int DECL = 8;
+
+  @NotNull
+  private final InputStream myFileStream;
+  @NotNull
+  private final Charset myCharset;
+  @NotNull
+  private final Set<String> myContainers;
+  @NotNull
+  private final String myUnit;
+  @Nullable
+  private final ReportCheckpoint myInitialCheckpoint;
+
+  @NotNull
+  private final byte[] myPrefix;
+  private int myPrefixPosition;
+  private long myOffset;
+  private boolean myEndOfFileReached;
+
+  private boolean myTracking;
+  private int myState = TEXT;
+  private byte myLast;
+  private byte myBeforeLast;
+  private byte myQuote;
+  private int myDeclDepth;
+  @NotNull
+  private final StringBuilder myBang = new StringBuilder();
+  @NotNull
+  private final StringBuilder myTagName = new StringBuilder();
+  private boolean myTagNameComplete;
+  @NotNull
+  private final ByteArrayOutputStream myTag = new ByteArrayOutputStream();
+  @Nullable
+  private ByteArrayOutputStream myPrologBuffer;
+  @Nullable
+  private byte[] myProlog;
+
+  @NotNull
+  private final List<byte[]> myOpenTags = new ArrayList<byte[]>();
+  private int myNestedDepth;
+  @Nullable
+  private String myNestedName;
+  private int myCompletedUnits;
+
+  @NotNull
+  private final byte[] myRecentBytes = new byte[PRECEDING_BYTES_LENGTH];
+  private long mySafeOffset = -1;
+  @Nullable
+  private byte[] mySafePrecedingBytes;
+  private int mySafeCompletedUnits;
+
+  private ResumableReportInput(@NotNull File file,
+                               @NotNull Charset charset,
+                               boolean tracking,
+                               @Nullable ReportCheckpoint checkpoint,
+                               @NotNull Set<String> containers,
+                               @NotNull String unit) throws IOException {
+    myCharset = charset;
+    myTracking = tracking;
+    myInitialCheckpoint = checkpoint;
+    myContainers = containers;
+    myUnit = unit;
+
+    final FileInputStream fileStream = new FileInputStream(file);
+    if (checkpoint == null) {
+      myPrefix = new byte[0];
+      myPrologBuffer = new ByteArrayOutputStream();
+    } else {
+      try {
+        fileStream.getChannel().position(checkpoint.getOffset());
+      } catch (IOException e) {
+        fileStream.close();
+        throw e;
+      }
+      myOffset = checkpoint.getOffset();
+      myProlog = checkpoint.getProlog();
+      myOpenTags.addAll(checkpoint.getOpenElements());
+
+      final byte[] preceding = checkpoint.getPrecedingBytes();
+      for (int i = 0; i < preceding.length; ++i) {
+        myRecentBytes[(int)((myOffset - preceding.length + i) % PRECEDING_BYTES_LENGTH)] = preceding[i];
+      }
+
+      final ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+      prefix.write(myProlog);
+      for (byte[] tag : myOpenTags) {
+        prefix.write(tag);
+      }
+      myPrefix = prefix.toByteArray();
+    }
+    myFileStream = new BufferedInputStream(fileStream);
+  }
+
+  /**
+   * Opens the report for reading
+   * @param file report file
+   * @param checkpoint checkpoint from the previous parsing attempt, ignored if the report was not just appended since then
+   * @param containers names of the elements which may be left open at a checkpoint, e.g. suites
+   * @param unit name of the element the parser reports, e.g. test, used by {@link #getCompletedUnits()}
+   * @return report input
+   * @throws IOException if the report can not be opened
+   */
+  @NotNull
+  public static ResumableReportInput open(@NotNull File file,
+                                          @Nullable ReportCheckpoint checkpoint,
+                                          @NotNull Set<String> containers,
+                                          @NotNull String unit) throws IOException {
+    final byte[] header = readBytes(file, 0, HEADER_LENGTH);
+    final Charset charset = detectCharset(header);
+    final boolean tracking = isAsciiCompatible(charset);
+
+    if (checkpoint != null && (!tracking || !isAppendedTo(file, checkpoint))) {
+      checkpoint = null;
+    }
+    return new ResumableReportInput(file, charset, tracking, checkpoint, containers, unit);
+  }
+
+  /**
+   * @return reader decoding the report with its declared encoding
+   */
+  @NotNull
+  public Reader createReader() throws IOException {
+    final PushbackReader reader = new PushbackReader(new InputStreamReader(this, myCharset), 1);
+    final int first = reader.read();
+    if (first != -1 && first != '\uFEFF') reader.unread(first);
+    return reader;
+  }
+
+  /**
+   * @return true if the report is read from a checkpoint rather than from the beginning
+   */
+  public boolean isResumed() {
+    return myInitialCheckpoint != null;
+  }
+
+  public boolean isEndOfFileReached() {
+    return myEndOfFileReached;
+  }
+
+  /**
+   * @return the latest position parsing may be resumed from or null if there's no such position
+   */
+  @Nullable
+  public ReportCheckpoint getLastCheckpoint() {
+    if (mySafeOffset < 0) return myInitialCheckpoint;
+    if (myProlog == null || myOpenTags.isEmpty() || mySafePrecedingBytes == null) return null;
+    return new ReportCheckpoint(mySafeOffset, myProlog, new ArrayList<byte[]>(myOpenTags), mySafePrecedingBytes);
+  }
+
+  /**
+   * @return number of complete unit elements read in this run before the {@link #getLastCheckpoint() last checkpoint},
+   * lets the parser check it has really processed the report up to the checkpoint
+   */
+  public int getCompletedUnits() {
+    return mySafeOffset < 0 ? 0 : mySafeCompletedUnits;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(@NotNull byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    ParseDeadline.check();
+    if (myPrefixPosition < myPrefix.length) {
+      final int count = Math.min(len, myPrefix.length - myPrefixPosition);
+      System.arraycopy(myPrefix, myPrefixPosition, b, off, count);
+      myPrefixPosition += count;
+      return count;
+    }
+    final int count;
+    ParsePermits.beginIo();
+    try {
+      count = myFileStream.read(b, off, len);
+    } finally {
+      ParsePermits.endIo();
+    }
+    if (count == -1) {
+      myEndOfFileReached = true;
+      return -1;
+    }
+    for (int i = off; i < off + count; ++i) {
+      if (myTracking) scan(b[i]);
+      ++myOffset;
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    myFileStream.close();
+  }
+
+  private void scan(byte b) {
+    myRecentBytes[(int)(myOffset % PRECEDING_BYTES_LENGTH)] = b;
+
+    final ByteArrayOutputStream prolog = myPrologBuffer;
+    if (prolog != null) {
+      prolog.write(b);
+      if (prolog.size() > MAX_PROLOG_LENGTH) {
+        myTracking = false;
+        return;
+      }
+    }
+
+    switch (myState) {
+      case TEXT:
+        if (b == '<') myState = MARKUP;
+        break;
+      case MARKUP:
+        if (b == '/') {
+          myState = END_TAG;
+        } else if (b == '!') {
+          myState = BANG;
+          myBang.setLength(0);
+        } else if (b == '?') {
+          myState = PI;
+          b = 0;
+        } else {
+          myState = START_TAG;
+          startTag(b);
+        }
+        break;
+      case START_TAG:
+        if (myNestedDepth == 0) {
+          myTag.write(b);
+          if (myTag.size() > MAX_START_TAG_LENGTH) {
+            myTracking = false;
+            return;
+          }
+        }
+        if (myQuote != 0) {
+          if (b == myQuote) myQuote = 0;
+        } else if (b == '"' || b == '\'') {
+          myQuote = b;
+          myTagNameComplete = true;
+        } else if (b == '>') {
+          myState = TEXT;
+          finishStartTag(myLast == '/');
+        } else if (!myTagNameComplete) {
+          if (b == '/' || Character.isWhitespace((char)b)) {
+            myTagNameComplete = true;
+          } else {
+            myTagName.append((char)(b & 0xFF));
+          }
+        }
+        break;
+      case END_TAG:
+        if (b == '>') {
+          myState = TEXT;
+          finishEndTag();
+        }
+        break;
+      case BANG:
+        myBang.append((char)(b & 0xFF));
+        final String bang = myBang.toString();
+        if ("--".equals(bang)) {
+          myState = COMMENT;
+          b = 0;
+        } else if ("[CDATA[".equals(bang)) {
+          myState = CDATA;
+          b = 0;
+        } else if (!"--".startsWith(bang) && !"[CDATA[".startsWith(bang)) {
+          myState = DECL;
+          myDeclDepth = 0;
+          for (int i = 0; i < bang.length() && myState == DECL; ++i) {
+            scanDecl(bang.charAt(i));
+          }
+        }
+        break;
+      case COMMENT:
+        if (b == '>' && myLast == '-' && myBeforeLast == '-') myState = TEXT;
+        break;
+      case CDATA:
+        if (b == '>' && myLast == ']' && myBeforeLast == ']') myState = TEXT;
+        break;
+      case PI:
+        if (b == '>' && myLast == '?') myState = TEXT;
+        break;
+      case DECL:
+        scanDecl((char)b);
+        break;
+    }
+
+    myBeforeLast = myLast;
+    myLast = b;
+  }
+
+  private void scanDecl(final char c) {
+    if (c == '[') {
+      ++myDeclDepth;
+    } else if (c == ']') {
+      --myDeclDepth;
+    } else if (c == '>' && myDeclDepth <= 0) {
+      myState = TEXT;
+    }
+  }
+
+  private void startTag(final byte first) {
+    myQuote = 0;
+    myTagNameComplete = false;
+    myTagName.setLength(0);
+    myTagName.append((char)(first & 0xFF));
+
+    final ByteArrayOutputStream prolog = myPrologBuffer;
+    if (prolog != null) {
+      final byte[] bytes = prolog.toByteArray();
+      myProlog = Arrays.copyOf(bytes, bytes.length - 2);
+      myPrologBuffer = null;
+    }
+
+    if (myNestedDepth == 0) {
+      myTag.reset();
+      myTag.write('<');
+      myTag.write(first);
+    }
+  }
+
+  private void finishStartTag(final boolean selfClosing) {
+    if (myNestedDepth > 0) {
+      if (!selfClosing) ++myNestedDepth;
+      return;
+    }
+    final String name = getLocalName(myTagName.toString());
+    if (selfClosing) {
+      if (myUnit.equals(name)) ++myCompletedUnits;
+      markSafePoint();
+    } else if (myContainers.contains(name)) {
+      myOpenTags.add(myTag.toByteArray());
+      markSafePoint();
+    } else {
+      myNestedDepth = 1;
+      myNestedName = name;
+    }
+  }
+
+  private void finishEndTag() {
+    if (myNestedDepth > 0) {
+      if (--myNestedDepth == 0) {
+        if (myUnit.equals(myNestedName)) ++myCompletedUnits;
+        myNestedName = null;
+        markSafePoint();
+      }
+    } else if (!myOpenTags.isEmpty()) {
+      myOpenTags.remove(myOpenTags.size() - 1);
+      markSafePoint();
+    }
+  }
+
+  private void markSafePoint() {
+    mySafeOffset = myOffset + 1;
+    mySafeCompletedUnits = myCompletedUnits;
+
+    final int length = (int)Math.min(PRECEDING_BYTES_LENGTH, mySafeOffset);
+    final byte[] preceding = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      preceding[i] = myRecentBytes[(int)((mySafeOffset - length + i) % PRECEDING_BYTES_LENGTH)];
+    }
+    mySafePrecedingBytes = preceding;
+  }
+
+  @NotNull
+  private static String getLocalName(@NotNull String name) {
+    final int colon = name.indexOf(':');
+    return colon < 0 ? name : name.substring(colon + 1);
+  }
+
+  private static boolean isAppendedTo(@NotNull File file, @NotNull ReportCheckpoint checkpoint) {
+    final long offset = checkpoint.getOffset();
+    final byte[] expected = checkpoint.getPrecedingBytes();
+    if (file.length() < offset || offset < expected.length) return false;
+    try {
+      return Arrays.equals(expected, readBytes(file, offset - expected.length, expected.length));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @NotNull
+  private static byte[] readBytes(@NotNull File file, long offset, int length) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.seek(offset);
+      final byte[] bytes = new byte[(int)Math.max(0, Math.min(length, raf.length() - offset))];
+      raf.readFully(bytes);
+      return bytes;
+    } finally {
+      raf.close();
+    }
+  }
+
+  @NotNull
+  private static Charset detectCharset(@NotNull byte[] header) {
+    if (header.length >= 3 && (header[0] & 0xFF) == 0xEF && (header[1] & 0xFF) == 0xBB && (header[2] & 0xFF) == 0xBF) {
+      return UTF_8;
+    }
+    if (header.length >= 2 && ((header[0] & 0xFF) == 0xFE && (header[1] & 0xFF) == 0xFF || (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xFE)) {
+      return Charset.forName("UTF-16");
+    }
+    final Matcher matcher = ENCODING_PATTERN.matcher(new String(header, Charset.forName("ISO-8859-1")));
+    if (matcher.find()) {
+      try {
+        return Charset.forName(matcher.group(1));
+      } catch (IllegalArgumentException e) {
+        LoggingUtils.LOG.debug("Unsupported report encoding " + matcher.group(1) + ", will use UTF-8");
+      }
+    }
+    return UTF_8;
+  }
+
+  private static boolean isAsciiCompatible(@NotNull Charset charset) {
+    if (UTF_8.equals(charset)) return true;
+    try {
+      return charset.newEncoder().maxBytesPerChar() == 1 && Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(UTF_8));
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
+}
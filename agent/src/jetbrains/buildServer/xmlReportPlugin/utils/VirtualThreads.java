@@ -0,0 +1,54 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Creates virtual thread executors on the JVMs which support them, the plugin is compiled for older JVMs
+ * so the API is called reflectively
+ */
+public final class VirtualThreads {
+  private VirtualThreads() {
+  }
+
+  /**
+   * @param name thread name prefix
+   * @return executor starting a new virtual thread for each task or null if the JVM does not support virtual threads
+   */
+  @Nullable
+  public static ExecutorService newThreadPerTaskExecutor(@NotNull String name) {
+    try {
+      final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+      final ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+
+      final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService)newExecutor.invoke(null, factory);
+    } catch (Exception e) {
+      LoggingUtils.LOG.debug("Virtual threads are not supported: " + e);
+      return null;
+    }
+  }
+}
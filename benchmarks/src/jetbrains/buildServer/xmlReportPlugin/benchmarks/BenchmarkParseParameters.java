@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.benchmarks;
+
+import java.io.File;
+import java.util.Map;
+import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.xmlReportPlugin.ParseParameters;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationResult;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionResult;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionTypeResult;
+import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Parse parameters with reporters which only count the reported tests, inspections and duplicates
+ */
+class BenchmarkParseParameters implements ParseParameters {
+  @NotNull
+  private final String myType;
+  @NotNull
+  private final File myCheckoutDir;
+  @NotNull
+  private final Map<String, String> myParameters;
+
+  private int myReportedItems;
+
+  BenchmarkParseParameters(@NotNull String type, @NotNull File checkoutDir, @NotNull Map<String, String> parameters) {
+    myType = type;
+    myCheckoutDir = checkoutDir;
+    myParameters = parameters;
+  }
+
+  /**
+   * @return number of tests, inspections and duplicates reported since the previous call
+   */
+  int pollReportedItems() {
+    final int result = myReportedItems;
+    myReportedItems = 0;
+    return result;
+  }
+
+  public boolean isVerbose() {
+    return false;
+  }
+
+  @NotNull
+  public BuildProgressLogger getThreadLogger() {
+    throw new UnsupportedOperationException("Parsers are not expected to log to the build log directly");
+  }
+
+  @NotNull
+  public InspectionReporter getInspectionReporter() {
+    return new InspectionReporter() {
+      public void reportInspection(@NotNull InspectionResult inspection) {
+        ++myReportedItems;
+      }
+
+      public void reportInspectionType(@NotNull InspectionTypeResult inspectionType) {}
+
+      public void info(@NotNull String message) {}
+
+      public void warning(@NotNull String message) {}
+
+      public void error(@NotNull String message) {}
+
+      public void failure(@NotNull String message) {}
+    };
+  }
+
+  @NotNull
+  public DuplicationReporter getDuplicationReporter() {
+    return new DuplicationReporter() {
+      public void startDuplicates() {}
+
+      public void reportDuplicate(@NotNull DuplicationResult duplicate) {
+        ++myReportedItems;
+      }
+
+      public void finishDuplicates() {}
+
+      public void info(@NotNull String message) {}
+
+      public void warning(@NotNull String message) {}
+
+      public void error(@NotNull String message) {}
+
+      public void failure(@NotNull String message) {}
+    };
+  }
+
+  @NotNull
+  public TestReporter getTestReporter() {
+    return new TestReporter() {
+      public void openTestSuite(@NotNull String name) {}
+
+      public void openTest(@NotNull String name) {
+        ++myReportedItems;
+      }
+
+      public void testStdOutput(@NotNull String text) {}
+
+      public void testErrOutput(@NotNull String text) {}
+
+      public void testFail(String error, String stacktrace) {}
+
+      public void testIgnored(@NotNull String message) {}
+
+      public void closeTest(long duration) {}
+
+      public void closeTestSuite() {}
+
+      public void info(@NotNull String message) {}
+
+      public void warning(@NotNull String message) {}
+
+      public void error(@NotNull String message) {}
+
+      public void failure(@NotNull String message) {}
+    };
+  }
+
+  @NotNull
+  public Map<String, String> getParameters() {
+    return myParameters;
+  }
+
+  @NotNull
+  public String getType() {
+    return myType;
+  }
+
+  @NotNull
+  public File getCheckoutDir() {
+    return myCheckoutDir;
+  }
+}
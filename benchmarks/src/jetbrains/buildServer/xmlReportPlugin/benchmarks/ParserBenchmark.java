@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.xmlReportPlugin.Parser;
+import jetbrains.buildServer.xmlReportPlugin.ParserFactory;
+import jetbrains.buildServer.xmlReportPlugin.ParsingException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures how fast each parser handles a synthetic report.
+ *
+ * Besides the parsed reports per second the results contain "bytes" and "items" secondary metrics:
+ * the report bytes and the reported tests, inspections or duplicates per second.
+ * {@link #main} adds the GC profiler, so the allocation rate is reported as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+  @Param({"JUNIT", "NUNIT2", "NUNIT3", "TESTNG", "TRX", "CTEST", "CHECKSTYLE", "PMD", "PMD_CPD", "FINDBUGS", "JSLINT"})
+  public ReportKind report;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private File myDir;
+  private File myReport;
+  private ParserFactory myFactory;
+  private BenchmarkParseParameters myParameters;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    myDir = FileUtil.createTempDirectory("parserBenchmark", "");
+    myReport = report.generate(myDir, size);
+    myFactory = report.createFactory();
+    myParameters = new BenchmarkParseParameters(myFactory.getType(), myDir, report.getParameters());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FileUtil.delete(myDir);
+  }
+
+  @Benchmark
+  public int parse(Counters counters) throws ParsingException {
+    final Parser parser = myFactory.createParser(myParameters);
+    if (!parser.parse(myReport, null)) {
+      throw new IllegalStateException("Failed to parse " + myReport + " in one go");
+    }
+    final int items = myParameters.pollReportedItems();
+    counters.bytes += myReport.length();
+    counters.items += items;
+    return items;
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long bytes;
+    public long items;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+      items = 0;
+    }
+  }
+
+  /**
+   * Accepts the usual JMH command line options, e.g. {@code -p report=TRX -p size=1000}
+   */
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+                 .parent(new CommandLineOptions(args))
+                 .include(ParserBenchmark.class.getSimpleName())
+                 .addProfiler(GCProfiler.class)
+                 .build()).run();
+  }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.benchmarks;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.Map;
+import jetbrains.buildServer.xmlReportPlugin.ParserFactory;
+import jetbrains.buildServer.xmlReportPlugin.XmlReportPluginConstants;
+import jetbrains.buildServer.xmlReportPlugin.parsers.antJUnit.AntJUnitFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.checkstyle.CheckstyleFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.ctest.CTestFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.findBugs.FindBugsFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.jslint.JSLintFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.mstest.TRXFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.nUnit.NUnitFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.pmd.PmdFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.pmdCpd.PmdCpdFactory;
+import jetbrains.buildServer.xmlReportPlugin.parsers.testng.TestNGFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Synthetic reports of the supported formats. The size is the number of tests, inspections or duplicates in the report,
+ * every tenth test fails.
+ */
+public enum ReportKind {
+  JUNIT {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new AntJUnitFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<testsuite name=\"benchmark.Suite\" tests=\"" + size + "\" failures=\"" + size / 10 + "\" errors=\"0\" time=\"1.0\">");
+      for (int i = 0; i < size; ++i) {
+        out.print("  <testcase classname=\"benchmark.Class" + i / 100 + "\" name=\"test" + i + "\" time=\"0.001\"");
+        if (isFailed(i)) {
+          out.println(">");
+          out.println("    <failure message=\"" + MESSAGE + "\" type=\"java.lang.AssertionError\">" + STACKTRACE + "</failure>");
+          out.println("    <system-out>" + OUTPUT + "</system-out>");
+          out.println("  </testcase>");
+        } else {
+          out.println("/>");
+        }
+      }
+      out.println("</testsuite>");
+    }
+  },
+
+  NUNIT2 {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new NUnitFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+      out.println("<test-results name=\"Benchmark.dll\" total=\"" + size + "\" failures=\"" + size / 10 + "\" not-run=\"0\">");
+      out.println("  <test-suite type=\"Assembly\" name=\"Benchmark.dll\" executed=\"True\" result=\"Failure\" success=\"False\" time=\"1.0\">");
+      out.println("    <results>");
+      for (int i = 0; i < size; ++i) {
+        if (i % 100 == 0) {
+          if (i > 0) out.println("      </results></test-suite>");
+          out.println("      <test-suite type=\"TestFixture\" name=\"Fixture" + i / 100 + "\" executed=\"True\" result=\"Success\" success=\"True\" time=\"0.1\"><results>");
+        }
+        out.print("        <test-case name=\"Benchmark.Fixture" + i / 100 + ".Test" + i + "\" executed=\"True\" time=\"0.001\" asserts=\"1\"");
+        if (isFailed(i)) {
+          out.println(" result=\"Failure\" success=\"False\">");
+          out.println("          <failure><message><![CDATA[" + MESSAGE + "]]></message><stack-trace><![CDATA[" + STACKTRACE + "]]></stack-trace></failure>");
+          out.println("        </test-case>");
+        } else {
+          out.println(" result=\"Success\" success=\"True\"/>");
+        }
+      }
+      if (size > 0) out.println("      </results></test-suite>");
+      out.println("    </results>");
+      out.println("  </test-suite>");
+      out.println("</test-results>");
+    }
+  },
+
+  NUNIT3 {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new NUnitFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+      out.println("<test-run id=\"2\" testcasecount=\"" + size + "\" result=\"Failed\" total=\"" + size + "\" failed=\"" + size / 10 + "\">");
+      out.println("  <test-suite type=\"Assembly\" name=\"Benchmark.dll\" result=\"Failed\">");
+      for (int i = 0; i < size; ++i) {
+        if (i % 100 == 0) {
+          if (i > 0) out.println("    </test-suite>");
+          out.println("    <test-suite type=\"TestFixture\" name=\"Fixture" + i / 100 + "\" fullname=\"Benchmark.Fixture" + i / 100 + "\" result=\"Passed\">");
+        }
+        out.print("      <test-case id=\"0-" + i + "\" name=\"Test" + i + "\" fullname=\"Benchmark.Fixture" + i / 100 + ".Test" + i +
+                  "\" methodname=\"Test" + i + "\" classname=\"Benchmark.Fixture" + i / 100 + "\" runstate=\"Runnable\" duration=\"0.001\" asserts=\"1\"");
+        if (isFailed(i)) {
+          out.println(" result=\"Failed\">");
+          out.println("        <failure><message><![CDATA[" + MESSAGE + "]]></message><stack-trace><![CDATA[" + STACKTRACE + "]]></stack-trace></failure>");
+          out.println("        <output><![CDATA[" + OUTPUT + "]]></output>");
+          out.println("      </test-case>");
+        } else {
+          out.println(" result=\"Passed\"/>");
+        }
+      }
+      if (size > 0) out.println("    </test-suite>");
+      out.println("  </test-suite>");
+      out.println("</test-run>");
+    }
+  },
+
+  TESTNG {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new TestNGFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<testng-results total=\"" + size + "\" passed=\"" + (size - size / 10) + "\" failed=\"" + size / 10 + "\" skipped=\"0\">");
+      out.println("  <suite name=\"Benchmark suite\" duration-ms=\"1000\">");
+      out.println("    <test name=\"Benchmark test\" duration-ms=\"1000\">");
+      for (int i = 0; i < size; ++i) {
+        if (i % 100 == 0) {
+          if (i > 0) out.println("      </class>");
+          out.println("      <class name=\"benchmark.Class" + i / 100 + "\">");
+        }
+        out.print("        <test-method signature=\"test" + i + "()\" name=\"test" + i + "\" duration-ms=\"1\"");
+        if (isFailed(i)) {
+          out.println(" status=\"FAIL\">");
+          out.println("          <exception class=\"java.lang.AssertionError\"><message><![CDATA[" + MESSAGE +
+                      "]]></message><full-stacktrace><![CDATA[" + STACKTRACE + "]]></full-stacktrace></exception>");
+          out.println("          <reporter-output><line><![CDATA[" + OUTPUT + "]]></line></reporter-output>");
+          out.println("        </test-method>");
+        } else {
+          out.println(" status=\"PASS\"/>");
+        }
+      }
+      if (size > 0) out.println("      </class>");
+      out.println("    </test>");
+      out.println("  </suite>");
+      out.println("</testng-results>");
+    }
+  },
+
+  TRX {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new TRXFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      // VSTest layout: the results precede the test definitions
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<TestRun id=\"00000000-0000-0000-0000-000000000000\" name=\"benchmark\" xmlns=\"http://microsoft.com/schemas/VisualStudio/TeamTest/2010\">");
+      out.println("  <Results>");
+      for (int i = 0; i < size; ++i) {
+        out.print("    <UnitTestResult executionId=\"e-" + i + "\" testId=\"t-" + i + "\" testName=\"Test" + i +
+                  "\" computerName=\"agent\" duration=\"00:00:00.0010000\" testType=\"13cdc9d9-ddb5-4fa4-a97d-d965ccfc6d4b\"");
+        if (isFailed(i)) {
+          out.println(" outcome=\"Failed\">");
+          out.println("      <Output><StdOut>" + OUTPUT + "</StdOut><ErrorInfo><Message>" + MESSAGE + "</Message><StackTrace>" + STACKTRACE +
+                      "</StackTrace></ErrorInfo></Output>");
+          out.println("    </UnitTestResult>");
+        } else {
+          out.println(" outcome=\"Passed\"/>");
+        }
+      }
+      out.println("  </Results>");
+      out.println("  <TestDefinitions>");
+      for (int i = 0; i < size; ++i) {
+        out.println("    <UnitTest name=\"Test" + i + "\" id=\"t-" + i + "\"><TestMethod codeBase=\"Benchmark.dll\" className=\"Benchmark.Fixture" +
+                    i / 100 + ", Benchmark\" name=\"Test" + i + "\"/></UnitTest>");
+      }
+      out.println("  </TestDefinitions>");
+      out.println("</TestRun>");
+    }
+  },
+
+  CTEST {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new CTestFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<Site BuildName=\"benchmark\" BuildStamp=\"20210101-0000-Experimental\" Name=\"agent\" Generator=\"ctest-3.10\">");
+      out.println("<Testing>");
+      for (int i = 0; i < size; ++i) {
+        out.println("  <Test Status=\"" + (isFailed(i) ? "failed" : "passed") + "\">");
+        out.println("    <Name>test" + i + "</Name><Path>./bin</Path><FullName>./bin/test" + i + "</FullName>");
+        out.println("    <FullCommandLine>/build/bin/test" + i + "</FullCommandLine>");
+        out.println("    <Results>");
+        out.println("      <NamedMeasurement type=\"numeric/double\" name=\"Execution Time\"><Value>0.001</Value></NamedMeasurement>");
+        out.println("      <NamedMeasurement type=\"text/string\" name=\"Completion Status\"><Value>Completed</Value></NamedMeasurement>");
+        out.println("      <Measurement><Value>" + (isFailed(i) ? STACKTRACE : OUTPUT) + "</Value></Measurement>");
+        out.println("    </Results>");
+        out.println("  </Test>");
+      }
+      out.println("</Testing>");
+      out.println("</Site>");
+    }
+  },
+
+  CHECKSTYLE {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new CheckstyleFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<checkstyle version=\"8.0\">");
+      for (int i = 0; i < size; ++i) {
+        if (i % 10 == 0) {
+          if (i > 0) out.println("  </file>");
+          out.println("  <file name=\"src/benchmark/Class" + i / 10 + ".java\">");
+        }
+        out.println("    <error line=\"" + i + "\" column=\"5\" severity=\"" + (isFailed(i) ? "error" : "warning") + "\" message=\"" + MESSAGE +
+                    "\" source=\"com.puppycrawl.tools.checkstyle.checks.Check" + i % 50 + "\"/>");
+      }
+      if (size > 0) out.println("  </file>");
+      out.println("</checkstyle>");
+    }
+  },
+
+  PMD {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new PmdFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<pmd version=\"6.0.0\" timestamp=\"2021-01-01T00:00:00.000\">");
+      for (int i = 0; i < size; ++i) {
+        if (i % 10 == 0) {
+          if (i > 0) out.println("  </file>");
+          out.println("  <file name=\"src/benchmark/Class" + i / 10 + ".java\">");
+        }
+        out.println("    <violation beginline=\"" + i + "\" endline=\"" + i + "\" begincolumn=\"1\" endcolumn=\"10\" rule=\"Rule" + i % 50 +
+                    "\" ruleset=\"Best Practices\" package=\"benchmark\" class=\"Class" + i / 10 + "\" method=\"method" + i +
+                    "\" externalInfoUrl=\"https://pmd.github.io/rules.html#Rule" + i % 50 + "\" priority=\"" + (i % 5 + 1) + "\">");
+        out.println("      " + MESSAGE);
+        out.println("    </violation>");
+      }
+      if (size > 0) out.println("  </file>");
+      out.println("</pmd>");
+    }
+  },
+
+  PMD_CPD {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new PmdCpdFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<pmd-cpd>");
+      for (int i = 0; i < size; ++i) {
+        out.println("  <duplication lines=\"12\" tokens=\"115\">");
+        out.println("    <file line=\"" + (i + 10) + "\" path=\"src/benchmark/Class" + i + ".java\"/>");
+        out.println("    <file line=\"" + (i + 40) + "\" path=\"src/benchmark/Class" + (i + 1) + ".java\"/>");
+        out.println("    <codefragment><![CDATA[" + STACKTRACE + "]]></codefragment>");
+        out.println("  </duplication>");
+      }
+      out.println("</pmd-cpd>");
+    }
+  },
+
+  FINDBUGS {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new FindBugsFactory();
+    }
+
+    @NotNull
+    @Override
+    Map<String, String> getParameters() {
+      return Collections.singletonMap(XmlReportPluginConstants.FINDBUGS_LOOKUP_FILES, "false");
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<BugCollection version=\"4.0.0\" sequence=\"0\" timestamp=\"1609459200000\" analysisTimestamp=\"1609459200000\" release=\"\">");
+      out.println("  <Project projectName=\"benchmark\"><Jar>build/classes</Jar><SrcDir>src</SrcDir></Project>");
+      for (int i = 0; i < size; ++i) {
+        final String clazz = "benchmark.Class" + i / 10;
+        final String source = "benchmark/Class" + i / 10 + ".java";
+        out.println("  <BugInstance type=\"PATTERN_" + i % 50 + "\" priority=\"" + (i % 3 + 1) + "\" rank=\"15\" abbrev=\"P\" category=\"CATEGORY_" + i % 5 + "\">");
+        out.println("    <ShortMessage>" + MESSAGE + "</ShortMessage>");
+        out.println("    <LongMessage>" + MESSAGE + " in " + clazz + ".method" + i + "()</LongMessage>");
+        out.println("    <Class classname=\"" + clazz + "\" primary=\"true\"><SourceLine classname=\"" + clazz + "\" start=\"1\" end=\"100\" sourcefile=\"Class" +
+                    i / 10 + ".java\" sourcepath=\"" + source + "\"/></Class>");
+        out.println("    <Method classname=\"" + clazz + "\" name=\"method" + i + "\" signature=\"()V\" isStatic=\"false\" primary=\"true\"><SourceLine classname=\"" +
+                    clazz + "\" start=\"" + i + "\" end=\"" + (i + 5) + "\" sourcefile=\"Class" + i / 10 + ".java\" sourcepath=\"" + source + "\"/></Method>");
+        out.println("    <SourceLine classname=\"" + clazz + "\" primary=\"true\" start=\"" + i + "\" end=\"" + i + "\" sourcefile=\"Class" + i / 10 +
+                    ".java\" sourcepath=\"" + source + "\"/>");
+        out.println("  </BugInstance>");
+      }
+      for (int i = 0; i < 5; ++i) {
+        out.println("  <BugCategory category=\"CATEGORY_" + i + "\"><Description>Category " + i + "</Description><Details>" + MESSAGE + "</Details></BugCategory>");
+      }
+      for (int i = 0; i < 50; ++i) {
+        out.println("  <BugPattern type=\"PATTERN_" + i + "\" abbrev=\"P\" category=\"CATEGORY_" + i % 5 + "\"><ShortDescription>Pattern " + i +
+                    "</ShortDescription><Details><![CDATA[<p>" + MESSAGE + "</p>]]></Details></BugPattern>");
+      }
+      out.println("  <Errors errors=\"0\" missingClasses=\"0\"/>");
+      out.println("</BugCollection>");
+    }
+  },
+
+  JSLINT {
+    @NotNull
+    @Override
+    ParserFactory createFactory() {
+      return new JSLintFactory();
+    }
+
+    @Override
+    void write(@NotNull PrintWriter out, int size) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<jslint>");
+      for (int i = 0; i < size; ++i) {
+        if (i % 10 == 0) {
+          if (i > 0) out.println("</file>");
+          out.println("<file name='src/benchmark/script" + i / 10 + ".js'>");
+        }
+        out.println("<issue line='" + i + "' char='5' reason='" + MESSAGE + "' evidence='    if (a == null) {'/>");
+      }
+      if (size > 0) out.println("</file>");
+      out.println("</jslint>");
+    }
+  };
+
+  private static final String MESSAGE = "Expected value differs from the actual one";
+  private static final String OUTPUT = "Line of the test output, long enough to be comparable with the real-life ones";
+  private static final String STACKTRACE = "java.lang.AssertionError: " + MESSAGE + "\n" +
+                                           "\tat benchmark.Assert.fail(Assert.java:88)\n" +
+                                           "\tat benchmark.Assert.assertEquals(Assert.java:118)\n" +
+                                           "\tat benchmark.Class.test(Class.java:42)\n";
+
+  @NotNull
+  abstract ParserFactory createFactory();
+
+  @NotNull
+  Map<String, String> getParameters() {
+    return Collections.emptyMap();
+  }
+
+  abstract void write(@NotNull PrintWriter out, int size);
+
+  @NotNull
+  File generate(@NotNull File dir, int size) throws IOException {
+    final File report = new File(dir, name().toLowerCase() + "-" + size + ".xml");
+    final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(report), "UTF-8")));
+    try {
+      write(out, size);
+    } finally {
+      out.close();
+    }
+    if (out.checkError()) throw new IOException("Failed to write " + report);
+    return report;
+  }
+
+  private static boolean isFailed(int index) {
+    return index % 10 == 9;
+  }
+}
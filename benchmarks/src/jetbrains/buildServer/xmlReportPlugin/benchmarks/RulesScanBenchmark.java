@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.util.pathMatcher.AntPatternFileCollector;
+import jetbrains.buildServer.xmlReportPlugin.OptimizingIncludeExcludeRules;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures how fast the include/exclude rules are collected on a synthetic checkout of many modules,
+ * where most of the files are in excluded {@code node_modules} directories and a few are test reports.
+ *
+ * {@link #rulesTrie} is how the rules are collected by the plugin on the first scan, {@link #rulesTrieParallel} is the same
+ * with {@link OptimizingIncludeExcludeRules#SCAN_PARALLELISM_PROPERTY} set to the number of processors,
+ * {@link #antPatternFileCollector} is the former way which walks the excluded directories as well.
+ * Each invocation of these creates the rules anew, so nothing is remembered between them.
+ *
+ * {@link #rulesTrieRescan} and {@link #rulesTrieParallelRescan} reuse the rules, so they measure the periodic rescans
+ * of a quiet checkout, where the remembered directory listings are reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RulesScanBenchmark {
+  private static final int FILES_PER_DIRECTORY = 100;
+  private static final int MODULES = 100;
+
+  private static final List<String> RULES = Arrays.asList("+:**/test-results/*.xml", "-:**/node_modules/**");
+
+  /**
+   * Total number of files in the checkout, 90% of them are in node_modules, 1% are reports
+   */
+  @Param({"1000000"})
+  public int files;
+
+  private File myCheckoutDir;
+  private OptimizingIncludeExcludeRules myRules;
+  private ForkJoinPool myScanPool;
+  private OptimizingIncludeExcludeRules myParallelRules;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    myCheckoutDir = FileUtil.createTempDirectory("rulesScanBenchmark", "");
+    final int directories = Math.max(files / MODULES / FILES_PER_DIRECTORY, 1);
+    for (int module = 0; module < MODULES; ++module) {
+      final File moduleDir = new File(myCheckoutDir, "module" + module);
+      for (int dir = 0; dir < directories; ++dir) {
+        if (dir == 0) {
+          createFiles(new File(moduleDir, "build/test-results"), "TEST-", ".xml");
+        } else if (dir < directories / 10) {
+          createFiles(new File(moduleDir, "src/package" + dir), "Source", ".java");
+        } else {
+          createFiles(new File(moduleDir, "node_modules/package" + dir + "/lib"), "index", ".js");
+        }
+      }
+    }
+    myRules = new OptimizingIncludeExcludeRules(myCheckoutDir, RULES);
+    myScanPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    myParallelRules = new OptimizingIncludeExcludeRules(myCheckoutDir, RULES, myScanPool);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    myScanPool.shutdown();
+    FileUtil.delete(myCheckoutDir);
+  }
+
+  @Benchmark
+  public int rulesTrie() {
+    return new OptimizingIncludeExcludeRules(myCheckoutDir, RULES).collectFiles().size();
+  }
+
+  @Benchmark
+  public int rulesTrieParallel() {
+    return new OptimizingIncludeExcludeRules(myCheckoutDir, RULES, myScanPool).collectFiles().size();
+  }
+
+  @Benchmark
+  public int rulesTrieRescan() {
+    return myRules.collectFiles().size();
+  }
+
+  @Benchmark
+  public int rulesTrieParallelRescan() {
+    return myParallelRules.collectFiles().size();
+  }
+
+  @Benchmark
+  public int antPatternFileCollector() {
+    return AntPatternFileCollector.scanDir(myCheckoutDir, RULES.toArray(new String[0]), new AntPatternFileCollector.ScanOption[]{
+      AntPatternFileCollector.ScanOption.USE_RULE_STRICTNESS, AntPatternFileCollector.ScanOption.ALLOW_EXTERNAL_SCAN}).size();
+  }
+
+  private static void createFiles(@NotNull File dir, @NotNull String prefix, @NotNull String suffix) throws IOException {
+    if (!dir.mkdirs()) throw new IOException("Failed to create " + dir);
+    for (int i = 0; i < FILES_PER_DIRECTORY; ++i) {
+      final File file = new File(dir, prefix + i + suffix);
+      if (!file.createNewFile()) throw new IOException("Failed to create " + file);
+    }
+  }
+
+  /**
+   * Accepts the usual JMH command line options, e.g. {@code -p files=100000}
+   */
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+                 .parent(new CommandLineOptions(args))
+                 .include(RulesScanBenchmark.class.getSimpleName())
+                 .build()).run();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Runs the whole {@link OptimizingIncludeExcludeRulesTest} corpus checking that the rules trie finds exactly
+ * the files {@link AntPatternIncludeExcludeRules} finds with {@code AntPatternFileCollector.scanDir}
+ */
+@Test
+public class AntPatternIncludeExcludeRulesTest extends OptimizingIncludeExcludeRulesTest {
+  @NotNull
+  @Override
+  protected Rules createRules(@NotNull final File baseDir, @NotNull final List<String> rules) {
+    final Rules trieRules = new OptimizingIncludeExcludeRules(baseDir, rules);
+    final Rules antPatternRules = new AntPatternIncludeExcludeRules(baseDir, rules);
+    return new Rules() {
+      @NotNull
+      public Collection<String> getBody() {
+        return trieRules.getBody();
+      }
+
+      @NotNull
+      public Collection<File> getPaths() {
+        return trieRules.getPaths();
+      }
+
+      @NotNull
+      public Collection<File> getRootDirectories() {
+        return trieRules.getRootDirectories();
+      }
+
+      @NotNull
+      public Collection<File> collectFiles() {
+        final Collection<File> files = trieRules.collectFiles();
+        assertEquals(getCanonicalPaths(files), getCanonicalPaths(antPatternRules.collectFiles()), "Rules " + rules);
+        return files;
+      }
+
+      @NotNull
+      public Collection<File> collectFiles(@NotNull final Collection<File> directories) {
+        return trieRules.collectFiles(directories);
+      }
+
+      public boolean mayContainMatches(@NotNull final File directory) {
+        return trieRules.mayContainMatches(directory);
+      }
+    };
+  }
+
+  @NotNull
+  private static Set<String> getCanonicalPaths(@NotNull Collection<File> files) {
+    final Set<String> paths = new TreeSet<String>();
+    for (File file : files) {
+      try {
+        paths.add(file.getCanonicalPath());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return paths;
+  }
+}
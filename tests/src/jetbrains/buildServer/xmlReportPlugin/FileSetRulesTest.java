@@ -0,0 +1,58 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FileSetRulesTest extends BaseCommandTestCase {
+  @Test
+  public void testPathsAreAddedOnce() throws Exception {
+    final File file = writeFile("folder/file.xml", false);
+    final FileSetRules rules = new FileSetRules();
+
+    assertTrue(rules.add(file));
+    assertFalse(rules.add(file));
+
+    assertEquals(rules.getPaths(), Arrays.asList(file));
+    assertEquals(rules.getBody(), Arrays.asList(file.getPath()));
+    assertEquals(rules.collectFiles(), Arrays.asList(file));
+  }
+
+  @Test
+  public void testFilesAndDirectoriesAreCollected() throws Exception {
+    final File file = writeFile("folder/file.xml", false);
+    final File first = writeFile("reports/first.xml", false);
+    final File second = writeFile("reports/second.xml", false);
+    final File notYetWritten = new File(myBaseFolder, "other/report.xml");
+
+    final FileSetRules rules = new FileSetRules();
+    rules.add(file);
+    rules.add(first.getParentFile());
+    rules.add(notYetWritten);
+
+    assertEquals(new HashSet<File>(rules.collectFiles()), new HashSet<File>(Arrays.asList(file, first, second, notYetWritten)));
+    assertEquals(new HashSet<File>(rules.getRootDirectories()),
+                 new HashSet<File>(Arrays.asList(file.getParentFile(), first.getParentFile(), notYetWritten.getParentFile())));
+  }
+}
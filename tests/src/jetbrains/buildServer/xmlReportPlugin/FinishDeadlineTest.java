@@ -0,0 +1,286 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrains.buildServer.ExtensionsProvider;
+import jetbrains.buildServer.agent.AgentLifeCycleListener;
+import jetbrains.buildServer.agent.BuildAgentConfiguration;
+import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.agent.duplicates.DuplicatesReporter;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
+import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
+import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jmock.Mockery;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FinishDeadlineTest extends BaseCommandTestCase {
+  private Mockery myContext;
+  private XmlReportPlugin myPlugin;
+  private Rules myRules;
+  private ParseTaskExecutor myExecutor;
+  private StringBuilder myResult;
+  private BuildProgressLogger myLogger;
+  private CountDownLatch myRelease;
+
+  @BeforeMethod
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myContext = new Mockery();
+    myPlugin = new XmlReportPlugin(myContext.mock(ExtensionsProvider.class),
+                                   EventDispatcher.create(AgentLifeCycleListener.class),
+                                   myContext.mock(jetbrains.buildServer.agent.inspections.InspectionReporter.class),
+                                   myContext.mock(DuplicatesReporter.class),
+                                   myContext.mock(BuildAgentConfiguration.class));
+    myRules = myContext.mock(Rules.class);
+    myExecutor = new ParseTaskExecutor(4, 4);
+    myResult = new StringBuilder();
+    myLogger = new BuildLoggerForTesting(myResult);
+    myRelease = new CountDownLatch(1);
+  }
+
+  @AfterMethod
+  public void stopParsing() throws Exception {
+    myRelease.countDown();
+    myExecutor.getWorkers().shutdownNow();
+    myPlugin.agentShutdown();
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testSingleDeadlineForAllContexts() throws Exception {
+    final List<RulesContext> rulesContexts = new ArrayList<RulesContext>();
+    final List<File> reports = new ArrayList<File>();
+    for (int i = 0; i < 3; ++i) {
+      final RulesContext rulesContext = createRulesContext();
+      final File report = writeFile("report" + i + ".xml", false);
+      rulesContext.addParseTask(myExecutor, createStuckParsing(report, rulesContext.getRulesState()));
+      rulesContexts.add(rulesContext);
+      reports.add(report);
+    }
+
+    final long start = System.currentTimeMillis();
+    final FinishDeadline deadline = new FinishDeadline(rulesContexts, 500L, 100L);
+    deadline.waitParsing(rulesContexts, false, myLogger);
+
+    // a deadline per context would take the sum of them
+    assertTrue(System.currentTimeMillis() - start < 2 * (500L + 100L), "Waited for " + (System.currentTimeMillis() - start) + " ms");
+    assertTrue(deadline.isExceeded());
+    for (int i = 0; i < rulesContexts.size(); ++i) {
+      assertTrue(rulesContexts.get(i).getRulesState().getReportState(reports.get(i)) == ReportStateHolder.ReportState.ERROR);
+    }
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testFinalScansRunAtOnce() throws Exception {
+    final int count = 4; // more than the report monitor threads
+    final List<RulesContext> rulesContexts = new ArrayList<RulesContext>();
+    final List<Runnable> scans = new ArrayList<Runnable>();
+    final CountDownLatch running = new CountDownLatch(count);
+    for (int i = 0; i < count; ++i) {
+      rulesContexts.add(createRulesContext());
+      scans.add(new Runnable() {
+        public void run() {
+          running.countDown();
+          try {
+            // completes only if all the scans are running at once
+            running.await();
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+    }
+
+    final FinishDeadline deadline = new FinishDeadline(rulesContexts, TimeUnit.SECONDS.toMillis(10), 100L);
+    deadline.runScans(rulesContexts, scans, count, myLogger);
+
+    assertFalse(deadline.isExceeded());
+    assertEquals(running.getCount(), 0);
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testFinalScanThreadsAreBounded() throws Exception {
+    final List<RulesContext> rulesContexts = new ArrayList<RulesContext>();
+    final List<Runnable> scans = new ArrayList<Runnable>();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger scanned = new AtomicInteger();
+    for (int i = 0; i < 6; ++i) {
+      rulesContexts.add(createRulesContext());
+      scans.add(new Runnable() {
+        public void run() {
+          final int now = running.incrementAndGet();
+          while (true) {
+            final int max = maxRunning.get();
+            if (now <= max || maxRunning.compareAndSet(max, now)) break;
+          }
+          try {
+            Thread.sleep(50L);
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          } finally {
+            running.decrementAndGet();
+          }
+          scanned.incrementAndGet();
+        }
+      });
+    }
+
+    new FinishDeadline(rulesContexts, TimeUnit.SECONDS.toMillis(10), 100L).runScans(rulesContexts, scans, 2, myLogger);
+
+    assertEquals(scanned.get(), 6);
+    assertTrue(maxRunning.get() <= 2, "At most 2 final scans expected, but was " + maxRunning.get());
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testFailedScanDoesNotStopOthers() throws Exception {
+    final List<RulesContext> rulesContexts = Arrays.asList(createRulesContext(), createRulesContext());
+    final CountDownLatch scanned = new CountDownLatch(1);
+    final FinishDeadline deadline = new FinishDeadline(rulesContexts, TimeUnit.SECONDS.toMillis(10), 100L);
+    deadline.runScans(rulesContexts, Arrays.<Runnable>asList(new Runnable() {
+      public void run() {
+        throw new IllegalStateException("scan failed");
+      }
+    }, new Runnable() {
+      public void run() {
+        scanned.countDown();
+      }
+    }), 2, myLogger);
+
+    assertEquals(scanned.getCount(), 0);
+    assertTrue(myResult.toString().contains("Exception occurred while scanning for the reports"), myResult.toString());
+  }
+
+  @Test
+  public void testProgressLine() throws Exception {
+    final List<RulesContext> rulesContexts = Arrays.asList(createRulesContext(), createRulesContext());
+    new FinishDeadline(rulesContexts, 0).waitParsing(rulesContexts, false, myLogger);
+
+    assertContains(myResult, "PROGRESS: Waiting for the report parsing: 0 of 2 report rules are done",
+                   "PROGRESS: Waiting for the report parsing: 1 of 2 report rules are done");
+  }
+
+  @NotNull
+  private RulesContext createRulesContext() {
+    return new RulesContext(myPlugin.new RulesData(myRules, Collections.<String, String>emptyMap(), myTestStartTime),
+                            new RulesState(), null);
+  }
+
+  /**
+   * Parsing which ignores the cancellation
+   */
+  @NotNull
+  private ParseReportCommand createStuckParsing(@NotNull File report, @NotNull RulesState rulesState) {
+    final Parser parser = new Parser() {
+      public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
+        try {
+          myRelease.await();
+        } catch (InterruptedException e) {
+          throw new ParsingException(e);
+        }
+        return true;
+      }
+
+      public ParsingResult getParsingResult() {
+        return EMPTY_RESULT;
+      }
+    };
+    return new ParseReportCommand(report, createParseParameters(), rulesState, new ParserFactory() {
+      @NotNull
+      public String getType() {
+        return "test";
+      }
+
+      @NotNull
+      @Override
+      public ParsingStage getParsingStage() {
+        return ParsingStage.RUNTIME;
+      }
+
+      @NotNull
+      public Parser createParser(@NotNull ParseParameters parameters) {
+        return parser;
+      }
+
+      @NotNull
+      public ParsingResult createEmptyResult() {
+        return EMPTY_RESULT;
+      }
+    }, 0);
+  }
+
+  @NotNull
+  private ParseParameters createParseParameters() {
+    return new ParseParameters() {
+      public boolean isVerbose() {
+        return false;
+      }
+
+      @NotNull
+      public BuildProgressLogger getThreadLogger() {
+        return myLogger;
+      }
+
+      @NotNull
+      public InspectionReporter getInspectionReporter() {
+        throw new IllegalStateException("Unexpected method call");
+      }
+
+      @NotNull
+      public TestReporter getTestReporter() {
+        throw new IllegalStateException("Unexpected method call");
+      }
+
+      @NotNull
+      public DuplicationReporter getDuplicationReporter() {
+        throw new IllegalStateException("Unexpected method call");
+      }
+
+      @NotNull
+      public Map<String, String> getParameters() {
+        return Collections.emptyMap();
+      }
+
+      @NotNull
+      public String getType() {
+        return "test";
+      }
+
+      @NotNull
+      public File getCheckoutDir() {
+        return myBaseFolder;
+      }
+    };
+  }
+}
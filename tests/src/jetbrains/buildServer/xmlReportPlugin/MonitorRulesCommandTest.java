@@ -20,11 +20,21 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParsePermits;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -42,6 +52,9 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
   private RulesState myRulesState;
   private StringBuilder myResult;
   private File myFile;
+  private ReportScanIndex myScanIndex;
+  private Semaphore myProbePermits;
+  private boolean myAccepting;
 
   @BeforeMethod
   @Override
@@ -50,6 +63,9 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
     myFile = writeFile("folder/file.xml", true);
     myRulesState = new RulesState();
     myResult = new StringBuilder();
+    myScanIndex = null;
+    myProbePermits = new Semaphore(ParsePermits.DEFAULT_IO_THREADS);
+    myAccepting = true;
   }
 
   @NotNull
@@ -59,13 +75,15 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
 
   @NotNull
   private MonitorRulesCommand createMonitorRulesCommand(boolean parseOutOfDate, long startTime) {
-    return createMonitorRulesCommand(myRulesState, myResult, parseOutOfDate, startTime);
+    return createMonitorRulesCommand(myRulesState, myResult, parseOutOfDate, startTime, null, null);
   }
     
   @NotNull
   private MonitorRulesCommand createMonitorRulesCommand(@NotNull ReportStateHolder reportStateHolder,
                                                         @NotNull final StringBuilder result,
-                                                        final boolean parseOutOfDate, final long startTime) {
+                                                        final boolean parseOutOfDate, final long startTime,
+                                                        @Nullable ReportSettlePolicy settlePolicy,
+                                                        @Nullable ExecutorService probeExecutor) {
     final List<String> rulesList = Arrays.asList("**/*.xml");
     final Rules rules = new OptimizingIncludeExcludeRules(myBaseFolder, rulesList);
     final MonitorRulesCommand.MonitorRulesParameters parameters = new MonitorRulesCommand.MonitorRulesParameters() {
@@ -102,9 +120,16 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
       public void modificationDetected(@NotNull File file) {
         result.append("DETECTED: ").append(file);
       }
+
+      public boolean isAccepting() {
+        return myAccepting;
+      }
     };
 
-    return new MonitorRulesCommand(parameters, reportStateHolder, false, listener);
+    return new MonitorRulesCommand(parameters, reportStateHolder, false, listener, new MonitorRulesCommand.Options()
+      .withScanIndex(myScanIndex)
+      .withSettlePolicy(settlePolicy)
+      .withProbeExecutor(probeExecutor, myProbePermits));
   }
 
   private void assertFileState(@NotNull ReportStateHolder.ReportState state) {
@@ -133,6 +158,18 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
     assertNotContains(myResult, "MESSAGE: Watching paths:", "##BASE_DIR##/MESSAGE: *.xml", "##BASE_DIR##/MESSAGE: **/*.xml");
   }
 
+  @Test
+  public void testWatchingAddedPaths() throws Exception {
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    command.run();
+
+    myResult.delete(0, myResult.length());
+    command.pathAdded(myFile);
+
+    assertContains(myResult, "MESSAGE: Watching paths:", "MESSAGE: ##BASE_DIR##/folder/file.xml");
+    assertNotContains(myResult, "MESSAGE: **/*.xml");
+  }
+
   @Test
   public void testFileDetected() throws Exception {
     final MonitorRulesCommand command = createMonitorRulesCommand();
@@ -142,6 +179,32 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
     assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
   }
 
+  @Test
+  public void testScanStopsWhileParsingSaturated() throws Exception {
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    myAccepting = false;
+    command.run();
+
+    assertFileNotDetected();
+    assertFileState(ReportStateHolder.ReportState.UNKNOWN);
+
+    myAccepting = true;
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testFinalScanTakesReportsWhileParsingSaturated() throws Exception {
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    myAccepting = false;
+    command.run(true);
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
   @Test
   public void testFileNotDetectedWhenOutOfDate() throws Exception {
     final MonitorRulesCommand command = createMonitorRulesCommand(false, new Date().getTime());
@@ -236,4 +299,188 @@ public class MonitorRulesCommandTest extends BaseCommandTestCase {
     assertFileNotDetected();
     assertFileState(ReportStateHolder.ReportState.ERROR);
   }
+
+  @Test
+  public void testDuplicateDetectedWhenReleased() throws Exception {
+    final Object otherRules = new Object();
+    myScanIndex = new ReportScanIndex(0);
+    assertTrue(myScanIndex.claim(TYPE, myFile, otherRules));
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.DUPLICATE, myFile.lastModified(), myFile.length());
+
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    command.run();
+
+    assertFileNotDetected();
+    assertFileState(ReportStateHolder.ReportState.DUPLICATE);
+
+    myScanIndex.release(otherRules);
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testDuplicateDetectedWhenChanged() throws Exception {
+    myScanIndex = new ReportScanIndex(0);
+    assertTrue(myScanIndex.claim(TYPE, myFile, new Object()));
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.DUPLICATE, myFile.lastModified(), myFile.length());
+
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    writeFile(myFile, true);
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testEmptyFileDetectedWhenWritten() throws Exception {
+    FileUtil.writeFileAndReportErrors(myFile, "");
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    command.run();
+
+    assertFileNotDetected();
+    assertFileState(ReportStateHolder.ReportState.UNKNOWN);
+
+    writeFile(myFile, false);
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+    assertEquals(myRulesState.getLength(myFile), Long.valueOf(myFile.length()));
+    assertEquals(myRulesState.getLastModified(myFile), Long.valueOf(myFile.lastModified()));
+  }
+
+  @Test
+  public void testUnreadableFileDetectedWhenReadable() throws Exception {
+    if (!myFile.setReadable(false) || myFile.canRead()) return; // permissions are not enforced, e.g. for root
+    final MonitorRulesCommand command = createMonitorRulesCommand();
+    command.run();
+
+    assertFileNotDetected();
+    assertFileState(ReportStateHolder.ReportState.UNKNOWN);
+
+    assertTrue(myFile.setReadable(true));
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testPartialFileDetectedWhenSettled() throws Exception {
+    FileUtil.writeFileAndReportErrors(myFile, "<testsuites>\n  <testsuite name=\"suite\">\n");
+    final MonitorRulesCommand command = createMonitorRulesCommand(myRulesState, myResult, true, myTestStartTime, new ReportSettlePolicy(5), null);
+    command.run();
+
+    assertFileNotDetected();
+    assertFileState(ReportStateHolder.ReportState.UNKNOWN);
+
+    FileUtil.writeFileAndReportErrors(myFile, "<testsuites>\n  <testsuite name=\"suite\"></testsuite>\n</testsuites>\n");
+    command.run();
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testPartialFileDetectedOnForcedRun() throws Exception {
+    FileUtil.writeFileAndReportErrors(myFile, "<testsuites>\n");
+    final MonitorRulesCommand command = createMonitorRulesCommand(myRulesState, myResult, true, myTestStartTime, new ReportSettlePolicy(5), null);
+    command.run();
+
+    assertFileNotDetected();
+
+    command.run(true);
+
+    assertFileDetected();
+    assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+  }
+
+  @Test
+  public void testFilesProbedInParallel() throws Exception {
+    final File[] files = new File[10];
+    for (int i = 0; i < files.length; ++i) {
+      files[i] = writeFile("folder/file" + i + ".xml", false);
+    }
+    final File empty = new File(myBaseFolder, "folder/empty.xml");
+    FileUtil.writeFileAndReportErrors(empty, "");
+
+    final ExecutorService probeExecutor = Executors.newFixedThreadPool(4);
+    try {
+      final MonitorRulesCommand command = createMonitorRulesCommand(myRulesState, myResult, true, myTestStartTime, null, probeExecutor);
+      assertTrue(command.run(false));
+
+      assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+      for (File file : files) {
+        assertTrue(myRulesState.getReportState(file) == ReportStateHolder.ReportState.ON_PROCESSING);
+      }
+      assertTrue(myRulesState.getReportState(empty) == ReportStateHolder.ReportState.UNKNOWN);
+    } finally {
+      probeExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelProbesAreBounded() throws Exception {
+    for (int i = 0; i < 10; ++i) {
+      writeFile("folder/file" + i + ".xml", false);
+    }
+    myProbePermits = new Semaphore(2);
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final ExecutorService pool = Executors.newCachedThreadPool();
+    final ExecutorService probeExecutor = new AbstractExecutorService() {
+      public void execute(@NotNull final Runnable command) {
+        pool.execute(new Runnable() {
+          public void run() {
+            final int current = running.incrementAndGet();
+            synchronized (maxRunning) {
+              maxRunning.set(Math.max(maxRunning.get(), current));
+            }
+            try {
+              Thread.sleep(20L);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            command.run();
+          }
+        });
+      }
+
+      public void shutdown() {
+        pool.shutdown();
+      }
+
+      @NotNull
+      public List<Runnable> shutdownNow() {
+        return pool.shutdownNow();
+      }
+
+      public boolean isShutdown() {
+        return pool.isShutdown();
+      }
+
+      public boolean isTerminated() {
+        return pool.isTerminated();
+      }
+
+      public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+      }
+    };
+    try {
+      final MonitorRulesCommand command = createMonitorRulesCommand(myRulesState, myResult, true, myTestStartTime, null, probeExecutor);
+      assertTrue(command.run(false));
+
+      assertFileState(ReportStateHolder.ReportState.ON_PROCESSING);
+      assertTrue(maxRunning.get() <= 2, "At most 2 files are expected to be probed at once, but was " + maxRunning.get());
+      assertEquals(myProbePermits.availablePermits(), 2);
+    } finally {
+      probeExecutor.shutdownNow();
+    }
+  }
 }
@@ -164,6 +164,19 @@ public class OptimizingIncludeExcludeRulesTest extends BaseTestCase {
     assertExclude(rules, createFile("file.txt"));
   }
 
+  @Test
+  public void test_case_insensitive_file_system() throws Exception {
+    if (SystemInfo.isFileSystemCaseSensitive)
+      throw new SkipException("Test is for case insensitive file systems only");
+    final Rules rules = createRules("+:Some/PATH/**/*.XML", "-:some/path/Inner/**");
+
+    assertInclude(rules, createFile("some/path/report.xml"));
+    assertInclude(rules, createFile("SOME/Path/content/report.Xml"));
+
+    assertExclude(rules, createFile("some/path/inner/report.xml"));
+    assertExclude(rules, createFile("some/path/report.txt"));
+  }
+
   @Test
   public void test_absolute_include_exclude() throws Exception {
     final Rules rules = createRules("+:##BASE_DIR##/some/path/**/*", "-:##BASE_DIR##/some/path/content/inner/**/*");
@@ -288,6 +301,58 @@ public class OptimizingIncludeExcludeRulesTest extends BaseTestCase {
     assertExclude(createRules("some/path/**/*", "-:some/path/content/file.txt"), createFile("some/path/content/file.txt"));
   }
 
+  @Test
+  public void test_exclude_subtree() throws Exception {
+    final Rules rules = createRules("+:**/*.xml", "-:**/node_modules/**");
+
+    assertInclude(rules, createFile("report.xml"));
+    assertInclude(rules, createFile("some/path/report.xml"));
+
+    assertExclude(rules, createFile("node_modules/report.xml"));
+    assertExclude(rules, createFile("some/node_modules/path/report.xml"));
+    assertExclude(rules, createFile("some/path/report.txt"));
+  }
+
+  @Test
+  public void test_more_specific_include_in_excluded_subtree() throws Exception {
+    final Rules rules = createRules("+:**/*.xml", "-:some/**", "+:some/path/reports/*.xml");
+
+    assertInclude(rules, createFile("report.xml"));
+    assertInclude(rules, createFile("some/path/reports/report.xml"));
+
+    assertExclude(rules, createFile("some/report.xml"));
+    assertExclude(rules, createFile("some/path/report.xml"));
+  }
+
+  @Test
+  public void test_directory() throws Exception {
+    final Rules rules = createRules("+:some/path", "-:some/path/content/inner");
+
+    assertInclude(rules, createFile("some/path/file.txt"));
+    assertInclude(rules, createFile("some/path/content/file.txt"));
+
+    assertExclude(rules, createFile("some/path/content/inner/file.txt"));
+    assertExclude(rules, createFile("some/file.txt"));
+  }
+
+  @Test
+  public void test_rescan_after_directory_modified() throws Exception {
+    final Rules rules = createRules("+:**/*.xml");
+    final File report = createFile("some/path/report.xml");
+    // listings of the directories modified long ago are reused
+    final long past = System.currentTimeMillis() - 60 * 1000;
+    for (File dir = report.getParentFile(); !dir.equals(myBaseFolder.getParentFile()); dir = dir.getParentFile()) {
+      assertTrue(dir.setLastModified(past));
+    }
+    assertInclude(rules, report);
+
+    assertInclude(rules, createFile("some/path/new.xml"));
+    assertInclude(rules, createFile("some/other/report.xml"));
+
+    FileUtil.delete(report);
+    assertExclude(rules, report);
+  }
+
   @NotNull
   private Rules createRules(@NotNull String... rules) {
     return createRules(myBaseFolder,
@@ -350,7 +415,7 @@ public class OptimizingIncludeExcludeRulesTest extends BaseTestCase {
   }
 
   @NotNull
-  private Rules createRules(@NotNull final File baseDir, @NotNull final List<String> rules) {
+  protected Rules createRules(@NotNull final File baseDir, @NotNull final List<String> rules) {
     return new OptimizingIncludeExcludeRules(baseDir, rules);
   }
 }
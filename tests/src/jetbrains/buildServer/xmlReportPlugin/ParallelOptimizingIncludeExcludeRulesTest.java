@@ -0,0 +1,49 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ParallelOptimizingIncludeExcludeRulesTest extends OptimizingIncludeExcludeRulesTest {
+  private ForkJoinPool myScanPool;
+
+  @BeforeMethod
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myScanPool = new ForkJoinPool(4);
+  }
+
+  @AfterMethod
+  public void shutdownScanPool() {
+    myScanPool.shutdown();
+  }
+
+  @NotNull
+  @Override
+  protected Rules createRules(@NotNull final File baseDir, @NotNull final List<String> rules) {
+    return new OptimizingIncludeExcludeRules(baseDir, rules, myScanPool);
+  }
+}
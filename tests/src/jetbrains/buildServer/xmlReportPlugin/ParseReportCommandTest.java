@@ -17,11 +17,21 @@
 package jetbrains.buildServer.xmlReportPlugin;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import jetbrains.buildServer.agent.BuildProgressLogger;
 import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
+import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.xmlReportPlugin.inspections.InspectionReporter;
+import jetbrains.buildServer.xmlReportPlugin.parsers.BaseXmlXppAbstractParser;
+import jetbrains.buildServer.xmlReportPlugin.tests.TeamCityTestReporter;
 import jetbrains.buildServer.xmlReportPlugin.tests.TestReporter;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParseDeadline;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.testng.annotations.BeforeMethod;
@@ -56,7 +66,7 @@ public class ParseReportCommandTest extends BaseCommandTestCase {
 
   @NotNull
   private ParseReportCommand createParseReportCommand(@NotNull Parser parser) {
-    return new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser));
+    return new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser), 0);
   }
 
   @NotNull
@@ -169,6 +179,170 @@ public class ParseReportCommandTest extends BaseCommandTestCase {
     assertFileState(ReportStateHolder.ReportState.ERROR);
   }
 
+  @Test(timeOut = 30 * 1000)
+  public void testTimedOutParsingRecordedAsError() throws Exception {
+    final Parser parser = new Parser() {
+      private final ParsingResult myParsingResult = createParser(true, false).getParsingResult();
+
+      public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
+        try {
+          while (true) {
+            ParseDeadline.check();
+            Thread.sleep(10L);
+          }
+        } catch (InterruptedIOException e) {
+          // the same as the parsers reading truncated reports
+          return false;
+        } catch (InterruptedException e) {
+          throw new ParsingException(e);
+        }
+      }
+
+      public ParsingResult getParsingResult() {
+        return myParsingResult;
+      }
+    };
+    new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser), 100L).run();
+
+    assertFileState(ReportStateHolder.ReportState.ERROR);
+    final ParsingResult parsingResult = myRulesState.getParsingResult(myFile);
+    assertNotNull(parsingResult);
+    assertTrue(parsingResult.getProblem() instanceof ParsingException);
+    assertTrue(parsingResult.getProblem().getCause() instanceof InterruptedIOException);
+    assertContains(myResult, "PROCESSING RESULT: FILE: ##BASE_DIR##/file.xml RESULT: EMPTY_RESULT");
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testAbandonedParsingResultIsDropped() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Parser parser = new Parser() {
+      private final ParsingResult myParsingResult = createParser(true, false).getParsingResult();
+
+      public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new ParsingException(e);
+        }
+        return true;
+      }
+
+      public ParsingResult getParsingResult() {
+        return myParsingResult;
+      }
+    };
+    final ParseReportCommand command = new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser), 0);
+    final Thread thread = new Thread(command);
+    thread.start();
+    started.await();
+
+    command.abandon("build finish timeout");
+    assertFileState(ReportStateHolder.ReportState.ERROR);
+
+    release.countDown();
+    thread.join();
+    assertFileState(ReportStateHolder.ReportState.ERROR);
+    assertNotContains(myResult, "PROCESSING RESULT: FILE: ##BASE_DIR##/file.xml RESULT: EMPTY_RESULT");
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testSlowlyProcessedReportTimedOut() throws Exception {
+    final StringBuilder report = new StringBuilder("<testsuite>");
+    for (int i = 0; i < 1000; ++i) report.append("<testcase/>");
+    FileUtil.writeFile(myFile, report.append("</testsuite>").toString(), "UTF-8");
+
+    final AtomicInteger processed = new AtomicInteger();
+    final Parser parser = new Parser() {
+      private final ParsingResult myParsingResult = createParser(true, false).getParsingResult();
+
+      public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
+        try {
+          new BaseXmlXppAbstractParser() {
+            @Override
+            protected List<XmlHandler> getRootHandlers() {
+              return Collections.singletonList(checkedElementsPath(new Handler() {
+                public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+                  return reader.visitChildren(checkedElementsPath(new Handler() {
+                    public XmlReturn processElement(@NotNull final XmlElementInfo reader) {
+                      processed.incrementAndGet();
+                      try {
+                        Thread.sleep(10L);
+                      } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                      }
+                      return reader.noDeep();
+                    }
+                  }, "testcase"));
+                }
+              }, "testsuite"));
+            }
+          }.parse(file);
+        } catch (IOException e) {
+          throw new ParsingException(e);
+        }
+        return true;
+      }
+
+      public ParsingResult getParsingResult() {
+        return myParsingResult;
+      }
+    };
+    new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser), 100L).run();
+
+    // the report is read at once, only the per element check stops the parsing
+    assertTrue(processed.get() < 1000);
+    assertFileState(ReportStateHolder.ReportState.ERROR);
+    final ParsingResult parsingResult = myRulesState.getParsingResult(myFile);
+    assertNotNull(parsingResult);
+    assertTrue(parsingResult.getProblem() instanceof ParsingException);
+    assertTrue(parsingResult.getProblem().getCause() instanceof InterruptedIOException);
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testAbandonedParsingReportsAreDropped() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final TestReporter reporter = new TeamCityTestReporter(myLogger, "TEST_PROBLEM", myBaseFolder.getAbsolutePath());
+    final Parser parser = new Parser() {
+      private final ParsingResult myParsingResult = createParser(true, false).getParsingResult();
+
+      public boolean parse(@NotNull File file, @Nullable ParsingResult prevResult) throws ParsingException {
+        reporter.error("before abandon");
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new ParsingException(e);
+        }
+        reporter.openTestSuite("suite");
+        reporter.openTest("test");
+        reporter.testFail("after abandon", null);
+        reporter.closeTest(0);
+        reporter.closeTestSuite();
+        reporter.error("after abandon");
+        return true;
+      }
+
+      public ParsingResult getParsingResult() {
+        return myParsingResult;
+      }
+    };
+    final ParseReportCommand command = new ParseReportCommand(myFile, myParseParameters, myRulesState, createParserFactory(parser), 0);
+    final Thread thread = new Thread(command);
+    thread.start();
+    started.await();
+
+    command.abandon("build finish timeout");
+    release.countDown();
+    thread.join();
+
+    assertContains(myResult, "ERROR: before abandon");
+    assertNotContains(myResult, "TEST FAILED: test", "after abandon", "ERROR: after abandon");
+    assertFileState(ReportStateHolder.ReportState.ERROR);
+  }
+
   @NotNull
   private ParseParameters createParseParameters() {
     return new
@@ -239,7 +413,8 @@ public class ParseReportCommandTest extends BaseCommandTestCase {
 
       @NotNull
       public ParsingResult createEmptyResult() {
-        return EMPTY_RESULT;
+        final ParsingResult result = parser.getParsingResult();
+        return result == null ? EMPTY_RESULT : result;
       }
     };
   }
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.util.StringUtil;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationReporter;
+import jetbrains.buildServer.xmlReportPlugin.duplicates.DuplicationResult;
+import jetbrains.buildServer.xmlReportPlugin.parsers.DeferredActions;
+import jetbrains.buildServer.xmlReportPlugin.utils.ParsePermits;
+import jetbrains.buildServer.xmlReportPlugin.utils.VirtualThreads;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ParseTaskExecutorTest {
+  private ParseTaskExecutor myExecutor;
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (myExecutor != null) myExecutor.getWorkers().shutdownNow();
+  }
+
+  @Test
+  public void testSameFileTasksAreSerialized() throws Exception {
+    myExecutor = new ParseTaskExecutor(4, 4);
+
+    final File file = new File("report.xml");
+    final AtomicInteger running = new AtomicInteger();
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < 20; ++i) {
+      final int n = i;
+      futures.add(myExecutor.submit(this, file, new Runnable() {
+        public void run() {
+          assertEquals(running.incrementAndGet(), 1, "Tasks for the same file must not overlap");
+          order.add(n);
+          running.decrementAndGet();
+        }
+      }));
+    }
+    waitAll(futures);
+
+    for (int i = 0; i < 20; ++i) {
+      assertEquals(order.get(i).intValue(), i);
+    }
+  }
+
+  @Test
+  public void testLanesAreServedRoundRobin() throws Exception {
+    myExecutor = new ParseTaskExecutor(1, 1);
+
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    final Object bigLane = new Object();
+    final Object smallLane = new Object();
+
+    futures.add(myExecutor.submit(bigLane, new File("big0.xml"), new Runnable() {
+      public void run() {
+        try {
+          blocker.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        order.add("big0");
+      }
+    }));
+    for (int i = 1; i < 10; ++i) {
+      futures.add(myExecutor.submit(bigLane, new File("big" + i + ".xml"), record(order, "big" + i)));
+    }
+    futures.add(myExecutor.submit(smallLane, new File("small.xml"), record(order, "small")));
+
+    blocker.countDown();
+    waitAll(futures);
+
+    assertTrue(order.indexOf("small") <= 2, "Small lane must not wait for the whole big lane: " + order);
+  }
+
+  @Test
+  public void testParallelismIsBounded() throws Exception {
+    myExecutor = new ParseTaskExecutor(8, 2);
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < 30; ++i) {
+      futures.add(myExecutor.submit(this, new File("file" + i + ".xml"), new Runnable() {
+        public void run() {
+          final int current = running.incrementAndGet();
+          synchronized (maxRunning) {
+            if (current > maxRunning.get()) maxRunning.set(current);
+          }
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          running.decrementAndGet();
+        }
+      }));
+    }
+    waitAll(futures);
+
+    assertTrue(maxRunning.get() <= 2, "At most 2 parsing tasks expected, but was " + maxRunning.get());
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testSubmitBlocksWhenQueueIsFull() throws Exception {
+    myExecutor = new ParseTaskExecutor(1, 1, new ParseTaskExecutor.Options().withCapacity(2));
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final List<Future<?>> futures = Collections.synchronizedList(new ArrayList<Future<?>>());
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    futures.add(myExecutor.submit(this, new File("running.xml"), new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          blocker.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }));
+    started.await();
+    futures.add(myExecutor.submit(this, new File("pending1.xml"), record(order, "pending1")));
+    futures.add(myExecutor.submit(this, new File("pending2.xml"), record(order, "pending2")));
+
+    final Thread submitter = new Thread(new Runnable() {
+      public void run() {
+        futures.add(myExecutor.submit(ParseTaskExecutorTest.this, new File("blocked.xml"), record(order, "blocked")));
+      }
+    });
+    submitter.start();
+    submitter.join(300);
+    assertTrue(submitter.isAlive(), "Submission is expected to wait while the queue is full");
+
+    blocker.countDown();
+    submitter.join();
+    waitAll(new ArrayList<Future<?>>(futures));
+    assertEquals(order, Arrays.asList("pending1", "pending2", "blocked"));
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testOfferDoesNotBlockWhenQueueIsFull() throws Exception {
+    myExecutor = new ParseTaskExecutor(1, 1, new ParseTaskExecutor.Options().withCapacity(1));
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    futures.add(myExecutor.offer(this, new File("running.xml"), new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          blocker.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }));
+    started.await();
+    assertFalse(myExecutor.isSaturated());
+
+    futures.add(myExecutor.offer(this, new File("pending.xml"), record(order, "pending")));
+    assertTrue(myExecutor.isSaturated());
+    futures.add(myExecutor.offer(this, new File("offered.xml"), record(order, "offered")));
+
+    blocker.countDown();
+    waitAll(futures);
+    assertFalse(myExecutor.isSaturated());
+    assertEquals(order, Arrays.asList("pending", "offered"));
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testFifoByDefault() throws Exception {
+    myExecutor = new ParseTaskExecutor(1, 1);
+    final File dir = FileUtil.createTempDirectory("parseOrder", "");
+    try {
+      final File big = writeReport(dir, "big.xml", "<testsuite failures=\"0\" errors=\"0\">" + StringUtil.repeat(" ", 1000) + "</testsuite>");
+      final File failed = writeReport(dir, "failed.xml", "<testsuite failures=\"2\" errors=\"0\"></testsuite>");
+
+      final CountDownLatch blocker = new CountDownLatch(1);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+      futures.add(myExecutor.submit(this, new File("running.xml"), new Runnable() {
+        public void run() {
+          try {
+            blocker.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }));
+      futures.add(myExecutor.submit(this, big, record(order, "big")));
+      futures.add(myExecutor.submit(this, failed, record(order, "failed")));
+      blocker.countDown();
+      waitAll(futures);
+
+      assertEquals(order, Arrays.asList("big", "failed"));
+    } finally {
+      FileUtil.delete(dir);
+    }
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testFailuresAndSmallReportsFirst() throws Exception {
+    myExecutor = new ParseTaskExecutor(1, 1);
+    myExecutor.setOrder(ParseTaskExecutor.ParseOrder.FAILURES_FIRST);
+    final File dir = FileUtil.createTempDirectory("parseOrder", "");
+    try {
+      final File big = writeReport(dir, "big.xml", "<testsuite failures=\"0\" errors=\"0\">" + StringUtil.repeat(" ", 1000) + "</testsuite>");
+      final File small = writeReport(dir, "small.xml", "<testsuite failures=\"0\"></testsuite>");
+      final File failed = writeReport(dir, "failed.xml", "<testsuite failures=\"2\" errors=\"0\">" + StringUtil.repeat(" ", 2000) + "</testsuite>");
+
+      final CountDownLatch blocker = new CountDownLatch(1);
+      final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+      futures.add(myExecutor.submit(this, new File("running.xml"), new Runnable() {
+        public void run() {
+          try {
+            blocker.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }));
+      futures.add(myExecutor.submit(this, big, record(order, "big")));
+      futures.add(myExecutor.submit(this, small, record(order, "small")));
+      futures.add(myExecutor.submit(this, failed, record(order, "failed")));
+      futures.add(myExecutor.submit(this, big, record(order, "big again")));
+      blocker.countDown();
+      waitAll(futures);
+
+      assertEquals(order, Arrays.asList("failed", "small", "big", "big again"));
+    } finally {
+      FileUtil.delete(dir);
+    }
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testParallelismBoundsGivenWorkers() throws Exception {
+    ExecutorService workers = VirtualThreads.newThreadPerTaskExecutor("parse-test");
+    if (workers == null) workers = Executors.newCachedThreadPool();
+    myExecutor = new ParseTaskExecutor(8, 2, new ParseTaskExecutor.Options().withWorkers(workers));
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < 10; ++i) {
+      futures.add(myExecutor.submit(this, new File("report" + i + ".xml"), new Runnable() {
+        public void run() {
+          final int current = running.incrementAndGet();
+          synchronized (maxRunning) {
+            maxRunning.set(Math.max(maxRunning.get(), current));
+          }
+          try {
+            Thread.sleep(50L);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } finally {
+            running.decrementAndGet();
+          }
+        }
+      }));
+    }
+    waitAll(futures);
+
+    assertEquals(maxRunning.get(), 2);
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testReadsOverlapParsingOnGivenWorkers() throws Exception {
+    ExecutorService workers = VirtualThreads.newThreadPerTaskExecutor("parse-test");
+    if (workers == null) workers = Executors.newCachedThreadPool();
+    myExecutor = new ParseTaskExecutor(8, 1, new ParseTaskExecutor.Options().withWorkers(workers).withIoThreads(4));
+
+    final AtomicInteger parsing = new AtomicInteger();
+    final AtomicInteger maxParsing = new AtomicInteger();
+    final AtomicInteger reading = new AtomicInteger();
+    final AtomicInteger maxReading = new AtomicInteger();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < 8; ++i) {
+      futures.add(myExecutor.submit(this, new File("report" + i + ".xml"), new Runnable() {
+        public void run() {
+          track(parsing, maxParsing, 5L);
+          ParsePermits.beginIo();
+          try {
+            track(reading, maxReading, 100L);
+          } finally {
+            ParsePermits.endIo();
+          }
+          track(parsing, maxParsing, 5L);
+        }
+      }));
+    }
+    waitAll(futures);
+    final long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals(maxParsing.get(), 1);
+    assertTrue(maxReading.get() > 1 && maxReading.get() <= 4, "From 2 to 4 reports are expected to be read at once, but was " + maxReading.get());
+    assertTrue(elapsed < 8 * 100L, "Reading is expected to overlap, but took " + elapsed + " ms");
+  }
+
+  private static void track(@NotNull AtomicInteger running, @NotNull AtomicInteger maxRunning, long time) {
+    final int current = running.incrementAndGet();
+    synchronized (maxRunning) {
+      maxRunning.set(Math.max(maxRunning.get(), current));
+    }
+    try {
+      Thread.sleep(time);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } finally {
+      running.decrementAndGet();
+    }
+  }
+
+  @Test(timeOut = 30 * 1000)
+  public void testDeferredCommitsDoNotInterleave() throws Exception {
+    final int reports = 8;
+    final int duplicates = 5;
+    final long parseTime = 20L;
+    myExecutor = new ParseTaskExecutor(4, 4);
+
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    final DuplicationReporter agentReporter = recordDuplicates(events);
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < reports; ++i) {
+      final int report = i;
+      futures.add(myExecutor.submit(this, new File("cpd" + i + ".xml"), new Runnable() {
+        public void run() {
+          final DeferredActions actions = new DeferredActions();
+          final DuplicationReporter reporter = actions.defer(agentReporter);
+          reporter.startDuplicates();
+          for (int d = 0; d < duplicates; ++d) {
+            try {
+              Thread.sleep(parseTime);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            reporter.reportDuplicate(new DuplicationResult(report, d));
+          }
+          reporter.finishDuplicates();
+          actions.complete();
+          actions.commit();
+        }
+      }));
+    }
+    waitAll(futures);
+    final long elapsed = System.currentTimeMillis() - start;
+
+    assertTrue(elapsed < reports * duplicates * parseTime / 2, "Reports are expected to be parsed in parallel, but took " + elapsed + " ms");
+    assertEquals(events.size(), reports * (duplicates + 2));
+    for (int i = 0; i < events.size(); i += duplicates + 2) {
+      assertEquals(events.get(i), "start", "Duplicates of a report must not interleave with others: " + events);
+      final String report = events.get(i + 1).split(":")[0];
+      for (int d = 0; d < duplicates; ++d) {
+        assertEquals(events.get(i + 1 + d), report + ":" + d, "Duplicates of a report must not interleave with others: " + events);
+      }
+      assertEquals(events.get(i + duplicates + 1), "finish", "Duplicates of a report must not interleave with others: " + events);
+    }
+  }
+
+  @NotNull
+  private static DuplicationReporter recordDuplicates(@NotNull final List<String> events) {
+    return new DuplicationReporter() {
+      public void startDuplicates() {
+        events.add("start");
+      }
+
+      public void reportDuplicate(@NotNull DuplicationResult duplicate) {
+        events.add(duplicate.getLines() + ":" + duplicate.getTokens());
+      }
+
+      public void finishDuplicates() {
+        events.add("finish");
+      }
+
+      public void info(@NotNull String message) {
+      }
+
+      public void warning(@NotNull String message) {
+      }
+
+      public void error(@NotNull String message) {
+      }
+
+      public void failure(@NotNull String message) {
+      }
+    };
+  }
+
+  @NotNull
+  private static File writeReport(@NotNull File dir, @NotNull String name, @NotNull String content) throws Exception {
+    final File report = new File(dir, name);
+    FileUtil.writeFileAndReportErrors(report, content);
+    return report;
+  }
+
+  @NotNull
+  private static Runnable record(@NotNull final List<String> order, @NotNull final String name) {
+    return new Runnable() {
+      public void run() {
+        order.add(name);
+      }
+    };
+  }
+
+  private static void waitAll(@NotNull List<Future<?>> futures) throws Exception {
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class PollingSchedulerTest {
+  private ScheduledExecutorService myExecutor;
+  private AtomicInteger myScans;
+
+  @BeforeMethod
+  public void setUp() {
+    myExecutor = Executors.newScheduledThreadPool(2);
+    myScans = new AtomicInteger();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    myExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testIntervalBacksOffWhileNothingFound() {
+    final PollingScheduler scheduler = createScheduler(500, 3000, null);
+    assertEquals(scheduler.nextInterval(false), 500);
+    assertEquals(scheduler.nextInterval(false), 1000);
+    assertEquals(scheduler.nextInterval(false), 2000);
+    assertEquals(scheduler.nextInterval(false), 3000);
+    assertEquals(scheduler.nextInterval(false), 3000);
+
+    assertEquals(scheduler.nextInterval(true), 500);
+    assertEquals(scheduler.nextInterval(false), 1000);
+  }
+
+  @Test(timeOut = 10 * 1000)
+  public void testWakeUpStartsScanRightAway() throws Exception {
+    final PollingScheduler scheduler = createScheduler(60 * 1000, 60 * 1000, null);
+    scheduler.start();
+    waitForScans(1);
+
+    scheduler.wakeUp();
+    waitForScans(2);
+
+    scheduler.stop();
+  }
+
+  @Test(timeOut = 10 * 1000)
+  public void testStopWaitsForRunningScan() throws Exception {
+    final CountDownLatch scanStarted = new CountDownLatch(1);
+    final CountDownLatch scanFinished = new CountDownLatch(1);
+    final PollingScheduler scheduler = createScheduler(1, 1, new Runnable() {
+      public void run() {
+        scanStarted.countDown();
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ignored) {
+        }
+        scanFinished.countDown();
+      }
+    });
+    scheduler.start();
+    scanStarted.await();
+
+    scheduler.stop();
+    assertEquals(scanFinished.getCount(), 0);
+
+    final int scans = myScans.get();
+    Thread.sleep(100);
+    assertEquals(myScans.get(), scans);
+  }
+
+  @Test(timeOut = 10 * 1000)
+  public void testStopWaitsUntilDeadline() throws Exception {
+    final CountDownLatch scanStarted = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final PollingScheduler scheduler = createScheduler(1, 1, new Runnable() {
+      public void run() {
+        scanStarted.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ignored) {
+        }
+      }
+    });
+    scheduler.start();
+    scanStarted.await();
+
+    final long start = System.currentTimeMillis();
+    assertFalse(scheduler.stop(start + 200));
+    assertTrue(System.currentTimeMillis() - start < 5000);
+
+    release.countDown();
+    assertTrue(scheduler.stop(System.currentTimeMillis() + 5000));
+  }
+
+  @NotNull
+  private PollingScheduler createScheduler(long minInterval, long maxInterval, @Nullable final Runnable scanAction) {
+    return new PollingScheduler(myExecutor, new PollingScheduler.Scan() {
+      public boolean scan() {
+        myScans.incrementAndGet();
+        if (scanAction != null) scanAction.run();
+        return false;
+      }
+    }, minInterval, maxInterval);
+  }
+
+  private void waitForScans(int scans) throws InterruptedException {
+    while (myScans.get() < scans) {
+      Thread.sleep(10);
+    }
+  }
+}
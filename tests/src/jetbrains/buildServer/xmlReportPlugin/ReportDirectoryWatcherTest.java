@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ReportDirectoryWatcherTest extends BaseCommandTestCase {
+  private ReportDirectoryWatcher myWatcher;
+
+  @AfterMethod
+  public void closeWatcher() {
+    if (myWatcher != null) myWatcher.close();
+  }
+
+  @Test
+  public void testChangesDetected() throws Exception {
+    final File reports = new File(myBaseFolder, "reports");
+    assertTrue(reports.mkdirs());
+
+    final Rules rules = new OptimizingIncludeExcludeRules(myBaseFolder, Collections.singletonList("reports/**/*.xml"));
+    myWatcher = new ReportDirectoryWatcher(rules);
+    assertNull(myWatcher.pollChangedDirectories(), "Initial check must require a full scan");
+    assertTrue(myWatcher.pollChangedDirectories().isEmpty());
+
+    writeFile("reports/nested/report.xml", false);
+    Collection<File> changed = waitForChanges();
+    assertTrue(changed.contains(new File(reports, "nested")), "Created subdirectory must be rescanned: " + changed);
+    assertEquals(rules.collectFiles(changed), Collections.singletonList(new File(reports, "nested/report.xml")));
+
+    writeFile("reports/nested/another.xml", false);
+    changed = waitForChanges();
+    assertTrue(changed.contains(new File(reports, "nested")), "Changes in a created subdirectory must be detected: " + changed);
+  }
+
+  @Test
+  public void testExcludedDirectoriesNotWatched() throws Exception {
+    final File excluded = new File(myBaseFolder, "reports/node_modules");
+    assertTrue(excluded.mkdirs());
+
+    final Rules rules = new OptimizingIncludeExcludeRules(myBaseFolder, Arrays.asList("+:reports/**/*.xml", "-:reports/node_modules/**"));
+    assertFalse(rules.mayContainMatches(excluded));
+    myWatcher = new ReportDirectoryWatcher(rules);
+    assertNull(myWatcher.pollChangedDirectories());
+
+    writeFile("reports/node_modules/package.xml", false);
+    writeFile("reports/report.xml", false);
+    final Collection<File> changed = waitForChanges();
+    assertFalse(changed.contains(excluded), "Excluded directory must not be watched: " + changed);
+    assertEquals(rules.collectFiles(changed), Collections.singletonList(new File(myBaseFolder, "reports/report.xml")));
+  }
+
+  @Test
+  public void testNotExistingRootIsRegisteredOnceCreated() throws Exception {
+    final File root = new File(myBaseFolder, "not-yet-created");
+    myWatcher = new ReportDirectoryWatcher(new OptimizingIncludeExcludeRules(myBaseFolder, Collections.singletonList("not-yet-created/*.xml")));
+    assertNull(myWatcher.pollChangedDirectories());
+    assertTrue(myWatcher.pollChangedDirectories().isEmpty(), "Not existing root must not cause full scans");
+
+    writeFile("not-yet-created/report.xml", false);
+    assertTrue(waitForChanges().contains(root));
+  }
+
+  @Test
+  public void testOnlyRootWhichCanNotBeWatchedIsPolled() throws Exception {
+    final File watched = new File(myBaseFolder, "watched");
+    final File polled = new File(myBaseFolder, "polled");
+    assertTrue(watched.mkdirs());
+    assertTrue(new File(polled, "nested").mkdirs());
+
+    final Rules rules = new OptimizingIncludeExcludeRules(myBaseFolder, Arrays.asList("watched/**/*.xml", "polled/**/*.xml"));
+    myWatcher = new ReportDirectoryWatcher(rules) {
+      @NotNull
+      @Override
+      WatchKey registerDirectory(@NotNull Path dir, @NotNull WatchService watchService) throws IOException {
+        if (dir.toFile().equals(new File(polled, "nested"))) throw new IOException("watch limit reached");
+        return super.registerDirectory(dir, watchService);
+      }
+    };
+    assertNull(myWatcher.pollChangedDirectories());
+    assertEquals(new HashSet<File>(myWatcher.pollChangedDirectories()), new HashSet<File>(Arrays.asList(polled, new File(polled, "nested"))),
+                 "Only the root which can not be watched must be rescanned");
+
+    writeFile("watched/report.xml", false);
+    final Collection<File> changed = waitForChanges(watched);
+    assertTrue(changed.contains(polled), "Root which can not be watched must be rescanned on every check: " + changed);
+  }
+
+  @Test
+  public void testRootDirectories() throws Exception {
+    final Rules rules = new OptimizingIncludeExcludeRules(myBaseFolder, Arrays.asList("+:reports/**/*.xml", "-:reports/skip/**", "other/TEST-*.xml", "**/*.trx"));
+    assertEquals(rules.getRootDirectories().size(), 3, "Exclude rules must not add roots: " + rules.getRootDirectories());
+    assertTrue(rules.getRootDirectories().contains(myBaseFolder));
+  }
+
+  @NotNull
+  private Collection<File> waitForChanges() throws InterruptedException {
+    return waitForChanges(null);
+  }
+
+  @NotNull
+  private Collection<File> waitForChanges(@Nullable File directory) throws InterruptedException {
+    for (int i = 0; i < 300; ++i) {
+      final Collection<File> changed = myWatcher.pollChangedDirectories();
+      assertNotNull(changed, "Watcher must not fall back to polling");
+      if (directory == null ? !changed.isEmpty() : changed.contains(directory)) return changed;
+      Thread.sleep(50L);
+    }
+    fail("No changes detected");
+    return Collections.emptyList();
+  }
+}
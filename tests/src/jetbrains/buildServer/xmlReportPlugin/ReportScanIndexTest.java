@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ReportScanIndexTest extends BaseCommandTestCase {
+  private ReportScanIndex myIndex;
+  private File myFile;
+
+  @BeforeMethod
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myFile = writeFile("folder/file.xml", false);
+    myIndex = new ReportScanIndex(60 * 1000L);
+  }
+
+  @Test
+  public void testEqualRulesAreScannedOnce() throws Exception {
+    final CountingRules first = new CountingRules(myFile.getParentFile());
+    final CountingRules second = new CountingRules(myFile.getParentFile());
+
+    assertEquals(myIndex.collectFiles(first, false), Collections.singletonList(myFile));
+    assertEquals(myIndex.collectFiles(second, false), Collections.singletonList(myFile));
+    assertEquals(first.myScans + second.myScans, 1);
+  }
+
+  @Test
+  public void testForcedScanSeesNewReports() throws Exception {
+    final CountingRules rules = new CountingRules(myFile.getParentFile());
+    myIndex.collectFiles(rules, false);
+
+    final File newFile = writeFile("folder/new.xml", false);
+    assertEquals(myIndex.collectFiles(rules, false).size(), 1);
+    assertEquals(new ArrayList<File>(myIndex.collectFiles(rules, true)).size(), 2);
+    assertTrue(myIndex.collectFiles(rules, false).contains(newFile));
+    assertEquals(rules.myScans, 2);
+  }
+
+  @Test
+  public void testReportIsClaimedOncePerType() throws Exception {
+    final Object first = new Object();
+    final Object second = new Object();
+
+    assertTrue(myIndex.claim("junit", myFile, first));
+    assertTrue(myIndex.claim("junit", myFile, first));
+    assertFalse(myIndex.claim("junit", myFile, second));
+    assertTrue(myIndex.claim("nunit", myFile, second));
+
+    myIndex.release(first);
+    assertFalse(myIndex.isClaimed("junit", myFile));
+    assertTrue(myIndex.claim("junit", myFile, second));
+    assertTrue(myIndex.isClaimed("junit", myFile));
+  }
+
+  private static final class CountingRules implements Rules {
+    @NotNull
+    private final FileRules myRules;
+    private int myScans;
+
+    private CountingRules(@NotNull File dir) {
+      myRules = new FileRules(dir);
+    }
+
+    @NotNull
+    public Collection<String> getBody() {
+      return myRules.getBody();
+    }
+
+    @NotNull
+    public Collection<File> getPaths() {
+      return myRules.getPaths();
+    }
+
+    @NotNull
+    public Collection<File> getRootDirectories() {
+      return myRules.getRootDirectories();
+    }
+
+    @NotNull
+    public Collection<File> collectFiles() {
+      ++myScans;
+      return myRules.collectFiles();
+    }
+
+    @NotNull
+    public Collection<File> collectFiles(@NotNull Collection<File> directories) {
+      return myRules.collectFiles(directories);
+    }
+
+    public boolean mayContainMatches(@NotNull File directory) {
+      return myRules.mayContainMatches(directory);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof CountingRules && myRules.equals(((CountingRules)o).myRules);
+    }
+
+    @Override
+    public int hashCode() {
+      return myRules.hashCode();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.Collections;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ReportSettlePolicyTest extends BaseCommandTestCase {
+  private ReportSettlePolicy myPolicy;
+  private File myFile;
+
+  @BeforeMethod
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myFile = new File(myBaseFolder, "report.xml");
+    myPolicy = new ReportSettlePolicy(2);
+  }
+
+  @Test
+  public void testCompleteReportIsSettledAtOnce() throws Exception {
+    write("<?xml version=\"1.0\"?>\n<testsuites>\n  <testsuite name=\"suite\"></testsuite>\n</testsuites>\n");
+    assertTrue(isSettled());
+    assertFalse(myPolicy.isSettling());
+  }
+
+  @Test
+  public void testReportIsSettledWhenNotChanging() throws Exception {
+    write("<testsuites>\n  <testsuite name=\"suite\"></testsuite>\n");
+    assertFalse(isSettled());
+    assertFalse(isSettled());
+    assertTrue(myPolicy.isSettling());
+    assertTrue(isSettled());
+    assertFalse(myPolicy.isSettling());
+  }
+
+  @Test
+  public void testChangeRestartsSettling() throws Exception {
+    write("<testsuites>\n");
+    assertFalse(isSettled());
+    assertFalse(isSettled());
+
+    write("<testsuites>\n  <testsuite name=\"suite\">\n");
+    assertFalse(myPolicy.isSettled(myFile, myFile.lastModified(), myFile.length() + 1));
+    assertFalse(isSettled());
+
+    write("<testsuites>\n  <testsuite name=\"suite\"></testsuite>\n</testsuites>");
+    assertTrue(isSettled());
+  }
+
+  @Test
+  public void testRemovedReportIsForgotten() throws Exception {
+    write("<testsuites>\n");
+    assertFalse(isSettled());
+
+    myPolicy.retain(Collections.<File>emptyList());
+    assertFalse(myPolicy.isSettling());
+  }
+
+  private void write(@NotNull String content) throws Exception {
+    FileUtil.writeFileAndReportErrors(myFile, content);
+  }
+
+  private boolean isSettled() {
+    return myPolicy.isSettled(myFile, myFile.lastModified(), myFile.length());
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin;
+
+import java.io.File;
+import java.util.Collections;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class RulesStateTest extends BaseCommandTestCase {
+  private RulesState myRulesState;
+  private File myFile;
+
+  @BeforeMethod
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myFile = writeFile("folder/file.xml", false);
+    myRulesState = new RulesState();
+  }
+
+  @Test
+  public void testOnlyOneDetectorWinsBrandNewReport() {
+    assertNull(myRulesState.getFileState(myFile));
+
+    assertTrue(myRulesState.compareAndSetReportState(myFile, null, ReportStateHolder.ReportState.ON_PROCESSING, 1, 2));
+    assertFalse(myRulesState.compareAndSetReportState(myFile, null, ReportStateHolder.ReportState.ON_PROCESSING, 1, 2));
+
+    final ReportStateHolder.FileState state = myRulesState.getFileState(myFile);
+    assertNotNull(state);
+    assertEquals(state.getReportState(), ReportStateHolder.ReportState.ON_PROCESSING);
+    assertEquals(state.getLastModified(), 1);
+    assertEquals(state.getLength(), 2);
+  }
+
+  @Test
+  public void testStaleSnapshotIsRejected() {
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ERROR, 1, 2);
+    final ReportStateHolder.FileState stale = myRulesState.getFileState(myFile);
+
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.PROCESSED, EMPTY_RESULT);
+
+    assertFalse(myRulesState.compareAndSetReportState(myFile, stale, ReportStateHolder.ReportState.ON_PROCESSING, 3, 4));
+    assertEquals(myRulesState.getReportState(myFile), ReportStateHolder.ReportState.PROCESSED);
+  }
+
+  @Test
+  public void testParsingResultIsKeptOnRedetection() {
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ERROR, EMPTY_RESULT);
+
+    assertTrue(myRulesState.compareAndSetReportState(myFile, myRulesState.getFileState(myFile), ReportStateHolder.ReportState.ON_PROCESSING, 3, 4));
+    assertSame(myRulesState.getParsingResult(myFile), EMPTY_RESULT);
+  }
+
+  @Test
+  public void testSummaryFollowsStateChanges() throws Exception {
+    final File other = writeFile("folder/other.xml", false);
+
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ON_PROCESSING, 1, 2);
+    myRulesState.setReportState(other, ReportStateHolder.ReportState.OUT_OF_DATE, 1, 2);
+    assertEquals(myRulesState.getReportCount(ReportStateHolder.ReportState.ON_PROCESSING), 1);
+    assertEquals(myRulesState.getOutOfDateFiles(), Collections.singletonList(other));
+
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.ERROR, EMPTY_RESULT);
+    assertEquals(myRulesState.getReportCount(ReportStateHolder.ReportState.ON_PROCESSING), 0);
+    assertEquals(myRulesState.getFailedToProcessFiles(), Collections.singletonMap(myFile, EMPTY_RESULT));
+    assertTrue(myRulesState.getProcessedFiles().isEmpty());
+
+    myRulesState.setReportState(myFile, ReportStateHolder.ReportState.PROCESSED, EMPTY_RESULT);
+    myRulesState.setReportState(other, ReportStateHolder.ReportState.PROCESSED, EMPTY_RESULT);
+    assertEquals(myRulesState.getReportCount(ReportStateHolder.ReportState.PROCESSED), 2);
+    assertEquals(myRulesState.getReportCount(ReportStateHolder.ReportState.ERROR), 0);
+    assertTrue(myRulesState.getOutOfDateFiles().isEmpty());
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.parsers.findBugs;
+
+import java.io.File;
+import java.util.List;
+import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.xmlReportPlugin.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class FindBugsPluginCatalogTest {
+  @Test
+  public void testPluginDescriptionsAreLoadedOnce() throws Exception {
+    final File findBugsHome = TestUtil.getTestDataFile(null, "findBugs");
+    final FindBugsPluginCatalog catalog = new FindBugsPluginCatalog();
+
+    final List<FindBugsPluginCatalog.Plugin> plugins = catalog.getPlugins(findBugsHome);
+    Assert.assertEquals(plugins.size(), 1);
+
+    final FindBugsPluginCatalog.Plugin core = plugins.get(0);
+    Assert.assertFalse(core.isLoadFailed());
+    final BugDescriptions.NameAndDescritionInfo category = core.getDescriptions().getCategory("CORRECTNESS");
+    Assert.assertNotNull(category);
+    Assert.assertEquals(category.getName(), "Correctness");
+
+    Assert.assertSame(catalog.getPlugins(findBugsHome).get(0), core);
+  }
+
+  @Test
+  public void testBrokenPluginIsReadAgain() throws Exception {
+    final File findBugsHome = FileUtil.createTempDirectory("findBugs", "");
+    try {
+      final File jar = new File(findBugsHome, "plugin/broken.jar");
+      Assert.assertTrue(jar.getParentFile().mkdirs());
+      FileUtil.writeFileAndReportErrors(jar, "not a jar");
+      final FindBugsPluginCatalog catalog = new FindBugsPluginCatalog();
+
+      final FindBugsPluginCatalog.Plugin broken = catalog.getPlugins(findBugsHome).get(0);
+      Assert.assertTrue(broken.isLoadFailed());
+      Assert.assertNotSame(catalog.getPlugins(findBugsHome).get(0), broken, "Failed load must not be cached");
+    } finally {
+      FileUtil.delete(findBugsHome);
+    }
+  }
+}
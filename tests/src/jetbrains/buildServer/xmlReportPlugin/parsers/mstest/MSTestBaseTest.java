@@ -92,6 +92,11 @@ public class MSTestBaseTest {
     doTest("vs2010.trx", "vs2010.trx.gold");
   }
 
+  @Test
+  public void test_VS2010_resultsBeforeDefinitions() throws IOException {
+    doTest("vs2010-resultsFirst.trx", "vs2010-resultsFirst.trx.gold");
+  }
+
   @Test
   public void test_TW_10011() throws IOException {
     doTest("tw-10011.trx", "tw-10011.trx.gold");
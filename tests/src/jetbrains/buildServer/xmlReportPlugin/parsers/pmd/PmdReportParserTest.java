@@ -18,9 +18,12 @@ package jetbrains.buildServer.xmlReportPlugin.parsers.pmd;
 
 import jetbrains.buildServer.xmlReportPlugin.BaseParserTestCase;
 import jetbrains.buildServer.xmlReportPlugin.Parser;
+import jetbrains.buildServer.xmlReportPlugin.ParsingException;
 import org.jetbrains.annotations.NotNull;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertFalse;
+
 @Test
 public class PmdReportParserTest extends BaseParserTestCase {
   private static final String TYPE = "pmd";
@@ -71,6 +74,19 @@ public class PmdReportParserTest extends BaseParserTestCase {
     runTest("xml-xxe-url.xml");
   }
 
+  @Test
+  public void testTruncatedReportNotReported() throws Exception {
+    // The violation is complete, but the report root is not closed yet
+    assertFalse(getParser().parse(getReport("truncated.xml"), null));
+    assertResultEquals("");
+  }
+
+  @Test(expectedExceptions = ParsingException.class)
+  public void testMalformedReportFails() throws Exception {
+    // The report root is closed, so it is not going to be completed later
+    getParser().parse(getReport("malformed.xml"), null);
+  }
+
   private void runTest(final String reportName) throws Exception {
     parse(reportName);
     assertResultEquals(getExpectedResult(reportName + ".gold"));
@@ -18,7 +18,9 @@ package jetbrains.buildServer.xmlReportPlugin.utils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import jetbrains.buildServer.util.FileUtil;
 import jetbrains.buildServer.xmlReportPlugin.TestUtil;
+import org.jetbrains.annotations.NotNull;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -60,6 +62,42 @@ public class ParserUtilsTest {
     doTestReportComplete("xml-bomb.xml", false);
   }
 
+  @Test
+  public void testHasDocumentTypeDeclaration() throws Exception {
+    Assert.assertFalse(ParserUtils.hasDocumentTypeDeclaration(getReport("simple.xml")));
+    Assert.assertTrue(ParserUtils.hasDocumentTypeDeclaration(getReport("xml-bomb.xml")));
+    Assert.assertTrue(ParserUtils.hasDocumentTypeDeclaration(getReport("xml-xxe-file.xml")));
+  }
+
+  @Test
+  public void testEndsWithEndTag() throws Exception {
+    final File report = getReport("simple.xml");
+    Assert.assertEquals(ParserUtils.getRootElementName(report), "pmd");
+    Assert.assertTrue(ParserUtils.endsWithEndTag(report, "pmd"));
+    Assert.assertFalse(ParserUtils.endsWithEndTag(report, "file"));
+    Assert.assertNull(ParserUtils.getRootElementName(getReport("xml-bomb.xml")));
+  }
+
+  @Test
+  public void testIsFailureAdvertised() throws Exception {
+    Assert.assertTrue(isFailureAdvertised("<?xml version=\"1.0\"?>\n<testsuite name=\"a\" tests=\"3\" failures=\"1\" errors=\"0\">"));
+    Assert.assertTrue(isFailureAdvertised("<test-run id=\"2\" result='Failed' failed='12'>"));
+    Assert.assertTrue(isFailureAdvertised("<test-results errors = \"01\" >"));
+    Assert.assertFalse(isFailureAdvertised("<testsuite name=\"failures=1\" failures=\"0\" errors=\"0\">"));
+    Assert.assertFalse(isFailureAdvertised("<testsuites>\n  <testsuite failures=\"1\">"));
+    Assert.assertFalse(isFailureAdvertised("<testsuite failures=\"1"));
+  }
+
+  private static boolean isFailureAdvertised(@NotNull String content) throws Exception {
+    final File report = FileUtil.createTempFile("report", ".xml");
+    try {
+      FileUtil.writeFileAndReportErrors(report, content);
+      return ParserUtils.isFailureAdvertised(report);
+    } finally {
+      FileUtil.delete(report);
+    }
+  }
+
   @DataProvider(name = "isNumberData")
   public Object[][] isNumberData() {
     return new Object[][] {
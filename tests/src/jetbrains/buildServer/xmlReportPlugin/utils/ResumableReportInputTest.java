@@ -0,0 +1,156 @@
+/*
+ * Copyright 2000-2021 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.xmlReportPlugin.utils;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ResumableReportInputTest {
+  private static final Set<String> CONTAINERS = new HashSet<String>(Arrays.asList("testsuites", "testsuite"));
+
+  private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<!-- <testsuite> -->\n" +
+                                     "<testsuites>\n  <testsuite name=\"a > b\" tests=\"3\">\n    <properties/>\n" +
+                                     "    <testcase name=\"test1\"/>\n" +
+                                     "    <testcase name=\"test2\"><system-out><![CDATA[</testcase>]]></system-out></testcase>\n";
+  private static final String PARTIAL = "    <testcase name=\"te";
+  private static final String TAIL = "st3\"/>\n  </testsuite>\n</testsuites>\n";
+
+  private File myReport;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    myReport = FileUtil.createTempFile("report", ".xml");
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    FileUtil.delete(myReport);
+  }
+
+  @Test
+  public void testCheckpointAfterLastCompleteElement() throws Exception {
+    FileUtil.writeFile(myReport, HEAD + PARTIAL, "UTF-8");
+
+    final ResumableReportInput input = ResumableReportInput.open(myReport, null, CONTAINERS, "testcase");
+    Assert.assertEquals(readAll(input), HEAD + PARTIAL);
+    Assert.assertTrue(input.isEndOfFileReached());
+    Assert.assertFalse(input.isResumed());
+    Assert.assertEquals(input.getCompletedUnits(), 2);
+
+    final ReportCheckpoint checkpoint = input.getLastCheckpoint();
+    Assert.assertNotNull(checkpoint);
+    Assert.assertEquals(checkpoint.getOffset(), HEAD.length() - 1);
+    Assert.assertEquals(checkpoint.getOpenElements().size(), 2);
+  }
+
+  @Test
+  public void testResumeAppendedReport() throws Exception {
+    FileUtil.writeFile(myReport, HEAD + PARTIAL, "UTF-8");
+    final ReportCheckpoint checkpoint = readToEnd(null);
+
+    FileUtil.writeFile(myReport, HEAD + PARTIAL + TAIL, "UTF-8");
+
+    final ResumableReportInput input = ResumableReportInput.open(myReport, checkpoint, CONTAINERS, "testcase");
+    Assert.assertTrue(input.isResumed());
+    Assert.assertEquals(readAll(input),
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<!-- <testsuite> -->\n" +
+                        "<testsuites><testsuite name=\"a > b\" tests=\"3\">\n" + PARTIAL + TAIL);
+    Assert.assertNull(input.getLastCheckpoint(), "Complete report has no checkpoint");
+  }
+
+  @Test
+  public void testResumeWithoutProgress() throws Exception {
+    FileUtil.writeFile(myReport, HEAD + PARTIAL, "UTF-8");
+    final ReportCheckpoint checkpoint = readToEnd(null);
+
+    FileUtil.writeFile(myReport, HEAD + PARTIAL + "st3", "UTF-8");
+
+    final ResumableReportInput input = ResumableReportInput.open(myReport, checkpoint, CONTAINERS, "testcase");
+    readAll(input);
+    Assert.assertTrue(input.isResumed());
+    Assert.assertSame(input.getLastCheckpoint(), checkpoint);
+  }
+
+  @Test
+  public void testRewrittenReportIsReadFromBeginning() throws Exception {
+    FileUtil.writeFile(myReport, HEAD + PARTIAL, "UTF-8");
+    final ReportCheckpoint checkpoint = readToEnd(null);
+
+    final String rewritten = HEAD.replace("test2", "TEST2") + PARTIAL + TAIL;
+    FileUtil.writeFile(myReport, rewritten, "UTF-8");
+
+    final ResumableReportInput input = ResumableReportInput.open(myReport, checkpoint, CONTAINERS, "testcase");
+    Assert.assertFalse(input.isResumed());
+    Assert.assertEquals(readAll(input), rewritten);
+  }
+
+  @Test
+  public void testNoCheckpointInsideRootStartTag() throws Exception {
+    FileUtil.writeFile(myReport, "<?xml version=\"1.0\"?>\n<testsuite name=\"suite\" te", "UTF-8");
+    Assert.assertNull(readToEnd(null));
+  }
+
+  @Test
+  public void testReadingStopsWhenParsingCancelled() throws Exception {
+    FileUtil.writeFile(myReport, HEAD + PARTIAL + TAIL, "UTF-8");
+
+    final ParseDeadline deadline = ParseDeadline.enter(0);
+    try {
+      deadline.cancel("build finish timeout");
+      readToEnd(null);
+      Assert.fail("Reading must stop");
+    } catch (InterruptedIOException e) {
+      Assert.assertEquals(e.getMessage(), "build finish timeout");
+    } finally {
+      deadline.exit();
+    }
+    Assert.assertEquals(readAll(ResumableReportInput.open(myReport, null, CONTAINERS, "testcase")), HEAD + PARTIAL + TAIL);
+  }
+
+  @Nullable
+  private ReportCheckpoint readToEnd(@Nullable ReportCheckpoint checkpoint) throws IOException {
+    final ResumableReportInput input = ResumableReportInput.open(myReport, checkpoint, CONTAINERS, "testcase");
+    readAll(input);
+    return input.getLastCheckpoint();
+  }
+
+  @NotNull
+  private static String readAll(@NotNull ResumableReportInput input) throws IOException {
+    try {
+      final Reader reader = input.createReader();
+      final StringBuilder result = new StringBuilder();
+      final char[] buffer = new char[7];
+      int count;
+      while ((count = reader.read(buffer)) != -1) {
+        result.append(buffer, 0, count);
+      }
+      return result.toString();
+    } finally {
+      input.close();
+    }
+  }
+}